@@ -0,0 +1,198 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+// Small JMH-style harness: timed warmup and measurement iterations, a fixed number
+// of worker threads that start together, and per-operation allocation read from the
+// JVM's per-thread allocation counters. Results print as one table row per benchmark.
+public class BenchmarkRunner {
+
+    // Each worker thread gets its own operation so it can keep private state such as a
+    // Random; the values the operation returns are consumed so the JIT cannot drop it
+    public interface OperationFactory {
+        LongSupplier forThread(int threadIndex);
+    }
+
+    public static class Result {
+        final String name;
+        final int threads;
+        final double opsPerSecond;
+        final double opsPerSecondError;
+        final double nanosPerOp;
+        final double bytesPerOp;
+
+        Result(String name, int threads, double opsPerSecond, double opsPerSecondError, double nanosPerOp,
+                double bytesPerOp) {
+            this.name = name;
+            this.threads = threads;
+            this.opsPerSecond = opsPerSecond;
+            this.opsPerSecondError = opsPerSecondError;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-48s %3d %16.1f +- %-12.1f %12.1f %12.1f",
+                    name, threads, opsPerSecond, opsPerSecondError, nanosPerOp, bytesPerOp);
+        }
+    }
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationMillis;
+    private final List<Result> results = new ArrayList<>();
+
+    // Written once per iteration so the returned values stay live
+    private static volatile long sink;
+
+    public BenchmarkRunner(int warmupIterations, int measurementIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationMillis = iterationMillis;
+    }
+
+    public static String header() {
+        return String.format(Locale.ROOT, "%-48s %3s %32s %12s %12s",
+                "Benchmark", "thr", "ops/s", "ns/op", "B/op");
+    }
+
+    public Result run(String name, int threads, OperationFactory factory) throws InterruptedException {
+        LongSupplier[] operations = new LongSupplier[threads];
+        for (int i = 0; i < threads; i++) {
+            operations[i] = factory.forThread(i);
+        }
+
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(operations);
+        }
+
+        double[] throughput = new double[measurementIterations];
+        long totalOps = 0;
+        long totalBytes = 0;
+        long totalThreadNanos = 0;
+        for (int i = 0; i < measurementIterations; i++) {
+            long[] sample = iteration(operations);
+            throughput[i] = sample[0] / (sample[2] / 1e9);
+            totalOps += sample[0];
+            totalBytes += sample[1];
+            totalThreadNanos += sample[2] * threads;
+        }
+
+        double mean = 0;
+        for (double t : throughput) {
+            mean += t;
+        }
+        mean /= throughput.length;
+        double variance = 0;
+        for (double t : throughput) {
+            variance += (t - mean) * (t - mean);
+        }
+        double error = throughput.length > 1 ? Math.sqrt(variance / (throughput.length - 1)) : 0;
+
+        Result result = new Result(name, threads, mean, error,
+                totalOps == 0 ? 0 : totalThreadNanos / (double) totalOps,
+                totalBytes < 0 || totalOps == 0 ? Double.NaN : totalBytes / (double) totalOps);
+        results.add(result);
+        System.out.println(result);
+        return result;
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    // Runs every worker for one iteration; returns { operations, bytes allocated, elapsed nanos }
+    private long[] iteration(LongSupplier[] operations) throws InterruptedException {
+        int threads = operations.length;
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        // Workers stay alive until their allocation counters have been read
+        CountDownLatch finished = new CountDownLatch(threads);
+        CountDownLatch release = new CountDownLatch(1);
+        long[] counts = new long[threads];
+        long[] checksums = new long[threads];
+        Thread[] workers = new Thread[threads];
+
+        for (int i = 0; i < threads; i++) {
+            int index = i;
+            workers[i] = new Thread(() -> {
+                LongSupplier operation = operations[index];
+                long count = 0;
+                long checksum = 0;
+                ready.countDown();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // Check the stop flag every 64 operations so the check stays off the hot path
+                while (!stop.get()) {
+                    for (int k = 0; k < 64; k++) {
+                        checksum += operation.getAsLong();
+                    }
+                    count += 64;
+                }
+                counts[index] = count;
+                checksums[index] = checksum;
+                finished.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // Exiting anyway
+                }
+            }, "bench-worker-" + i);
+            workers[i].start();
+        }
+
+        ready.await();
+        long bytesBefore = allocatedBytes(workers);
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(iterationMillis);
+        stop.set(true);
+        long elapsed = System.nanoTime() - begin;
+        finished.await();
+        long bytesAfter = allocatedBytes(workers);
+        release.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        long ops = 0;
+        long checksum = 0;
+        for (int i = 0; i < threads; i++) {
+            ops += counts[i];
+            checksum += checksums[i];
+        }
+        sink = checksum;
+        long bytes = bytesBefore < 0 || bytesAfter < 0 ? -1 : bytesAfter - bytesBefore;
+        return new long[] { ops, bytes, elapsed };
+    }
+
+    // Sum of the workers' allocation counters, or -1 when the JVM does not provide them
+    private static long allocatedBytes(Thread[] workers) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        for (Thread worker : workers) {
+            long bytes = threads.getThreadAllocatedBytes(worker.threadId());
+            if (bytes < 0) {
+                return -1;
+            }
+            total += bytes;
+        }
+        return total;
+    }
+}
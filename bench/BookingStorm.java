@@ -0,0 +1,310 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Booking storm: N riders book, resize and cancel seats on a handful of hot rides at
+// a fixed arrival rate. Arrivals are scheduled open-loop, and latency is measured
+// from each arrival's scheduled time, so a backed-up system shows its queueing delay
+// instead of quietly slowing the load down. After the last stage the seat invariants
+// of every hot ride are checked; the process exits with status 1 if any fails.
+//
+//   javac -cp postgresql-42.7.3.jar -d out src/*.java bench/*.java
+//   java -cp out:postgresql-42.7.3.jar -Dload.rates=500,2000,8000 BookingStorm
+//
+// Settings (system properties):
+//   load.target          standin (in-process model, no network), memory (RideBookingSystem on
+//                        in-memory storage) or database (RideBookingSystem on JdbcStorage; needs
+//                        the PostgreSQL database DatabaseConnection points at) (standin)
+//   load.rides           number of hot rides (4)
+//   load.seatsPerRide    seats on each hot ride (40)
+//   load.riders          distinct riders (200)
+//   load.rates           comma-separated arrivals per second, one stage each (200,1000,5000)
+//   load.stageSeconds    length of each stage (10)
+//   load.arrivals        poisson or fixed spacing between arrivals (poisson)
+//   load.workers         threads executing requests (64)
+//   load.mix             book,update,cancel weights (70,15,15)
+//   load.maxSeats        most seats one booking asks for (3)
+//   load.roundTripMicros simulated database round trip for the stand-in (200)
+public class BookingStorm {
+
+    private enum Op {
+        BOOK, UPDATE, CANCEL
+    }
+
+    // Counters and latencies of one stage, per operation
+    private static class StageStats {
+        final LatencyHistogram[] latency = new LatencyHistogram[Op.values().length];
+        final LongAdder[] succeeded = new LongAdder[Op.values().length];
+        final LongAdder[] rejected = new LongAdder[Op.values().length];
+        final LongAdder[] failed = new LongAdder[Op.values().length];
+        final AtomicInteger pending = new AtomicInteger();
+
+        StageStats() {
+            for (int i = 0; i < latency.length; i++) {
+                latency[i] = new LatencyHistogram();
+                succeeded[i] = new LongAdder();
+                rejected[i] = new LongAdder();
+                failed[i] = new LongAdder();
+            }
+        }
+    }
+
+    private final BookingTarget target;
+    private final int[] rideIds;
+    private final int riders;
+    private final int maxSeats;
+    private final int[] mix;
+    private final boolean poisson;
+
+    // Each rider's active bookings. An operation takes a booking out while it works on
+    // it, so no two requests ever touch the same booking at once.
+    private final ConcurrentHashMap<Integer, ConcurrentLinkedDeque<Booking>> activeBookings =
+            new ConcurrentHashMap<>();
+
+    BookingStorm(BookingTarget target, int[] rideIds, int riders, int maxSeats, int[] mix, boolean poisson) {
+        this.target = target;
+        this.rideIds = rideIds;
+        this.riders = riders;
+        this.maxSeats = maxSeats;
+        this.mix = mix;
+        this.poisson = poisson;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String targetName = System.getProperty("load.target", "standin");
+        int rides = Integer.getInteger("load.rides", 4);
+        int seatsPerRide = Integer.getInteger("load.seatsPerRide", 40);
+        int riders = Integer.getInteger("load.riders", 200);
+        String[] rates = System.getProperty("load.rates", "200,1000,5000").split(",");
+        long stageSeconds = Long.getLong("load.stageSeconds", 10L);
+        boolean poisson = !"fixed".equals(System.getProperty("load.arrivals", "poisson"));
+        int workers = Integer.getInteger("load.workers", 64);
+        String[] mixParts = System.getProperty("load.mix", "70,15,15").split(",");
+        int[] mix = { Integer.parseInt(mixParts[0].trim()), Integer.parseInt(mixParts[1].trim()),
+                Integer.parseInt(mixParts[2].trim()) };
+        int maxSeats = Integer.getInteger("load.maxSeats", 3);
+
+        BookingTarget target;
+        switch (targetName) {
+            case "database":
+                target = new SystemBookingTarget(new JdbcStorage());
+                break;
+            case "memory":
+                target = new SystemBookingTarget(new MemoryStorage());
+                break;
+            default:
+                target = new StandInBookingTarget(Long.getLong("load.roundTripMicros", 200L));
+        }
+
+        boolean passed;
+        try {
+            int[] rideIds = target.setUp(rides, seatsPerRide, riders);
+            System.out.printf(Locale.ROOT, "Booking storm on %s: %d hot rides x %d seats, %d riders, %d workers%n",
+                    targetName, rides, seatsPerRide, riders, workers);
+
+            BookingStorm storm = new BookingStorm(target, rideIds, riders, maxSeats, mix, poisson);
+            ExecutorService executor = Executors.newFixedThreadPool(workers, r -> {
+                Thread t = new Thread(r, "storm-worker");
+                t.setDaemon(true);
+                return t;
+            });
+            try {
+                for (String rate : rates) {
+                    storm.runStage(executor, Double.parseDouble(rate.trim()), stageSeconds);
+                }
+            } finally {
+                executor.shutdown();
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            passed = storm.checkInvariants();
+        } finally {
+            target.close();
+        }
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    // ==================== LOAD ====================
+
+    void runStage(ExecutorService executor, double ratePerSecond, long seconds) throws InterruptedException {
+        StageStats stats = new StageStats();
+        double meanGapNanos = 1e9 / ratePerSecond;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long scheduled = start;
+        long arrivals = 0;
+
+        while (true) {
+            double gap = poisson ? -Math.log(1.0 - ThreadLocalRandom.current().nextDouble()) * meanGapNanos
+                    : meanGapNanos;
+            scheduled += (long) gap;
+            if (scheduled >= end) {
+                break;
+            }
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            long intendedStart = scheduled;
+            stats.pending.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    arrive(stats, intendedStart);
+                } finally {
+                    stats.pending.decrementAndGet();
+                }
+            });
+            arrivals++;
+        }
+
+        // Let the backlog of this stage finish before reporting it
+        while (stats.pending.get() > 0) {
+            Thread.sleep(10);
+        }
+        long elapsed = System.nanoTime() - start;
+        report(ratePerSecond, arrivals, elapsed, stats);
+    }
+
+    private void arrive(StageStats stats, long intendedStart) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int rider = random.nextInt(riders);
+        Op op = pickOp(random);
+
+        ConcurrentLinkedDeque<Booking> mine = activeBookings.computeIfAbsent(rider,
+                k -> new ConcurrentLinkedDeque<>());
+        Booking booking = op == Op.BOOK ? null : mine.pollFirst();
+        if (booking == null) {
+            // Nothing to change or cancel yet, so this rider books instead
+            op = Op.BOOK;
+        }
+
+        int i = op.ordinal();
+        try {
+            boolean ok;
+            switch (op) {
+                case BOOK:
+                    int rideId = rideIds[random.nextInt(rideIds.length)];
+                    Booking made = target.book(rider, rideId, 1 + random.nextInt(maxSeats));
+                    ok = made != null;
+                    if (ok) {
+                        mine.addLast(made);
+                    }
+                    break;
+                case UPDATE:
+                    int seats = 1 + random.nextInt(maxSeats);
+                    if (seats == booking.getTotal_seats()) {
+                        seats = seats % maxSeats + 1;
+                    }
+                    ok = target.update(booking, seats);
+                    mine.addLast(booking);
+                    break;
+                default:
+                    ok = target.cancel(booking);
+                    if (!ok) {
+                        mine.addLast(booking);
+                    }
+            }
+            (ok ? stats.succeeded[i] : stats.rejected[i]).increment();
+        } catch (RuntimeException e) {
+            stats.failed[i].increment();
+            if (booking != null && op != Op.BOOK) {
+                mine.addLast(booking);
+            }
+        } finally {
+            stats.latency[i].recordSince(intendedStart);
+        }
+    }
+
+    private Op pickOp(ThreadLocalRandom random) {
+        int roll = random.nextInt(mix[0] + mix[1] + mix[2]);
+        if (roll < mix[0]) {
+            return Op.BOOK;
+        }
+        return roll < mix[0] + mix[1] ? Op.UPDATE : Op.CANCEL;
+    }
+
+    private static void report(double rate, long arrivals, long elapsedNanos, StageStats stats) {
+        long completed = 0;
+        for (Op op : Op.values()) {
+            completed += stats.latency[op.ordinal()].getCount();
+        }
+        System.out.printf(Locale.ROOT, "%nStage: offered %.0f/s, %d arrivals, throughput %.1f ops/s%n",
+                rate, arrivals, completed / (elapsedNanos / 1e9));
+        System.out.printf(Locale.ROOT, "  %-7s %9s %9s %9s %7s %9s %10s %10s %10s %10s%n",
+                "op", "count", "ok", "rejected", "errors", "reject%", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (Op op : Op.values()) {
+            int i = op.ordinal();
+            LatencyHistogram h = stats.latency[i];
+            long count = h.getCount();
+            long rejected = stats.rejected[i].sum();
+            System.out.printf(Locale.ROOT, "  %-7s %9d %9d %9d %7d %8.2f%% %10.3f %10.3f %10.3f %10.3f%n",
+                    op.name().toLowerCase(Locale.ROOT), count, stats.succeeded[i].sum(), rejected,
+                    stats.failed[i].sum(), count == 0 ? 0.0 : 100.0 * rejected / count,
+                    h.getPercentile(50) / 1e6, h.getPercentile(99) / 1e6, h.getPercentile(99.9) / 1e6,
+                    h.getMax() / 1e6);
+        }
+    }
+
+    // ==================== INVARIANTS ====================
+
+    // For every hot ride: no negative seat count, booked plus available equals the
+    // ride's total, and both the target's booking records and the storm's own ledger
+    // of confirmed bookings agree on the booked seats
+    boolean checkInvariants() {
+        int[] ledger = new int[rideIds.length];
+        for (ConcurrentLinkedDeque<Booking> bookings : activeBookings.values()) {
+            for (Booking booking : bookings) {
+                for (int i = 0; i < rideIds.length; i++) {
+                    if (rideIds[i] == booking.getRide_id()) {
+                        ledger[i] += booking.getTotal_seats();
+                    }
+                }
+            }
+        }
+
+        List<String> failures = new ArrayList<>();
+        System.out.printf(Locale.ROOT, "%nInvariants:%n  %-8s %7s %10s %8s %8s %10s%n",
+                "ride", "total", "available", "booked", "ledger", "admission");
+        for (int i = 0; i < rideIds.length; i++) {
+            int rideId = rideIds[i];
+            BookingTarget.RideState state = target.state(rideId);
+            System.out.printf(Locale.ROOT, "  #%-7d %7d %10d %8d %8d %10d%n", rideId, state.totalSeats,
+                    state.availableSeats, state.bookedSeats, ledger[i], state.admissionSeats);
+
+            if (state.availableSeats < 0) {
+                failures.add("ride #" + rideId + " has negative available_seats " + state.availableSeats);
+            }
+            if (state.bookedSeats + state.availableSeats != state.totalSeats) {
+                failures.add("ride #" + rideId + ": booked " + state.bookedSeats + " + available "
+                        + state.availableSeats + " != total " + state.totalSeats);
+            }
+            if (ledger[i] != state.bookedSeats) {
+                failures.add("ride #" + rideId + ": confirmed bookings hold " + ledger[i]
+                        + " seats but the target records " + state.bookedSeats);
+            }
+            if (state.admissionSeats >= 0 && state.admissionSeats != state.availableSeats) {
+                failures.add("ride #" + rideId + ": admission counter " + state.admissionSeats
+                        + " != available_seats " + state.availableSeats);
+            }
+        }
+
+        if (failures.isEmpty()) {
+            System.out.println("All invariants hold.");
+            return true;
+        }
+        for (String failure : failures) {
+            System.out.println("INVARIANT VIOLATED: " + failure);
+        }
+        return false;
+    }
+}
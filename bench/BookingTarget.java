@@ -0,0 +1,36 @@
+// What BookingStorm drives: bookRide, updateBooking and deleteBooking on a few hot
+// rides, plus enough read access to check the seat invariants once the storm is over
+public interface BookingTarget extends AutoCloseable {
+
+    // Seat accounting of one ride as the target sees it
+    class RideState {
+        final int totalSeats;
+        final int availableSeats;
+        // Seats held by active bookings, summed from the target's booking records
+        final int bookedSeats;
+        // The in-memory admission counter, or -1 when the target has none
+        final int admissionSeats;
+
+        RideState(int totalSeats, int availableSeats, int bookedSeats, int admissionSeats) {
+            this.totalSeats = totalSeats;
+            this.availableSeats = availableSeats;
+            this.bookedSeats = bookedSeats;
+            this.admissionSeats = admissionSeats;
+        }
+    }
+
+    // Creates the hot rides and the riders; returns the ride ids
+    int[] setUp(int rides, int seatsPerRide, int riders);
+
+    // Null when the booking was rejected
+    Booking book(int rider, int rideId, int seats);
+
+    boolean update(Booking booking, int seats);
+
+    boolean cancel(Booking booking);
+
+    RideState state(int rideId);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,250 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+// Benchmarks for the in-process hot paths of RideBookingSystem: ride search through
+// the trigram index, seat admission and booking bookkeeping under contention, the
+// cached profile lookup, and Ride.addPassenger/removePassenger. Everything runs against
+// generated in-memory data, so no database is needed.
+//
+//   javac -cp postgresql-42.7.3.jar -d out src/*.java bench/*.java
+//   java -cp out -Dbench.rides=10000,1000000 -Dbench.threads=8 RideBenchmark
+//
+// Settings (system properties):
+//   bench.rides          comma-separated data sizes for the search benchmarks (10000,100000,1000000)
+//   bench.threads        worker threads for the contended benchmarks (available processors)
+//   bench.warmup         warmup iterations (3)
+//   bench.iterations     measured iterations (5)
+//   bench.iterationMs    length of one iteration in milliseconds (1000)
+//   bench.filter         regex; only benchmarks whose name matches it are run
+public class RideBenchmark {
+
+    private static final int CITY_COUNT = 400;
+    private static final int HOT_RIDES = 8;
+    private static final int CACHED_USERS = 100_000;
+
+    private static Pattern filter;
+
+    public static void main(String[] args) throws InterruptedException {
+        String[] sizes = System.getProperty("bench.rides", "10000,100000,1000000").split(",");
+        int threads = Integer.getInteger("bench.threads", Runtime.getRuntime().availableProcessors());
+        filter = Pattern.compile(System.getProperty("bench.filter", ".*"));
+
+        BenchmarkRunner runner = new BenchmarkRunner(
+                Integer.getInteger("bench.warmup", 3),
+                Integer.getInteger("bench.iterations", 5),
+                Long.getLong("bench.iterationMs", 1000L));
+
+        System.out.println(BenchmarkRunner.header());
+
+        String[] cities = cityNames(new Random(42));
+        for (String size : sizes) {
+            searchBenchmarks(runner, Integer.parseInt(size.trim()), cities, threads);
+        }
+        passengerBenchmarks(runner);
+        bookingBenchmarks(runner, threads);
+        profileBenchmarks(runner, threads);
+    }
+
+    private static boolean selected(String name) {
+        return filter.matcher(name).find();
+    }
+
+    // ==================== SEARCH ====================
+
+    private static void searchBenchmarks(BenchmarkRunner runner, int rideCount, String[] cities, int threads)
+            throws InterruptedException {
+        String suffix = "[" + rideCount + "]";
+        if (!selected("search.route" + suffix) && !selected("search.firstPage" + suffix)
+                && !selected("search.sourcePrefix" + suffix)) {
+            return;
+        }
+
+        SeatInventory inventory = new SeatInventory();
+        RideSearchIndex index = new RideSearchIndex(inventory);
+        Random random = new Random(rideCount);
+        LocalDateTime now = LocalDateTime.now();
+        for (int id = 1; id <= rideCount; id++) {
+            String source = cities[random.nextInt(cities.length)];
+            String destination = cities[random.nextInt(cities.length)];
+            int seats = 4 + random.nextInt(3);
+            // About one ride in ten is already full and must be filtered out
+            int available = random.nextInt(10) == 0 ? 0 : 1 + random.nextInt(seats);
+            Ride ride = new Ride(id, source, destination, seats, available, 100 + random.nextInt(900),
+                    1 + random.nextInt(rideCount), "Toyota", "Innova", "DL 01 AB " + id, now);
+            inventory.track(id, available);
+            index.add(ride);
+        }
+        index.markReady();
+
+        if (selected("search.route" + suffix)) {
+            runner.run("search.route" + suffix, 1, t -> {
+                Random r = new Random(t);
+                return () -> index.search(cities[r.nextInt(cities.length)], cities[r.nextInt(cities.length)]).size();
+            });
+            runner.run("search.route" + suffix, threads, t -> {
+                Random r = new Random(t);
+                return () -> index.search(cities[r.nextInt(cities.length)], cities[r.nextInt(cities.length)]).size();
+            });
+        }
+        if (selected("search.firstPage" + suffix)) {
+            runner.run("search.firstPage" + suffix, 1, t -> {
+                Random r = new Random(t);
+                return () -> index.searchPage(cities[r.nextInt(cities.length)], null, 0, 10).getNextCursor();
+            });
+        }
+        if (selected("search.sourcePrefix" + suffix)) {
+            // Short fragments match many rides, the worst case for the intersection
+            runner.run("search.sourcePrefix" + suffix, 1, t -> {
+                Random r = new Random(t);
+                return () -> index.searchPage(cities[r.nextInt(cities.length)].substring(0, 3), null, 0, 10)
+                        .getNextCursor();
+            });
+        }
+    }
+
+    // Pronounceable, mostly distinct names, so trigram postings have realistic overlap
+    private static String[] cityNames(Random random) {
+        String[] syllables = { "ka", "ra", "pur", "na", "ga", "bad", "li", "dhi", "man", "sha", "ban", "gal",
+                "chen", "mum", "hyd", "ko", "ta", "vi", "jai", "lak", "now", "ahm", "de", "sur", "pat" };
+        String[] cities = new String[CITY_COUNT];
+        for (int i = 0; i < CITY_COUNT; i++) {
+            StringBuilder name = new StringBuilder();
+            int parts = 2 + random.nextInt(2);
+            for (int p = 0; p < parts; p++) {
+                name.append(syllables[random.nextInt(syllables.length)]);
+            }
+            name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+            cities[i] = name.toString();
+        }
+        return cities;
+    }
+
+    // ==================== PASSENGERS ====================
+
+    private static void passengerBenchmarks(BenchmarkRunner runner) throws InterruptedException {
+        // Each thread has its own ride, as each request does in RideBookingSystem
+        if (selected("ride.addRemovePassenger")) {
+            runner.run("ride.addRemovePassenger", 1, t -> {
+                Ride ride = new Ride(1, "A", "B", 6, 6, 100, 1);
+                User[] users = newUsers(6, 1);
+                int[] next = { 0 };
+                return () -> {
+                    User user = users[next[0]++ % users.length];
+                    ride.addPassenger(user, 2);
+                    ride.removePassenger(user, 2);
+                    return ride.getAvailable_seats();
+                };
+            });
+        }
+        if (selected("ride.fillAndEmpty")) {
+            runner.run("ride.fillAndEmpty", 1, t -> {
+                Ride ride = new Ride(1, "A", "B", 6, 6, 100, 1);
+                User[] users = newUsers(6, 1);
+                return () -> {
+                    for (User user : users) {
+                        ride.addPassenger(user, 1);
+                    }
+                    int passengers = ride.getPassengers().size();
+                    for (User user : users) {
+                        ride.removePassenger(user, 1);
+                    }
+                    return passengers;
+                };
+            });
+        }
+    }
+
+    // ==================== BOOKING ====================
+
+    // The in-memory half of bookRide and deleteBooking: seat admission in the
+    // inventory plus the booking index updates. Many threads on a few rides is the
+    // contended case; a sold-out ride measures the rejection path.
+    private static void bookingBenchmarks(BenchmarkRunner runner, int threads) throws InterruptedException {
+        if (selected("booking.admitAndCancel")) {
+            SeatInventory inventory = new SeatInventory();
+            BookingIndex bookings = new BookingIndex();
+            for (int id = 1; id <= HOT_RIDES; id++) {
+                inventory.track(id, 1_000_000);
+            }
+            AtomicInteger bookingIds = new AtomicInteger();
+            BenchmarkRunner.OperationFactory admitAndCancel = t -> {
+                Random r = new Random(t);
+                int userId = t + 1;
+                return () -> {
+                    int rideId = 1 + r.nextInt(HOT_RIDES);
+                    if (!inventory.tryReserve(rideId, 1)) {
+                        return 0;
+                    }
+                    int bookingId = bookingIds.incrementAndGet();
+                    bookings.add(new Booking(bookingId, rideId, userId, 1, 100.0, "CONFIRMED", null));
+                    bookings.remove(bookingId);
+                    inventory.release(rideId, 1);
+                    return bookingId;
+                };
+            };
+            runner.run("booking.admitAndCancel", 1, admitAndCancel);
+            runner.run("booking.admitAndCancel", threads, admitAndCancel);
+        }
+
+        if (selected("booking.rejectSoldOut")) {
+            SeatInventory inventory = new SeatInventory();
+            for (int id = 1; id <= HOT_RIDES; id++) {
+                inventory.track(id, 0);
+            }
+            runner.run("booking.rejectSoldOut", threads, t -> {
+                Random r = new Random(t);
+                return () -> inventory.tryReserve(1 + r.nextInt(HOT_RIDES), 1) ? 1 : 0;
+            });
+        }
+
+        if (selected("booking.seatInventoryCas")) {
+            // One ride, every thread reserving and releasing: worst-case CAS contention
+            SeatInventory inventory = new SeatInventory();
+            inventory.track(1, 1_000_000);
+            runner.run("booking.seatInventoryCas", threads, t -> () -> {
+                if (inventory.tryReserve(1, 1)) {
+                    inventory.release(1, 1);
+                    return 1;
+                }
+                return 0;
+            });
+        }
+    }
+
+    // ==================== PROFILES ====================
+
+    // getUser's cache-hit path: lookup by id and the copy handed to the caller
+    private static void profileBenchmarks(BenchmarkRunner runner, int threads) throws InterruptedException {
+        if (!selected("user.cachedProfile")) {
+            return;
+        }
+        UserCache cache = new UserCache(CACHED_USERS, 600_000L);
+        User[] users = newUsers(CACHED_USERS, 1);
+        for (User user : users) {
+            cache.put(user);
+        }
+
+        BenchmarkRunner.OperationFactory lookup = t -> {
+            Random r = new Random(t);
+            return () -> {
+                User cached = cache.get(users[r.nextInt(users.length)].getId());
+                return cached != null ? cached.getId() : 0;
+            };
+        };
+        runner.run("user.cachedProfile", 1, lookup);
+        runner.run("user.cachedProfile", threads, lookup);
+    }
+
+    private static User[] newUsers(int count, int firstId) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int id = firstId + i;
+            users.add(new User(id, "User " + id, "user" + id + "@example.com", "password" + id, 9_000_000_000L + id));
+        }
+        return users.toArray(new User[0]);
+    }
+}
@@ -0,0 +1,156 @@
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// In-process stand-in for RideBookingSystem and its database, for storms that must
+// not touch the network. Admission goes through a SeatInventory as in bookRide; the
+// rides and bookings tables are plain maps, and each statement is replayed with the
+// same guard as its SQL under a per-ride lock that plays the row lock. A configurable
+// pause after each write stands in for the database round trip.
+public class StandInBookingTarget implements BookingTarget {
+
+    private static class RideRow {
+        final int totalSeats;
+        final double fare;
+        int availableSeats;
+
+        RideRow(int totalSeats, double fare) {
+            this.totalSeats = totalSeats;
+            this.availableSeats = totalSeats;
+            this.fare = fare;
+        }
+    }
+
+    private static class BookingRow {
+        final int rideId;
+        int seats;
+        boolean cancelled;
+
+        BookingRow(int rideId, int seats) {
+            this.rideId = rideId;
+            this.seats = seats;
+        }
+    }
+
+    private final ConcurrentHashMap<Integer, RideRow> rides = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, BookingRow> bookings = new ConcurrentHashMap<>();
+    private final SeatInventory seatInventory = new SeatInventory();
+    private final AtomicInteger nextBookingId = new AtomicInteger();
+    private final long roundTripNanos;
+
+    public StandInBookingTarget(long roundTripMicros) {
+        this.roundTripNanos = TimeUnit.MICROSECONDS.toNanos(roundTripMicros);
+    }
+
+    @Override
+    public int[] setUp(int rideCount, int seatsPerRide, int riders) {
+        int[] rideIds = new int[rideCount];
+        for (int i = 0; i < rideCount; i++) {
+            int rideId = i + 1;
+            rides.put(rideId, new RideRow(seatsPerRide, 100.0));
+            seatInventory.track(rideId, seatsPerRide);
+            rideIds[i] = rideId;
+        }
+        return rideIds;
+    }
+
+    @Override
+    public Booking book(int rider, int rideId, int seats) {
+        if (!seatInventory.tryReserve(rideId, seats)) {
+            return null;
+        }
+        RideRow ride = rides.get(rideId);
+        int bookingId;
+        double fare;
+        // BOOK_RIDE_SQL: guarded decrement, then the insert
+        synchronized (ride) {
+            if (ride.availableSeats < seats) {
+                seatInventory.release(rideId, seats);
+                return null;
+            }
+            ride.availableSeats -= seats;
+            bookingId = nextBookingId.incrementAndGet();
+            bookings.put(bookingId, new BookingRow(rideId, seats));
+            fare = ride.fare * seats;
+        }
+        roundTrip();
+        return new Booking(bookingId, rideId, rider, seats, fare, "CONFIRMED", LocalDateTime.now());
+    }
+
+    @Override
+    public boolean update(Booking booking, int seats) {
+        int rideId = booking.getRide_id();
+        int difference = seats - booking.getTotal_seats();
+        if (difference > 0 && !seatInventory.tryReserve(rideId, difference)) {
+            return false;
+        }
+        RideRow ride = rides.get(rideId);
+        BookingRow row = bookings.get(booking.getBooking_id());
+        double fare;
+        // UPDATE_BOOKING_SQL: move the difference only if enough seats are left
+        synchronized (ride) {
+            if (row.cancelled || ride.availableSeats < difference) {
+                if (difference > 0) {
+                    seatInventory.release(rideId, difference);
+                }
+                return false;
+            }
+            ride.availableSeats -= difference;
+            row.seats = seats;
+            fare = ride.fare * seats;
+        }
+        if (difference < 0) {
+            seatInventory.release(rideId, -difference);
+        }
+        roundTrip();
+        booking.setTotal_seats(seats);
+        booking.setTotal_fare(fare);
+        return true;
+    }
+
+    @Override
+    public boolean cancel(Booking booking) {
+        RideRow ride = rides.get(booking.getRide_id());
+        BookingRow row = bookings.get(booking.getBooking_id());
+        int seats;
+        // CANCEL_BOOKING_SQL: a cancelled booking cannot return its seats twice
+        synchronized (ride) {
+            if (row.cancelled) {
+                return false;
+            }
+            row.cancelled = true;
+            seats = row.seats;
+            ride.availableSeats += seats;
+        }
+        seatInventory.release(booking.getRide_id(), seats);
+        roundTrip();
+        booking.setStatus("CANCELLED");
+        return true;
+    }
+
+    private void roundTrip() {
+        if (roundTripNanos > 0) {
+            LockSupport.parkNanos(roundTripNanos);
+        }
+    }
+
+    @Override
+    public RideState state(int rideId) {
+        RideRow ride = rides.get(rideId);
+        synchronized (ride) {
+            int booked = 0;
+            for (BookingRow row : bookings.values()) {
+                if (row.rideId == rideId && !row.cancelled) {
+                    booked += row.seats;
+                }
+            }
+            return new RideState(ride.totalSeats, ride.availableSeats, booked, seatInventory.getAvailable(rideId));
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
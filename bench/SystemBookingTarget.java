@@ -0,0 +1,79 @@
+import java.sql.SQLException;
+
+// Drives a real RideBookingSystem on the given storage: the database configured in
+// DatabaseConnection, or the in-memory engine. Riders, the driver and the hot rides
+// are created fresh for each run and left in storage afterwards.
+public class SystemBookingTarget implements BookingTarget {
+
+    private final RideBookingSystem system;
+    private User[] riders;
+
+    public SystemBookingTarget(Storage storage) {
+        this.system = new RideBookingSystem(storage);
+    }
+
+    @Override
+    public int[] setUp(int rides, int seatsPerRide, int riders) {
+        String run = Long.toString(System.currentTimeMillis(), 36);
+
+        User driver = new User("Storm Driver", "driver-" + run + "@load.test", "storm", 9_000_000_000L,
+                "DL-STORM-" + run, "2099-12-31");
+        system.registerUser(driver);
+
+        this.riders = new User[riders];
+        for (int i = 0; i < riders; i++) {
+            User rider = new User("Storm Rider " + i, "rider-" + run + "-" + i + "@load.test", "storm",
+                    9_100_000_000L + i, null, null);
+            system.registerUser(rider);
+            this.riders[i] = rider;
+        }
+
+        int[] rideIds = new int[rides];
+        for (int i = 0; i < rides; i++) {
+            Ride ride = system.createRide("Storm Source " + i, "Storm Destination " + i, seatsPerRide, 100.0,
+                    "Load", "Test", "LT " + run + " " + i, driver);
+            if (ride == null) {
+                throw new IllegalStateException("Could not create hot ride " + i);
+            }
+            rideIds[i] = ride.getRide_id();
+        }
+        return rideIds;
+    }
+
+    @Override
+    public Booking book(int rider, int rideId, int seats) {
+        Ride ride = system.findRide(rideId);
+        return ride == null ? null : system.bookRide(riders[rider], ride, seats);
+    }
+
+    @Override
+    public boolean update(Booking booking, int seats) {
+        return system.updateBooking(booking, seats);
+    }
+
+    @Override
+    public boolean cancel(Booking booking) {
+        return system.deleteBooking(booking);
+    }
+
+    // Read straight from storage, so the check does not trust any cache
+    @Override
+    public RideState state(int rideId) {
+        Storage storage = system.getStorage();
+        try {
+            Ride ride = storage.getRides().findById(rideId);
+            if (ride == null) {
+                throw new IllegalStateException("Ride #" + rideId + " is missing");
+            }
+            return new RideState(ride.getTotal_seats(), ride.getAvailable_seats(),
+                    storage.getBookings().activeSeats(rideId), system.getSeatInventory().getAvailable(rideId));
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read ride #" + rideId, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        system.shutdown();
+    }
+}
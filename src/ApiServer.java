@@ -0,0 +1,753 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Embedded HTTP/JSON front end for RideBookingSystem. Requests under /api/ are
+// dispatched to the booking operations; everything else is served from web/.
+// Each request arrives on its own virtual thread. API handlers, streaming endpoints
+// included, run as whole tasks on AsyncRideBookingSystem, whose bounded queue answers
+// overload with 503 at once instead of letting requests pile up behind the database.
+// Streaming endpoints write rows as storage hands them over.
+public class ApiServer {
+
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final long SESSION_TTL_MILLIS =
+            TimeUnit.MINUTES.toMillis(Long.getLong("api.sessionTtlMinutes", 120L));
+
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            "html", "text/html; charset=utf-8",
+            "css", "text/css; charset=utf-8",
+            "js", "application/javascript; charset=utf-8",
+            "json", "application/json; charset=utf-8",
+            "png", "image/png",
+            "svg", "image/svg+xml",
+            "ico", "image/x-icon");
+
+    // Logged-in user behind a bearer token
+    private static class Session {
+        final int userId;
+        final long expiresAt;
+
+        Session(int userId, long expiresAt) {
+            this.userId = userId;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // Turned into an error response with the given status
+    private static class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private final RideBookingSystem system;
+    private final AsyncRideBookingSystem async;
+    private final Path webRoot;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+
+    public ApiServer(RideBookingSystem system, InetSocketAddress address, Path webRoot) throws IOException {
+        this.system = system;
+        this.async = new AsyncRideBookingSystem(system);
+        this.webRoot = webRoot.toAbsolutePath().normalize();
+        this.server = HttpServer.create(address, Integer.getInteger("api.backlog", 1024));
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handleApi);
+        server.createContext("/metrics", this::handleMetrics);
+        server.createContext("/", this::handleStatic);
+    }
+
+    // One virtual thread per request, so a slow client or a request waiting for a
+    // pooled connection does not pin a platform thread
+    static ExecutorService newRequestExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("API server listening on http://localhost:" + getPort() + "/");
+    }
+
+    // Stop accepting connections, give in-flight exchanges a moment, then stop the workers
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        async.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // ==================== API ====================
+
+    // One endpoint's work, from reading the request to writing the response
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    // The whole handler runs as one task on the async front, so a request is either
+    // turned away with 503 before it has done anything or runs to the end, and the
+    // request thread is not held while it waits on storage. The task finishes the
+    // exchange itself. Streaming endpoints are queued the same way, but their request
+    // thread waits for the task: a stream that fails halfway must be cut off, and
+    // only the server's own handler thread can drop the connection.
+    private void handleApi(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        Handler handler;
+        try {
+            handler = route(method, path);
+        } catch (ApiException e) {
+            dropIfCutOff(answer(exchange, ignored -> {
+                throw e;
+            }));
+            return;
+        }
+        boolean streaming = method.equals("GET") && (path.equals("/api/rides/all") || path.equals("/api/bookings"));
+
+        CompletableFuture<Exception> answered = async.submit(method + " " + path, () -> {
+            Exception cutOff = answer(exchange, handler);
+            if (cutOff != null && !streaming) {
+                // Nobody left to drop the connection; the unclosed JSON shows the loss
+                exchange.close();
+            }
+            return cutOff;
+        });
+        if (answered.isCompletedExceptionally()) {
+            // Turned away at the door: clients back off instead of adding to the queue
+            dropIfCutOff(answer(exchange, ignored -> {
+                throw new ApiException(503, "The server is busy; please retry shortly");
+            }));
+            return;
+        }
+        if (streaming) {
+            dropIfCutOff(answered.join());
+        }
+    }
+
+    // Throwing out of the server's handler is what makes it drop the connection
+    private static void dropIfCutOff(Exception cutOff) throws IOException {
+        if (cutOff instanceof IOException) {
+            throw (IOException) cutOff;
+        }
+        if (cutOff != null) {
+            throw (RuntimeException) cutOff;
+        }
+    }
+
+    private Handler route(String method, String path) {
+        if (path.equals("/api/register") && method.equals("POST")) {
+            return this::register;
+        } else if (path.equals("/api/login") && method.equals("POST")) {
+            return this::login;
+        } else if (path.equals("/api/logout") && method.equals("POST")) {
+            return this::logout;
+        } else if (path.equals("/api/rides") && method.equals("GET")) {
+            return this::searchRides;
+        } else if (path.equals("/api/rides/nearby") && method.equals("GET")) {
+            return this::searchNearby;
+        } else if (path.equals("/api/rides/departing") && method.equals("GET")) {
+            return this::searchDeparting;
+        } else if (path.equals("/api/rides/recommended") && method.equals("GET")) {
+            return this::recommendRides;
+        } else if (path.equals("/api/rides/all") && method.equals("GET")) {
+            return this::streamRides;
+        } else if (path.equals("/api/rides") && method.equals("POST")) {
+            return this::createRide;
+        } else if (path.equals("/api/bookings") && method.equals("GET")) {
+            return this::myBookings;
+        } else if (path.equals("/api/bookings") && method.equals("POST")) {
+            return this::bookRide;
+        } else if (path.startsWith("/api/bookings/") && method.equals("DELETE")) {
+            int bookingId = parseId(path.substring("/api/bookings/".length()));
+            return exchange -> cancelBooking(exchange, bookingId);
+        }
+        throw new ApiException(404, "No such endpoint: " + method + " " + path);
+    }
+
+    // Runs the handler and turns what it throws into an error response, then closes
+    // the exchange. A failure after the response has started is returned instead, with
+    // the exchange left open: closing it would end the body as if it were complete, so
+    // the caller lets the server drop the connection and the client sees a broken
+    // response instead of valid JSON with rows missing.
+    private static Exception answer(HttpExchange exchange, Handler handler) {
+        try {
+            try {
+                handler.handle(exchange);
+            } catch (ApiException e) {
+                if (e.status == 503) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                }
+                sendError(exchange, e.status, e.getMessage());
+            } catch (RuntimeException e) {
+                if (exchange.getResponseCode() != -1) {
+                    throw e;
+                }
+                System.err.println("API error on " + exchange.getRequestURI() + ": " + e);
+                sendError(exchange, 500, "Internal server error");
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("API response to " + exchange.getRequestURI() + " cut off: " + e);
+            return e;
+        }
+        exchange.close();
+        return null;
+    }
+
+    private void register(HttpExchange exchange) throws IOException {
+        Map<String, String> form = readForm(exchange);
+        User user = new User(
+                required(form, "name"),
+                required(form, "email"),
+                required(form, "password"),
+                parseLong(required(form, "phone"), "phone"),
+                blankToNull(form.get("licenceNo")),
+                blankToNull(form.get("licenceExp")));
+
+        system.registerUser(user);
+        if (user.getId() == 0) {
+            throw new ApiException(409, "Could not register " + user.getEmail() + "; the email may already be in use");
+        }
+        sendJson(exchange, 201, json -> {
+            json.beginObject().name("user");
+            ModelJson.writeUser(json, user);
+            json.endObject();
+        });
+    }
+
+    private void login(HttpExchange exchange) throws IOException {
+        Map<String, String> form = readForm(exchange);
+        User user = system.loginUser(required(form, "email"), required(form, "password"));
+        if (user == null) {
+            throw new ApiException(401, "Invalid email or password");
+        }
+
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(s -> s.expiresAt <= now);
+        String token = newToken();
+        sessions.put(token, new Session(user.getId(), now + SESSION_TTL_MILLIS));
+        sendJson(exchange, 200, json -> {
+            json.beginObject().field("token", token).name("user");
+            ModelJson.writeUser(json, user);
+            json.endObject();
+        });
+    }
+
+    private void logout(HttpExchange exchange) throws IOException {
+        String token = bearerToken(exchange);
+        if (token != null) {
+            sessions.remove(token);
+        }
+        sendJson(exchange, 200, json -> json.beginObject().field("loggedOut", true).endObject());
+    }
+
+    private void searchRides(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseForm(exchange.getRequestURI().getRawQuery());
+        int after = query.containsKey("after") ? parseInt(query.get("after"), "after") : 0;
+        int limit = query.containsKey("limit") ? parseInt(query.get("limit"), "limit") : 20;
+
+        RidePage page = system.searchRidesPage(blankToNull(query.get("from")),
+                blankToNull(query.get("to")), after, limit);
+        sendJson(exchange, 200, json -> {
+            json.beginObject().name("rides").beginArray();
+            for (Ride ride : page.getRides()) {
+                ModelJson.writeRide(json, ride);
+            }
+            json.endArray()
+                    .field("nextCursor", page.getNextCursor())
+                    .field("hasMore", page.hasMore())
+                    .endObject();
+        });
+    }
+
+    // Rides picking up near from and dropping off near to; radius in meters
+    private void searchNearby(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseForm(exchange.getRequestURI().getRawQuery());
+        GeoPoint from = parseLocation(query, "from");
+        GeoPoint to = parseLocation(query, "to");
+        if (from == null || to == null) {
+            throw new ApiException(400, "Missing fromLat, fromLng, toLat or toLng");
+        }
+        double radius = query.containsKey("radius") ? parseDouble(query.get("radius"), "radius") : 1000;
+        int limit = query.containsKey("limit") ? parseInt(query.get("limit"), "limit") : 20;
+        if (!(radius > 0)) {
+            throw new ApiException(400, "Radius must be positive");
+        }
+
+        List<Ride> rides = system.searchNearby(from, to, radius, limit);
+        sendJson(exchange, 200, json -> {
+            json.beginObject().name("rides").beginArray();
+            for (Ride ride : rides) {
+                ModelJson.writeRide(json, ride);
+            }
+            json.endArray().endObject();
+        });
+    }
+
+    // Rides leaving between departAfter and departBefore, earliest first; from and to
+    // filter on place names as in searchRides
+    private void searchDeparting(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseForm(exchange.getRequestURI().getRawQuery());
+        LocalDateTime after = parseDateTime(query.get("departAfter"), "departAfter");
+        LocalDateTime before = parseDateTime(query.get("departBefore"), "departBefore");
+        if (after == null || before == null) {
+            throw new ApiException(400, "Missing departAfter or departBefore");
+        }
+
+        List<Ride> rides = system.searchRidesDeparting(blankToNull(query.get("from")),
+                blankToNull(query.get("to")), after, before);
+        sendJson(exchange, 200, json -> {
+            json.beginObject().name("rides").beginArray();
+            for (Ride ride : rides) {
+                ModelJson.writeRide(json, ride);
+            }
+            json.endArray().endObject();
+        });
+    }
+
+    // The best k rides for the rider, best first; departure is the wanted time
+    private void recommendRides(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseForm(exchange.getRequestURI().getRawQuery());
+        LocalDateTime departure = parseDateTime(query.get("departure"), "departure");
+        int seats = query.containsKey("seats") ? parseInt(query.get("seats"), "seats") : 1;
+        int k = query.containsKey("k") ? parseInt(query.get("k"), "k") : 10;
+        if (seats <= 0 || k <= 0) {
+            throw new ApiException(400, "Seats and k must be at least 1");
+        }
+
+        List<Ride> rides = system.recommendRides(blankToNull(query.get("from")),
+                blankToNull(query.get("to")), departure, seats, k);
+        sendJson(exchange, 200, json -> {
+            json.beginObject().name("rides").beginArray();
+            for (Ride ride : rides) {
+                ModelJson.writeRide(json, ride);
+            }
+            json.endArray().endObject();
+        });
+    }
+
+    // Every matching ride in one response, written page by page as storage delivers
+    // them, so the response never sits in memory as a whole. Only for logged-in users:
+    // a long response is a long request.
+    private void streamRides(HttpExchange exchange) throws IOException {
+        authenticate(exchange);
+        Map<String, String> query = parseForm(exchange.getRequestURI().getRawQuery());
+        String from = blankToNull(query.get("from"));
+        String to = blankToNull(query.get("to"));
+
+        sendJson(exchange, 200, json -> {
+            json.beginObject().name("rides").beginArray();
+            int count = streamRows(consumer -> system.streamRides(from, to, consumer), json, ModelJson::writeRide);
+            json.endArray().field("count", count).endObject();
+        });
+    }
+
+    private void createRide(HttpExchange exchange) throws IOException {
+        User user = authenticate(exchange);
+        Map<String, String> form = readForm(exchange);
+
+        // Drivers may supply their licence with the ride, as the console flow asks for it
+        String licenceNo = blankToNull(form.get("licenceNo"));
+        String licenceExp = blankToNull(form.get("licenceExp"));
+        if (!system.hasValidLicence(user) && licenceNo != null && licenceExp != null) {
+            system.updateUserLicence(user, licenceNo, licenceExp);
+        }
+        if (!system.hasValidLicence(user)) {
+            throw new ApiException(403, "A driving licence is required to offer a ride");
+        }
+
+        int seats = parseInt(required(form, "seats"), "seats");
+        double fare = parseDouble(required(form, "fare"), "fare");
+        if (seats <= 0 || fare <= 0) {
+            throw new ApiException(400, "Seats and fare must be positive");
+        }
+        LocalDateTime departureTime = parseDateTime(form.get("departureTime"), "departureTime");
+        if (departureTime != null && departureTime.isBefore(LocalDateTime.now())) {
+            throw new ApiException(400, "Departure time must be in the future");
+        }
+
+        Ride ride = system.createRide(required(form, "source"), required(form, "destination"),
+                parseLocation(form, "source"), parseLocation(form, "destination"), departureTime, seats, fare,
+                required(form, "carBrand"), required(form, "carModel"), required(form, "carNumber"), user);
+        if (ride == null) {
+            throw new ApiException(500, "Could not create the ride");
+        }
+        sendJson(exchange, 201, json -> {
+            json.beginObject().name("ride");
+            ModelJson.writeRide(json, ride);
+            json.endObject();
+        });
+    }
+
+    private void myBookings(HttpExchange exchange) throws IOException {
+        User user = authenticate(exchange);
+
+        sendJson(exchange, 200, json -> {
+            json.beginObject().name("bookings").beginArray();
+            streamRows(consumer -> system.streamUserBookings(user, consumer), json, ModelJson::writeBooking);
+            json.endArray().endObject();
+        });
+    }
+
+    private void bookRide(HttpExchange exchange) throws IOException {
+        User user = authenticate(exchange);
+        Map<String, String> form = readForm(exchange);
+        int rideId = parseInt(required(form, "rideId"), "rideId");
+        int seats = parseInt(required(form, "seats"), "seats");
+        if (seats <= 0) {
+            throw new ApiException(400, "Seats must be at least 1");
+        }
+
+        Ride ride = system.findRide(rideId);
+        if (ride == null) {
+            throw new ApiException(404, "No ride #" + rideId);
+        }
+        Booking booking = system.bookRide(user, ride, seats);
+        if (booking == null) {
+            throw new ApiException(409, "Ride #" + rideId + " has not enough seats available or has departed");
+        }
+        sendJson(exchange, 201, json -> {
+            json.beginObject().name("booking");
+            ModelJson.writeBooking(json, booking);
+            json.endObject();
+        });
+    }
+
+    private void cancelBooking(HttpExchange exchange, int bookingId) throws IOException {
+        User user = authenticate(exchange);
+
+        // Looking the booking up among the caller's own also checks ownership
+        Booking booking = null;
+        for (Booking candidate : system.getUserBookings(user)) {
+            if (candidate.getBooking_id() == bookingId) {
+                booking = candidate;
+                break;
+            }
+        }
+        if (booking == null) {
+            throw new ApiException(404, "No booking #" + bookingId);
+        }
+        if (!system.deleteBooking(booking)) {
+            throw new ApiException(409, "Booking #" + bookingId + " can no longer be cancelled");
+        }
+        Booking cancelled = booking;
+        sendJson(exchange, 200, json -> {
+            json.beginObject().name("booking");
+            ModelJson.writeBooking(json, cancelled);
+            json.endObject();
+        });
+    }
+
+    // ==================== SESSIONS ====================
+
+    private User authenticate(HttpExchange exchange) {
+        String token = bearerToken(exchange);
+        Session session = token != null ? sessions.get(token) : null;
+        if (session == null || session.expiresAt <= System.currentTimeMillis()) {
+            if (session != null) {
+                sessions.remove(token);
+            }
+            throw new ApiException(401, "Please log in");
+        }
+        User user = system.getUser(session.userId);
+        if (user == null) {
+            sessions.remove(token);
+            throw new ApiException(401, "Please log in");
+        }
+        return user;
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            return null;
+        }
+        return header.substring("Bearer ".length()).trim();
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[24];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    // ==================== METRICS ====================
+
+    // Plain-text scrape of the per-operation metrics and the system gauges
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringBuilder text = new StringBuilder(4096);
+            Map<String, Number> gauges = system.getGauges();
+            async.addGauges(gauges);
+            system.getMetrics().writeText(text, gauges);
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-store");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // ==================== STATIC FILES ====================
+
+    private void handleStatic(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            if (path.endsWith("/")) {
+                path += "index.html";
+            }
+            // Resolve inside the web root only; ".." segments cannot climb out of it
+            Path file = webRoot.resolve(path.substring(1)).normalize();
+            if (!file.startsWith(webRoot) || !Files.isRegularFile(file)) {
+                byte[] body = "Not found".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                exchange.sendResponseHeaders(404, body.length);
+                exchange.getResponseBody().write(body);
+                return;
+            }
+
+            String name = file.getFileName().toString();
+            String extension = name.substring(name.lastIndexOf('.') + 1);
+            exchange.getResponseHeaders().set("Content-Type",
+                    CONTENT_TYPES.getOrDefault(extension, "application/octet-stream"));
+            if (method.equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, Files.size(file));
+            try (OutputStream out = exchange.getResponseBody()) {
+                Files.copy(file, out);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // ==================== REQUEST PARSING ====================
+
+    private static Map<String, String> readForm(HttpExchange exchange) throws IOException {
+        byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+        if (body.length > MAX_BODY_BYTES) {
+            throw new ApiException(413, "Request body too large");
+        }
+        return parseForm(new String(body, StandardCharsets.UTF_8));
+    }
+
+    // application/x-www-form-urlencoded, used for both query strings and request bodies
+    private static Map<String, String> parseForm(String encoded) {
+        Map<String, String> form = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return form;
+        }
+        for (String pair : encoded.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            try {
+                form.put(URLDecoder.decode(key, StandardCharsets.UTF_8),
+                        URLDecoder.decode(value, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                throw new ApiException(400, "Malformed form field: " + key);
+            }
+        }
+        return form;
+    }
+
+    private static String required(Map<String, String> form, String name) {
+        String value = form.get(name);
+        if (value == null || value.trim().isEmpty()) {
+            throw new ApiException(400, "Missing field: " + name);
+        }
+        return value.trim();
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    private static int parseId(String text) {
+        return parseInt(text, "id");
+    }
+
+    private static int parseInt(String text, String name) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Not a whole number: " + name);
+        }
+    }
+
+    private static long parseLong(String text, String name) {
+        try {
+            return Long.parseLong(text.trim());
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Not a whole number: " + name);
+        }
+    }
+
+    private static double parseDouble(String text, String name) {
+        try {
+            return Double.parseDouble(text.trim());
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Not a number: " + name);
+        }
+    }
+
+    // ISO-8601 local date and time such as 2024-05-01T08:30; null when blank
+    private static LocalDateTime parseDateTime(String text, String name) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(text.trim());
+        } catch (DateTimeParseException e) {
+            throw new ApiException(400, "Not a date and time (yyyy-MM-ddTHH:mm): " + name);
+        }
+    }
+
+    // The <prefix>Lat and <prefix>Lng parameters, or null when neither is given
+    private static GeoPoint parseLocation(Map<String, String> form, String prefix) {
+        String latitude = blankToNull(form.get(prefix + "Lat"));
+        String longitude = blankToNull(form.get(prefix + "Lng"));
+        if (latitude == null && longitude == null) {
+            return null;
+        }
+        if (latitude == null || longitude == null) {
+            throw new ApiException(400, "Give both " + prefix + "Lat and " + prefix + "Lng");
+        }
+        try {
+            return new GeoPoint(parseDouble(latitude, prefix + "Lat"), parseDouble(longitude, prefix + "Lng"));
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, e.getMessage());
+        }
+    }
+
+    // ==================== JSON ====================
+
+    private interface JsonBody {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    private interface RowWriter<T> {
+        void write(JsonWriter json, T row) throws IOException;
+    }
+
+    // A streaming query such as RideBookingSystem.streamRides; returns the row count
+    private interface RowSource<T> {
+        int stream(Consumer<T> consumer) throws SQLException;
+    }
+
+    // Sent chunked through a pooled JsonWriter, so nothing is built up front. The body
+    // is ended only once it is complete; after a failure answer() leaves it cut off.
+    private static void sendJson(HttpExchange exchange, int status, JsonBody body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(status, 0);
+        OutputStream out = exchange.getResponseBody();
+        try (JsonWriter json = new JsonWriter(out)) {
+            body.write(json);
+        }
+        out.close();
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            // The body was already streaming; all that is left is to cut it short
+            return;
+        }
+        sendJson(exchange, status, json -> json.beginObject().field("error", message).endObject());
+    }
+
+    // Writes each row as the source hands it over. The consumer cannot throw, so an
+    // IOException from the client connection travels out unchecked and is unwrapped here.
+    // A storage failure after the first rows becomes an IOException too, which makes
+    // answer() cut the response off.
+    private static <T> int streamRows(RowSource<T> source, JsonWriter json, RowWriter<T> writer) throws IOException {
+        try {
+            return source.stream(row -> {
+                try {
+                    writer.write(json, row);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (SQLException e) {
+            throw new IOException("Storage failed while streaming: " + e.getMessage(), e);
+        }
+    }
+
+    // ==================== ENTRY POINT ====================
+
+    // java ApiServer [port] [webRoot]
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("api.port", 8080);
+        Path webRoot = Paths.get(args.length > 1 ? args[1] : System.getProperty("api.webRoot", "web"));
+
+        RideBookingSystem system = new RideBookingSystem();
+        ApiServer server = new ApiServer(system, new InetSocketAddress(port), webRoot);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(2);
+            system.shutdown();
+        }, "api-shutdown"));
+
+        server.start();
+    }
+}
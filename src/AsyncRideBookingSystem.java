@@ -0,0 +1,176 @@
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Non-blocking front for RideBookingSystem. Every call returns a CompletableFuture at
+// once and runs on a fixed pool of -Dasync.threads (16) workers behind a queue of
+// -Dasync.queueSize (256) calls, so at most that many operations wait on storage.
+// When the queue is full the future fails straight away with a
+// RejectedExecutionException: overload is turned away at the door, where the caller
+// can answer "busy" or retry, instead of piling up behind the database.
+//
+// Results are those of the blocking methods, including null for a refused operation.
+// A caller that needs several operations in a row submits them together with submit().
+public class AsyncRideBookingSystem {
+
+    private final RideBookingSystem system;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejected = new LongAdder();
+
+    public AsyncRideBookingSystem(RideBookingSystem system) {
+        this(system, Integer.getInteger("async.threads", 16), Integer.getInteger("async.queueSize", 256));
+    }
+
+    public AsyncRideBookingSystem(RideBookingSystem system, int threads, int queueSize) {
+        this.system = system;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread t = new Thread(r, "ride-async-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // Queues work that makes several blocking calls on the system as one task, so it is
+    // either turned away before any of them runs or runs them all. The operation names
+    // it in the rejection message.
+    public <T> CompletableFuture<T> submit(String operation, Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "Too busy for " + operation + ": " + executor.getQueue().size() + " calls already waiting", e));
+        }
+    }
+
+    private CompletableFuture<Void> submit(String operation, Runnable call) {
+        return submit(operation, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    // ==================== USERS ====================
+
+    public CompletableFuture<Void> registerUserAsync(User user) {
+        return submit("registerUser", () -> system.registerUser(user));
+    }
+
+    public CompletableFuture<User> loginUserAsync(String email, String password) {
+        return submit("loginUser", () -> system.loginUser(email, password));
+    }
+
+    public CompletableFuture<User> getUserAsync(int id) {
+        return submit("getUser", () -> system.getUser(id));
+    }
+
+    public CompletableFuture<Boolean> hasValidLicenceAsync(User user) {
+        return submit("hasValidLicence", () -> system.hasValidLicence(user));
+    }
+
+    public CompletableFuture<Void> updateUserLicenceAsync(User user, String licenceNo, String licenceExp) {
+        return submit("updateUserLicence", () -> system.updateUserLicence(user, licenceNo, licenceExp));
+    }
+
+    public CompletableFuture<Boolean> deleteAccountAsync(User user) {
+        return submit("deleteAccount", () -> system.deleteAccount(user));
+    }
+
+    // ==================== RIDES ====================
+
+    public CompletableFuture<Ride> createRideAsync(String source, String destination, GeoPoint sourceLocation,
+            GeoPoint destinationLocation, LocalDateTime departureTime, int totalSeats, double fare,
+            String carBrand, String carModel, String carNumberPlate, User createdBy) {
+        return submit("createRide", () -> system.createRide(source, destination, sourceLocation,
+                destinationLocation, departureTime, totalSeats, fare, carBrand, carModel, carNumberPlate,
+                createdBy));
+    }
+
+    public CompletableFuture<Ride> findRideAsync(int rideId) {
+        return submit("findRide", () -> system.findRide(rideId));
+    }
+
+    public CompletableFuture<Boolean> deleteRideAsync(Ride ride) {
+        return submit("deleteRide", () -> system.deleteRide(ride));
+    }
+
+    public CompletableFuture<List<Ride>> searchRidesAsync(String source, String destination) {
+        return submit("searchRides", () -> system.searchRides(source, destination));
+    }
+
+    public CompletableFuture<RidePage> searchRidesPageAsync(String source, String destination, int afterRideId,
+            int pageSize) {
+        return submit("searchRidesPage", () -> system.searchRidesPage(source, destination, afterRideId, pageSize));
+    }
+
+    public CompletableFuture<List<Ride>> searchRidesDepartingAsync(String source, String destination,
+            LocalDateTime from, LocalDateTime to) {
+        return submit("searchRidesDeparting", () -> system.searchRidesDeparting(source, destination, from, to));
+    }
+
+    public CompletableFuture<List<Ride>> searchNearbyAsync(GeoPoint from, GeoPoint to, double radiusMeters,
+            int limit) {
+        return submit("searchNearby", () -> system.searchNearby(from, to, radiusMeters, limit));
+    }
+
+    public CompletableFuture<List<Ride>> recommendRidesAsync(String source, String destination,
+            LocalDateTime departure, int seats, int k) {
+        return submit("recommendRides", () -> system.recommendRides(source, destination, departure, seats, k));
+    }
+
+    // ==================== BOOKINGS ====================
+
+    public CompletableFuture<Booking> bookRideAsync(User user, Ride ride, int seats) {
+        return submit("bookRide", () -> system.bookRide(user, ride, seats));
+    }
+
+    public CompletableFuture<List<Booking>> getUserBookingsAsync(User user) {
+        return submit("getUserBookings", () -> system.getUserBookings(user));
+    }
+
+    public CompletableFuture<Boolean> updateBookingAsync(Booking booking, int newSeats) {
+        return submit("updateBooking", () -> system.updateBooking(booking, newSeats));
+    }
+
+    public CompletableFuture<Boolean> cancelBookingAsync(Booking booking) {
+        return submit("cancelBooking", () -> system.deleteBooking(booking));
+    }
+
+    // ==================== LIFECYCLE ====================
+
+    public RideBookingSystem getSystem() {
+        return system;
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    // Published next to the system's own gauges
+    public void addGauges(Map<String, Number> gauges) {
+        gauges.put("async_active", executor.getActiveCount());
+        gauges.put("async_queued", executor.getQueue().size());
+        gauges.put("async_queue_capacity", executor.getQueue().size() + executor.getQueue().remainingCapacity());
+        gauges.put("async_rejected", rejected.sum());
+    }
+
+    // Lets queued calls finish; the system itself is left to its owner
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
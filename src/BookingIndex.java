@@ -0,0 +1,93 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Bookings this node has seen, by booking_id with secondary indexes by ride_id and
+// user_id. Every lookup and removal is a hash probe on a primitive int key.
+public class BookingIndex {
+
+    private final IntObjectMap<Booking> byId = new IntObjectMap<>();
+    private final IntObjectMap<IntHashSet> idsByRide = new IntObjectMap<>();
+    private final IntObjectMap<IntHashSet> idsByUser = new IntObjectMap<>();
+
+    public synchronized void add(Booking booking) {
+        Booking previous = byId.put(booking.getBooking_id(), booking);
+        if (previous != null) {
+            unlink(previous);
+        }
+        link(idsByRide, booking.getRide_id(), booking.getBooking_id());
+        link(idsByUser, booking.getUser_id(), booking.getBooking_id());
+    }
+
+    public synchronized Booking get(int bookingId) {
+        return byId.get(bookingId);
+    }
+
+    public synchronized Booking remove(int bookingId) {
+        Booking removed = byId.remove(bookingId);
+        if (removed != null) {
+            unlink(removed);
+        }
+        return removed;
+    }
+
+    // Drop every booking of a ride; returns how many were removed
+    public synchronized int removeRide(int rideId) {
+        IntHashSet ids = idsByRide.remove(rideId);
+        if (ids == null) {
+            return 0;
+        }
+        ids.forEach(id -> {
+            Booking removed = byId.remove(id);
+            if (removed != null) {
+                unlink(idsByUser, removed.getUser_id(), id);
+            }
+        });
+        return ids.size();
+    }
+
+    public synchronized List<Booking> bookingsOfRide(int rideId) {
+        return collect(idsByRide.get(rideId));
+    }
+
+    public synchronized List<Booking> bookingsOfUser(int userId) {
+        return collect(idsByUser.get(userId));
+    }
+
+    public synchronized List<Booking> values() {
+        return byId.values();
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    private List<Booking> collect(IntHashSet ids) {
+        if (ids == null) {
+            return new ArrayList<>();
+        }
+        List<Booking> result = new ArrayList<>(ids.size());
+        ids.forEach(id -> result.add(byId.get(id)));
+        return result;
+    }
+
+    private void unlink(Booking booking) {
+        unlink(idsByRide, booking.getRide_id(), booking.getBooking_id());
+        unlink(idsByUser, booking.getUser_id(), booking.getBooking_id());
+    }
+
+    private static void link(IntObjectMap<IntHashSet> index, int key, int bookingId) {
+        IntHashSet ids = index.get(key);
+        if (ids == null) {
+            ids = new IntHashSet();
+            index.put(key, ids);
+        }
+        ids.add(bookingId);
+    }
+
+    private static void unlink(IntObjectMap<IntHashSet> index, int key, int bookingId) {
+        IntHashSet ids = index.get(key);
+        if (ids != null && ids.remove(bookingId) && ids.isEmpty()) {
+            index.remove(key);
+        }
+    }
+}
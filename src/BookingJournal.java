@@ -0,0 +1,379 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Durability for MemoryStorage. Every change is appended to a Journal before it is
+// applied to the tables, under the same locks, so the journal order is an order the
+// tables went through. On startup the journal is replayed to rebuild the tables.
+// Bookings and ride changes are logged as events that replay re-applies to the seat
+// counts; users, and the rows in a snapshot, are logged as whole rows.
+//
+// Settings (system properties):
+//   journal.segmentBytes         size of each segment file (64 MB)
+//   journal.fsync                always, interval or never (interval)
+//   journal.fsyncIntervalMs      time between syncs under interval (50)
+//   journal.compactAfterSegments log segments that trigger a compaction (8)
+public class BookingJournal implements AutoCloseable {
+
+    // Record types; never renumber, replay reads old journals by these
+    static final int USER_SAVED = 1;
+    static final int ACCOUNT_DELETED = 2;
+    static final int RIDE_SAVED = 3;
+    static final int RIDE_UPDATED = 4;
+    static final int RIDE_DELETED = 5;
+    static final int BOOKED = 6;
+    static final int SEATS_CHANGED = 7;
+    static final int CANCELLED = 8;
+    // Only in snapshots
+    static final int BOOKING_SAVED = 9;
+    static final int SEQUENCES = 10;
+
+    private final MemoryStorage db;
+    private final Journal journal;
+    private final int compactAfterSegments;
+    private final AtomicBoolean compactionPending = new AtomicBoolean();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "journal-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Replays the journal in the directory into the storage's tables
+    BookingJournal(MemoryStorage db, Path directory) throws IOException {
+        this.db = db;
+        this.compactAfterSegments = Math.max(2, Integer.getInteger("journal.compactAfterSegments", 8));
+        long started = System.nanoTime();
+        this.journal = new Journal(directory,
+                Integer.getInteger("journal.segmentBytes", 64 << 20),
+                Journal.FsyncPolicy.valueOf(System.getProperty("journal.fsync", "interval").toUpperCase(Locale.ROOT)),
+                Long.getLong("journal.fsyncIntervalMs", 50L),
+                new Replayer());
+        System.out.printf(Locale.ROOT, "Journal %s replayed in %.1f ms: %d users, %d rides, %d bookings.%n",
+                directory, (System.nanoTime() - started) / 1e6, db.users.size(), db.rides.size(), db.bookings.size());
+    }
+
+    // ==================== LOGGING ====================
+
+    // Each method is called with the locks of the rows it describes held, before the
+    // change is applied. A failed append leaves the tables untouched.
+
+    void userSaved(MemoryStorage.UserRow row) throws SQLException {
+        append(USER_SAVED, out -> writeUser(out, row));
+    }
+
+    void accountDeleted(int userId) throws SQLException {
+        append(ACCOUNT_DELETED, out -> out.putInt(userId));
+    }
+
+    void rideSaved(MemoryStorage.RideRow row) throws SQLException {
+        append(RIDE_SAVED, out -> writeRide(out, row));
+    }
+
+    void rideUpdated(int rideId, String source, String destination, int totalSeats, double fare)
+            throws SQLException {
+        append(RIDE_UPDATED, out -> {
+            out.putInt(rideId);
+            putString(out, source);
+            putString(out, destination);
+            out.putInt(totalSeats);
+            out.putDouble(fare);
+        });
+    }
+
+    void rideDeleted(int rideId) throws SQLException {
+        append(RIDE_DELETED, out -> out.putInt(rideId));
+    }
+
+    void booked(MemoryStorage.BookingRow row) throws SQLException {
+        append(BOOKED, out -> writeBooking(out, row));
+    }
+
+    void seatsChanged(int bookingId, int newSeats, double newFare) throws SQLException {
+        append(SEATS_CHANGED, out -> {
+            out.putInt(bookingId);
+            out.putInt(newSeats);
+            out.putDouble(newFare);
+        });
+    }
+
+    void cancelled(int bookingId) throws SQLException {
+        append(CANCELLED, out -> out.putInt(bookingId));
+    }
+
+    private void append(int type, Journal.RecordBody body) throws SQLException {
+        try {
+            journal.append(type, body);
+        } catch (IOException e) {
+            throw new SQLException("Could not write the journal: " + e.getMessage(), e);
+        }
+        if (journal.getLogSegmentCount() >= compactAfterSegments && compactionPending.compareAndSet(false, true)) {
+            compactor.execute(this::compact);
+        }
+    }
+
+    // ==================== COMPACTION ====================
+
+    // Replaces the journal with a snapshot of the tables. Writers wait for it to finish.
+    public void compact() {
+        db.lock.writeLock().lock();
+        try {
+            long started = System.nanoTime();
+            journal.compact(this::writeSnapshot);
+            System.out.printf(Locale.ROOT, "Journal compacted in %.1f ms.%n", (System.nanoTime() - started) / 1e6);
+        } catch (IOException e) {
+            System.err.println("Journal compaction failed: " + e.getMessage());
+        } finally {
+            db.lock.writeLock().unlock();
+            compactionPending.set(false);
+        }
+    }
+
+    // Callers hold the write lock, so no row changes underneath
+    private void writeSnapshot(Journal.RecordSink sink) throws IOException {
+        sink.append(SEQUENCES, out -> {
+            out.putInt(db.nextUserId.get());
+            out.putInt(db.nextRideId.get());
+            out.putInt(db.nextBookingId.get());
+        });
+        for (MemoryStorage.UserRow row : db.users.values()) {
+            sink.append(USER_SAVED, out -> writeUser(out, row));
+        }
+        for (MemoryStorage.RideRow row : db.rides.values()) {
+            sink.append(RIDE_SAVED, out -> writeRide(out, row));
+        }
+        for (MemoryStorage.BookingRow row : db.bookings.values()) {
+            sink.append(BOOKING_SAVED, out -> {
+                writeBooking(out, row);
+                putString(out, row.status);
+            });
+        }
+    }
+
+    // ==================== REPLAY ====================
+
+    private class Replayer implements Journal.RecordHandler {
+
+        @Override
+        public void snapshotStarts() {
+            db.clear();
+        }
+
+        // Records about rows that are gone are skipped, as their statements matched nothing
+        @Override
+        public void handle(int type, ByteBuffer in) {
+            switch (type) {
+                case USER_SAVED:
+                    db.putUser(readUser(in));
+                    break;
+                case ACCOUNT_DELETED:
+                    db.deleteAccountRows(in.getInt());
+                    break;
+                case RIDE_SAVED:
+                    db.putRide(readRide(in));
+                    break;
+                case RIDE_UPDATED: {
+                    MemoryStorage.RideRow ride = db.rides.get(in.getInt());
+                    String source = getString(in);
+                    String destination = getString(in);
+                    int totalSeats = in.getInt();
+                    double fare = in.getDouble();
+                    if (ride != null) {
+                        db.updateRide(ride, source, destination, totalSeats, fare);
+                    }
+                    break;
+                }
+                case RIDE_DELETED:
+                    db.removeRide(in.getInt());
+                    break;
+                case BOOKED: {
+                    MemoryStorage.BookingRow booking = readBooking(in);
+                    MemoryStorage.RideRow ride = db.rides.get(booking.rideId);
+                    if (ride != null) {
+                        db.applyBooked(ride, booking);
+                    }
+                    break;
+                }
+                case SEATS_CHANGED: {
+                    MemoryStorage.BookingRow booking = db.bookings.get(in.getInt());
+                    int newSeats = in.getInt();
+                    double newFare = in.getDouble();
+                    MemoryStorage.RideRow ride = booking != null ? db.rides.get(booking.rideId) : null;
+                    if (ride != null) {
+                        db.applySeatsChanged(ride, booking, newSeats, newFare);
+                    }
+                    break;
+                }
+                case CANCELLED: {
+                    MemoryStorage.BookingRow booking = db.bookings.get(in.getInt());
+                    MemoryStorage.RideRow ride = booking != null ? db.rides.get(booking.rideId) : null;
+                    if (ride != null) {
+                        db.applyCancelled(ride, booking);
+                    }
+                    break;
+                }
+                case BOOKING_SAVED: {
+                    MemoryStorage.BookingRow booking = readBooking(in);
+                    booking.status = getString(in);
+                    db.addBooking(booking);
+                    break;
+                }
+                case SEQUENCES:
+                    db.nextUserId.set(in.getInt());
+                    db.nextRideId.set(in.getInt());
+                    db.nextBookingId.set(in.getInt());
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown journal record type " + type);
+            }
+        }
+    }
+
+    // ==================== ENCODING ====================
+
+    private static void writeUser(ByteBuffer out, MemoryStorage.UserRow row) {
+        out.putInt(row.id);
+        putString(out, row.name);
+        putString(out, row.email);
+        putString(out, row.password);
+        out.putLong(row.phoneNumber);
+        putString(out, row.licenceNo);
+        putString(out, row.licenceExp);
+    }
+
+    private static MemoryStorage.UserRow readUser(ByteBuffer in) {
+        return new MemoryStorage.UserRow(in.getInt(), getString(in), getString(in), getString(in), in.getLong(),
+                getString(in), getString(in));
+    }
+
+    private static void writeRide(ByteBuffer out, MemoryStorage.RideRow row) {
+        out.putInt(row.rideId);
+        out.putInt(row.createdBy);
+        putString(out, row.carBrand);
+        putString(out, row.carModel);
+        putString(out, row.carNumberPlate);
+        putTime(out, row.timestamp);
+        putString(out, row.source);
+        putString(out, row.destination);
+        out.putInt(row.totalSeats);
+        out.putInt(row.availableSeats);
+        out.putDouble(row.fare);
+        putLocation(out, row.sourceLocation);
+        putLocation(out, row.destinationLocation);
+        putTime(out, row.departureTime);
+    }
+
+    // Positions and then the departure time were added after the first rides were
+    // journaled; older records end before them
+    private static MemoryStorage.RideRow readRide(ByteBuffer in) {
+        int rideId = in.getInt();
+        int createdBy = in.getInt();
+        String carBrand = getString(in);
+        String carModel = getString(in);
+        String carNumberPlate = getString(in);
+        LocalDateTime timestamp = getTime(in);
+        String source = getString(in);
+        String destination = getString(in);
+        int totalSeats = in.getInt();
+        int availableSeats = in.getInt();
+        double fare = in.getDouble();
+        GeoPoint sourceLocation = in.hasRemaining() ? getLocation(in) : null;
+        GeoPoint destinationLocation = in.hasRemaining() ? getLocation(in) : null;
+        LocalDateTime departureTime = in.hasRemaining() ? getTime(in) : null;
+        return new MemoryStorage.RideRow(rideId, createdBy, carBrand, carModel, carNumberPlate, timestamp,
+                sourceLocation, destinationLocation, departureTime, source, destination, totalSeats, availableSeats,
+                fare);
+    }
+
+    private static void writeBooking(ByteBuffer out, MemoryStorage.BookingRow row) {
+        out.putInt(row.bookingId);
+        out.putInt(row.rideId);
+        out.putInt(row.userId);
+        out.putInt(row.totalSeats);
+        out.putDouble(row.totalFare);
+        putTime(out, row.bookingTime);
+    }
+
+    private static MemoryStorage.BookingRow readBooking(ByteBuffer in) {
+        return new MemoryStorage.BookingRow(in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getDouble(),
+                getTime(in));
+    }
+
+    // Length-prefixed UTF-8; -1 for null
+    private static void putString(ByteBuffer out, String value) {
+        if (value == null) {
+            out.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Latitude and longitude; NaN for null
+    private static void putLocation(ByteBuffer out, GeoPoint location) {
+        out.putDouble(location != null ? location.getLatitude() : Double.NaN);
+        out.putDouble(location != null ? location.getLongitude() : Double.NaN);
+    }
+
+    private static GeoPoint getLocation(ByteBuffer in) {
+        double latitude = in.getDouble();
+        double longitude = in.getDouble();
+        return Double.isNaN(latitude) ? null : new GeoPoint(latitude, longitude);
+    }
+
+    // Seconds and nanoseconds of the local time read as UTC; Long.MIN_VALUE for null
+    private static void putTime(ByteBuffer out, LocalDateTime time) {
+        if (time == null) {
+            out.putLong(Long.MIN_VALUE);
+            return;
+        }
+        out.putLong(time.toEpochSecond(ZoneOffset.UTC));
+        out.putInt(time.getNano());
+    }
+
+    private static LocalDateTime getTime(ByteBuffer in) {
+        long seconds = in.getLong();
+        return seconds == Long.MIN_VALUE ? null : LocalDateTime.ofEpochSecond(seconds, in.getInt(), ZoneOffset.UTC);
+    }
+
+    // ==================== LIFECYCLE ====================
+
+    void addGauges(Map<String, Number> gauges) {
+        gauges.put("journal_appends", journal.getAppendCount());
+        gauges.put("journal_syncs", journal.getSyncCount());
+        gauges.put("journal_log_segments", journal.getLogSegmentCount());
+        gauges.put("journal_compactions", journal.getCompactionCount());
+    }
+
+    // Waits for a running compaction, then syncs and closes the journal
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+    }
+}
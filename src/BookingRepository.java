@@ -0,0 +1,55 @@
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+// The bookings table. A booking is active until its status is CANCELLED; every seat
+// change moves the same number of seats on the ride, so the two never disagree.
+public interface BookingRepository {
+
+    // Outcome of a booking or a resize: the booking, its fare and the seats left on the ride
+    class Result {
+        private final int bookingId;
+        private final double totalFare;
+        private final int remainingSeats;
+
+        Result(int bookingId, double totalFare, int remainingSeats) {
+            this.bookingId = bookingId;
+            this.totalFare = totalFare;
+            this.remainingSeats = remainingSeats;
+        }
+
+        public int getBookingId() {
+            return bookingId;
+        }
+
+        public double getTotalFare() {
+            return totalFare;
+        }
+
+        public int getRemainingSeats() {
+            return remainingSeats;
+        }
+    }
+
+    // Takes the seats from the ride and inserts a CONFIRMED booking. The future holds
+    // null when the ride has fewer seats left, and fails on a storage error.
+    CompletableFuture<Result> book(int rideId, int userId, int seats, LocalDateTime bookingTime);
+
+    // Resizes an active booking, moving the difference on its ride and repricing it at
+    // the ride's fare. Null when the booking is cancelled or the ride lacks the seats.
+    Result update(int bookingId, int newSeats) throws SQLException;
+
+    // Cancels an active booking and returns its seats; false when it already was cancelled
+    boolean cancel(int bookingId) throws SQLException;
+
+    // Seats held by the active bookings on a ride
+    int activeSeats(int rideId) throws SQLException;
+
+    // The user's active bookings in booking_id order
+    void streamActiveByUser(int userId, Consumer<Booking> consumer) throws SQLException;
+
+    // Every active booking in booking_id order, with a ride carrying its source and
+    // destination and a user carrying their name
+    void streamActive(Consumer<Booking> consumer) throws SQLException;
+}
@@ -0,0 +1,250 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Group-commit write path for bookings. Concurrent bookRide calls are queued, and a
+// single writer thread flushes them as one JDBC batch inside one transaction, so a
+// burst of bookings pays for one commit instead of one each.
+public class BookingWriter implements AutoCloseable {
+
+    // Guarded seat decrement and booking insert in a single statement. The UPDATE takes
+    // the ride's row lock, so concurrent bookers queue on that one row and the insert
+    // only happens when the decrement succeeded.
+    static final String BOOK_RIDE_SQL =
+            "WITH reserved AS (" +
+                    "UPDATE rides SET available_seats = available_seats - ? " +
+                    "WHERE ride_id = ? AND available_seats >= ? " +
+                    "RETURNING ride_id, fare, available_seats) " +
+                    "INSERT INTO bookings (ride_id, user_id, total_seats, total_fare, status, booking_time) " +
+                    "SELECT ride_id, ?, ?, fare * ?, 'CONFIRMED', ? FROM reserved " +
+                    "RETURNING booking_id, total_fare, (SELECT available_seats FROM reserved) AS available_seats";
+
+    private static class Request {
+        final int rideId;
+        final int userId;
+        final int seats;
+        final LocalDateTime bookingTime;
+        final CompletableFuture<BookingRepository.Result> future = new CompletableFuture<>();
+        // Round trips of the submitting thread, which get this booking's share of its batch
+        final AtomicLong roundTrips = RoundTripCounter.currentCounter();
+
+        Request(int rideId, int userId, int seats, LocalDateTime bookingTime) {
+            this.rideId = rideId;
+            this.userId = userId;
+            this.seats = seats;
+            this.bookingTime = bookingTime;
+        }
+    }
+
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean running = true;
+    // Submits hold the read lock from the running check to the enqueue, so once
+    // stopAccepting has the write lock nothing more can join the queue
+    private final ReentrantReadWriteLock accepting = new ReentrantReadWriteLock();
+
+    private volatile long batches;
+    private volatile long bookings;
+
+    public BookingWriter(int maxBatchSize, long maxLingerMicros) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerNanos = TimeUnit.MICROSECONDS.toNanos(maxLingerMicros);
+        this.flusher = new Thread(this::run, "booking-writer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public CompletableFuture<BookingRepository.Result> submit(int rideId, int userId, int seats,
+            LocalDateTime bookingTime) {
+        Request request = new Request(rideId, userId, seats, bookingTime);
+        accepting.readLock().lock();
+        try {
+            if (!running) {
+                request.future.completeExceptionally(new SQLException("Booking writer is shut down"));
+                return request.future;
+            }
+            queue.add(request);
+        } finally {
+            accepting.readLock().unlock();
+        }
+        return request.future;
+    }
+
+    private void stopAccepting() {
+        accepting.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            accepting.writeLock().unlock();
+        }
+    }
+
+    private void run() {
+        List<Request> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (running || !queue.isEmpty()) {
+                batch.clear();
+                Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Wait up to the linger time for more bookings to share this commit
+                long deadline = System.nanoTime() + maxLingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    Request next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                try {
+                    flush(batch);
+                } catch (RuntimeException e) {
+                    for (Request request : batch) {
+                        request.future.completeExceptionally(e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // Stop at once; whatever is not written yet fails below
+        } finally {
+            // Nothing may wait forever on a booking this thread will never write.
+            // Futures that already completed ignore this.
+            stopAccepting();
+            SQLException stopped = new SQLException("Booking writer stopped before the booking was written");
+            queue.drainTo(batch);
+            for (Request request : batch) {
+                request.future.completeExceptionally(stopped);
+            }
+        }
+    }
+
+    private void flush(List<Request> batch) {
+        // Lock rides in a fixed order so two batches can never deadlock each other
+        batch.sort(Comparator.comparingInt(r -> r.rideId));
+
+        long roundTrips = RoundTripCounter.currentThread();
+        BookingRepository.Result[] results;
+        SQLException[] errors = new SQLException[batch.size()];
+        try {
+            results = executeBatch(batch);
+            batches++;
+            bookings += batch.size();
+        } catch (SQLException e) {
+            results = new BookingRepository.Result[batch.size()];
+            if (batch.size() == 1) {
+                errors[0] = e;
+            } else {
+                // One bad row aborts the whole transaction; retry each booking on its own
+                for (int i = 0; i < batch.size(); i++) {
+                    try {
+                        results[i] = executeBatch(List.of(batch.get(i)))[0];
+                    } catch (SQLException single) {
+                        errors[i] = single;
+                    }
+                }
+            }
+        }
+
+        // Credited before the futures complete, so each bookRide counts its share
+        roundTrips = RoundTripCounter.currentThread() - roundTrips;
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).roundTrips.addAndGet(roundTrips / batch.size() + (i < roundTrips % batch.size() ? 1 : 0));
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (errors[i] != null) {
+                batch.get(i).future.completeExceptionally(errors[i]);
+            } else {
+                batch.get(i).future.complete(results[i]);
+            }
+        }
+    }
+
+    private BookingRepository.Result[] executeBatch(List<Request> batch) throws SQLException {
+        BookingRepository.Result[] results = new BookingRepository.Result[batch.size()];
+
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = connection.prepareStatement(BOOK_RIDE_SQL,
+                    Statement.RETURN_GENERATED_KEYS)) {
+                for (Request request : batch) {
+                    stmt.setInt(1, request.seats);
+                    stmt.setInt(2, request.rideId);
+                    stmt.setInt(3, request.seats);
+                    stmt.setInt(4, request.userId);
+                    stmt.setInt(5, request.seats);
+                    stmt.setInt(6, request.seats);
+                    stmt.setTimestamp(7, Timestamp.valueOf(request.bookingTime));
+                    stmt.addBatch();
+                }
+
+                int[] counts = stmt.executeBatch();
+
+                // Only bookings whose guard passed inserted a row, and their keys come back in batch order
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] > 0 && keys.next()) {
+                            results[i] = new BookingRepository.Result(
+                                    keys.getInt("booking_id"),
+                                    keys.getDouble("total_fare"),
+                                    keys.getInt("available_seats"));
+                        }
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    public long getBatchCount() {
+        return batches;
+    }
+
+    public long getBookingCount() {
+        return bookings;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    // Stop accepting bookings and wait for the queued ones to be written
+    @Override
+    public void close() {
+        stopAccepting();
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
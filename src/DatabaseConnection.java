@@ -1,5 +1,4 @@
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 public class DatabaseConnection {
@@ -8,50 +7,71 @@ public class DatabaseConnection {
     private static final String DB_USER = "postgres";
     private static final String DB_PASSWORD = "10242";
 
-    private static Connection connection = null;
+    // Pool settings, overridable with -D system properties so each node can be sized separately
+    private static final int POOL_SIZE = Integer.getInteger("db.pool.size", 10);
+    private static final long CONNECTION_TIMEOUT_MS = Long.getLong("db.pool.connectionTimeoutMs", 30_000L);
+    private static final long IDLE_VALIDATION_MS = Long.getLong("db.pool.idleValidationMs", 30_000L);
+    private static final long MAX_LIFETIME_MS = Long.getLong("db.pool.maxLifetimeMs", 30 * 60_000L);
+    private static final long LEAK_THRESHOLD_MS = Long.getLong("db.pool.leakThresholdMs", 60_000L);
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("db.pool.statementCacheSize", 64);
+    private static final int PROMOTE_STATEMENTS_AFTER = Integer.getInteger("db.pool.promoteStatementsAfter", 3);
+
+    private static volatile ConnectionPool pool = null;
 
     private DatabaseConnection() {
     }
 
-    public static Connection getConnection() {
-        if (connection == null) {
-            try {
-                // Load the PostgreSQL JDBC driver
-                Class.forName("org.postgresql.Driver");
-
-                // Establish the connection
-                connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-                System.out.println("Database connected successfully!");
-
-            } catch (ClassNotFoundException e) {
-                System.err.println("PostgreSQL JDBC Driver not found!");
-                System.err.println("Make sure postgresql-42.7.3.jar is in your classpath.");
-                throw new RuntimeException(e);
-            } catch (SQLException e) {
-                System.err.println("Database connection failed!");
-                System.err.println("Error: " + e.getMessage());
-                throw new RuntimeException(e);
+    public static ConnectionPool getPool() {
+        if (pool == null) {
+            synchronized (DatabaseConnection.class) {
+                if (pool == null) {
+                    try {
+                        // Load the PostgreSQL JDBC driver
+                        Class.forName("org.postgresql.Driver");
+                    } catch (ClassNotFoundException e) {
+                        System.err.println("PostgreSQL JDBC Driver not found!");
+                        System.err.println("Make sure postgresql-42.7.3.jar is in your classpath.");
+                        throw new RuntimeException(e);
+                    }
+
+                    ConnectionPool newPool = new ConnectionPool(DB_URL, DB_USER, DB_PASSWORD, POOL_SIZE,
+                            CONNECTION_TIMEOUT_MS, IDLE_VALIDATION_MS, MAX_LIFETIME_MS, LEAK_THRESHOLD_MS,
+                            STATEMENT_CACHE_SIZE, PROMOTE_STATEMENTS_AFTER);
+
+                    // Open the first connection eagerly so a bad configuration fails at startup
+                    try {
+                        newPool.borrow().close();
+                        System.out.println("Database connected successfully! (pool size " + POOL_SIZE + ")");
+                    } catch (SQLException e) {
+                        newPool.shutdown();
+                        System.err.println("Database connection failed!");
+                        System.err.println("Error: " + e.getMessage());
+                        throw new RuntimeException(e);
+                    }
+                    pool = newPool;
+                }
             }
         }
-        return connection;
+        return pool;
+    }
+
+    // Borrow a pooled connection; close it to give it back to the pool
+    public static Connection getConnection() throws SQLException {
+        return getPool().borrow();
     }
 
     public static void closeConnection() {
-        if (connection != null) {
-            try {
-                connection.close();
-                connection = null;
-                System.out.println("Database connection closed.");
-            } catch (SQLException e) {
-                System.err.println("Error closing database connection: " + e.getMessage());
+        synchronized (DatabaseConnection.class) {
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+                System.out.println("Database connection pool closed.");
             }
         }
     }
+
     public static boolean isConnected() {
-        try {
-            return connection != null && !connection.isClosed();
-        } catch (SQLException e) {
-            return false;
-        }
+        ConnectionPool current = pool;
+        return current != null && current.isRunning();
     }
 }
@@ -0,0 +1,31 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Destination for the admin listings. Rows are written one at a time as they come
+// off the database cursor, so a sink never has to hold a whole table.
+public interface ExportSink extends AutoCloseable {
+
+    void writeLine(String line) throws IOException;
+
+    @Override
+    void close() throws IOException;
+
+    // Standard output; closing it only flushes
+    static ExportSink console() {
+        return new WriterExportSink(new PrintWriter(System.out), false);
+    }
+
+    static ExportSink toFile(Path path) throws IOException {
+        return new WriterExportSink(Files.newBufferedWriter(path, StandardCharsets.UTF_8), true);
+    }
+
+    // Any byte stream, such as an HTTP response body; closing the sink closes the stream
+    static ExportSink toStream(OutputStream out) {
+        return new WriterExportSink(new OutputStreamWriter(out, StandardCharsets.UTF_8), true);
+    }
+}
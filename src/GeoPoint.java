@@ -0,0 +1,82 @@
+// A position in decimal degrees (WGS 84), as riders and drivers share them from a map.
+public final class GeoPoint {
+
+    static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+    private final double latitude;
+    private final double longitude;
+
+    public GeoPoint(double latitude, double longitude) {
+        if (!(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("Not a position: " + latitude + "," + longitude);
+        }
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    // "lat,lng", as the console and the API take positions; null for a blank text
+    public static GeoPoint parse(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        String[] parts = text.split(",");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Expected latitude,longitude but got: " + text);
+        }
+        return new GeoPoint(Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()));
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    // Half the height, in degrees of latitude, of the box around this point that holds
+    // every point within the radius
+    public static double latitudeSpan(double radiusMeters) {
+        return Math.toDegrees(radiusMeters / EARTH_RADIUS_METERS);
+    }
+
+    // Half the width of that box in degrees of longitude; it widens towards the poles.
+    // Boxes are not wrapped at the antimeridian.
+    public double longitudeSpan(double radiusMeters) {
+        double sine = Math.sin(Math.min(Math.PI / 2, radiusMeters / EARTH_RADIUS_METERS));
+        double cosine = Math.cos(Math.toRadians(latitude));
+        return sine >= cosine ? 180 : Math.toDegrees(Math.asin(sine / cosine));
+    }
+
+    // Great-circle distance by the haversine formula
+    public double distanceMeters(GeoPoint other) {
+        double dLat = Math.toRadians(other.latitude - latitude);
+        double dLon = Math.toRadians(other.longitude - longitude);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(latitude)) * Math.cos(Math.toRadians(other.latitude))
+                        * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GeoPoint)) {
+            return false;
+        }
+        GeoPoint other = (GeoPoint) o;
+        return Double.compare(latitude, other.latitude) == 0 && Double.compare(longitude, other.longitude) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Double.hashCode(latitude) + Double.hashCode(longitude);
+    }
+
+    @Override
+    public String toString() {
+        return latitude + "," + longitude;
+    }
+}
@@ -0,0 +1,117 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+public class JdbcBookingRepository implements BookingRepository {
+
+    // Locks the booking row, moves the seat difference on the ride only if enough seats
+    // are left, then rewrites the booking. Nothing changes when the guard fails.
+    private static final String UPDATE_BOOKING_SQL =
+            "WITH target AS (" +
+                    "SELECT ride_id, total_seats FROM bookings " +
+                    "WHERE booking_id = ? AND status != 'CANCELLED' FOR UPDATE), " +
+                    "adjusted AS (" +
+                    "UPDATE rides r SET available_seats = r.available_seats - (? - t.total_seats) " +
+                    "FROM target t WHERE r.ride_id = t.ride_id AND r.available_seats >= ? - t.total_seats " +
+                    "RETURNING r.fare, r.available_seats) " +
+                    "UPDATE bookings b SET total_seats = ?, total_fare = a.fare * ? " +
+                    "FROM adjusted a WHERE b.booking_id = ? " +
+                    "RETURNING b.total_fare, a.available_seats";
+
+    // Cancels the booking and returns its seats in one statement; a booking that is
+    // already cancelled matches nothing, so its seats cannot be returned twice
+    private static final String CANCEL_BOOKING_SQL =
+            "WITH cancelled AS (" +
+                    "UPDATE bookings SET status = 'CANCELLED' " +
+                    "WHERE booking_id = ? AND status != 'CANCELLED' " +
+                    "RETURNING ride_id, total_seats) " +
+                    "UPDATE rides r SET available_seats = r.available_seats + c.total_seats " +
+                    "FROM cancelled c WHERE r.ride_id = c.ride_id";
+
+    private final BookingWriter bookingWriter;
+
+    public JdbcBookingRepository(BookingWriter bookingWriter) {
+        this.bookingWriter = bookingWriter;
+    }
+
+    @Override
+    public CompletableFuture<Result> book(int rideId, int userId, int seats,
+            LocalDateTime bookingTime) {
+        return bookingWriter.submit(rideId, userId, seats, bookingTime);
+    }
+
+    @Override
+    public Result update(int bookingId, int newSeats) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnection();
+                PreparedStatement stmt = connection.prepareStatement(UPDATE_BOOKING_SQL)) {
+            stmt.setInt(1, bookingId);
+            stmt.setInt(2, newSeats);
+            stmt.setInt(3, newSeats);
+            stmt.setInt(4, newSeats);
+            stmt.setInt(5, newSeats);
+            stmt.setInt(6, bookingId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new Result(bookingId, rs.getDouble("total_fare"), rs.getInt("available_seats"));
+            }
+        }
+    }
+
+    @Override
+    public boolean cancel(int bookingId) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnection();
+                PreparedStatement stmt = connection.prepareStatement(CANCEL_BOOKING_SQL)) {
+            stmt.setInt(1, bookingId);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public int activeSeats(int rideId) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnection();
+                PreparedStatement stmt = connection.prepareStatement(
+                        "SELECT COALESCE(SUM(total_seats), 0) FROM bookings WHERE ride_id = ? AND status != 'CANCELLED'")) {
+            stmt.setInt(1, rideId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    @Override
+    public void streamActiveByUser(int userId, Consumer<Booking> consumer) throws SQLException {
+        JdbcStorage.streamQuery("SELECT b.* FROM bookings b JOIN rides r ON b.ride_id = r.ride_id " +
+                "WHERE b.user_id = ? AND b.status != 'CANCELLED' ORDER BY b.booking_id",
+                stmt -> stmt.setInt(1, userId),
+                rs -> consumer.accept(JdbcStorage.readBooking(rs)));
+    }
+
+    @Override
+    public void streamActive(Consumer<Booking> consumer) throws SQLException {
+        JdbcStorage.streamQuery("SELECT b.*, r.source, r.destination, u.name as user_name " +
+                "FROM bookings b " +
+                "JOIN rides r ON b.ride_id = r.ride_id " +
+                "JOIN users u ON b.user_id = u.id " +
+                "WHERE b.status != 'CANCELLED' " +
+                "ORDER BY b.booking_id",
+                stmt -> {
+                },
+                rs -> {
+                    Booking booking = JdbcStorage.readBooking(rs);
+                    Ride ride = new Ride();
+                    ride.setRide_id(booking.getRide_id());
+                    ride.setSource(rs.getString("source"));
+                    ride.setDestination(rs.getString("destination"));
+                    booking.setRide(ride);
+                    booking.setUser(new User(booking.getUser_id(), rs.getString("user_name"), null, null, 0));
+                    consumer.accept(booking);
+                });
+    }
+}
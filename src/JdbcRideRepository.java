@@ -0,0 +1,241 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Pickup and drop-off positions need four nullable columns, and an index for the
+// nearby search:
+//
+//   ALTER TABLE rides ADD COLUMN source_lat DOUBLE PRECISION, ADD COLUMN source_lng DOUBLE PRECISION,
+//       ADD COLUMN destination_lat DOUBLE PRECISION, ADD COLUMN destination_lng DOUBLE PRECISION;
+//   CREATE INDEX rides_source_position ON rides (source_lat, source_lng) WHERE available_seats > 0;
+//
+// and the departure time one more, with an index for time-windowed searches:
+//
+//   ALTER TABLE rides ADD COLUMN departure_time TIMESTAMP;
+//   CREATE INDEX rides_departure_time ON rides (departure_time) WHERE available_seats > 0;
+public class JdbcRideRepository implements RideRepository {
+
+    @Override
+    public void insert(Ride ride) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnection();
+                PreparedStatement stmt = connection.prepareStatement(
+                        "INSERT INTO rides (source, destination, total_seats, available_seats, fare, created_by, car_brand, car_model, car_number_plate, timestamp, source_lat, source_lng, destination_lat, destination_lng, departure_time) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                        Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, ride.getSource());
+            stmt.setString(2, ride.getDestination());
+            stmt.setInt(3, ride.getTotal_seats());
+            stmt.setInt(4, ride.getTotal_seats()); // available_seats = total_seats initially
+            stmt.setDouble(5, ride.getFare());
+            stmt.setInt(6, ride.getCreatedById());
+            stmt.setString(7, ride.getCarBrand());
+            stmt.setString(8, ride.getCarModel());
+            stmt.setString(9, ride.getCarNumberPlate());
+            stmt.setTimestamp(10, ride.getTimestamp() != null ? Timestamp.valueOf(ride.getTimestamp()) : null);
+            JdbcStorage.bindLocation(stmt, 11, ride.getSourceLocation());
+            JdbcStorage.bindLocation(stmt, 13, ride.getDestinationLocation());
+            stmt.setTimestamp(15, ride.getDepartureTime() != null ? Timestamp.valueOf(ride.getDepartureTime()) : null);
+
+            stmt.executeUpdate();
+
+            // Get the generated ride_id
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    ride.setRide_id(keys.getInt(1));
+                }
+            }
+        }
+    }
+
+    @Override
+    public Ride findById(int rideId) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnection();
+                PreparedStatement stmt = connection.prepareStatement("SELECT * FROM rides WHERE ride_id = ?")) {
+            stmt.setInt(1, rideId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? JdbcStorage.readRide(rs) : null;
+            }
+        }
+    }
+
+    @Override
+    public List<Ride> findByCreator(int userId) throws SQLException {
+        List<Ride> rides = new ArrayList<>();
+        try (Connection connection = DatabaseConnection.getConnection();
+                PreparedStatement stmt = connection.prepareStatement("SELECT * FROM rides WHERE created_by = ?")) {
+            stmt.setInt(1, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rides.add(JdbcStorage.readRide(rs));
+                }
+            }
+        }
+        return rides;
+    }
+
+    // Keyset pagination on ride_id: each page starts after the last ride_id of the
+    // previous one, so deep pages cost the same as the first
+    @Override
+    public void search(String source, String destination, int afterRideId, int limit, Consumer<Ride> consumer)
+            throws SQLException {
+        String sql = "SELECT * FROM rides WHERE available_seats > 0 AND ride_id > ?"
+                + " AND (departure_time IS NULL OR departure_time >= ?)";
+        if (source != null && !source.isEmpty()) {
+            sql += " AND LOWER(source) LIKE LOWER(?)";
+        }
+        if (destination != null && !destination.isEmpty()) {
+            sql += " AND LOWER(destination) LIKE LOWER(?)";
+        }
+        sql += " ORDER BY ride_id";
+        if (limit > 0) {
+            sql += " LIMIT ?";
+        }
+
+        // The application's clock decides what has departed, as it does for the caches
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        JdbcStorage.streamQuery(sql, stmt -> {
+            int paramIndex = 1;
+            stmt.setInt(paramIndex++, afterRideId);
+            stmt.setTimestamp(paramIndex++, now);
+            if (source != null && !source.isEmpty()) {
+                stmt.setString(paramIndex++, "%" + source + "%");
+            }
+            if (destination != null && !destination.isEmpty()) {
+                stmt.setString(paramIndex++, "%" + destination + "%");
+            }
+            if (limit > 0) {
+                stmt.setInt(paramIndex, limit);
+            }
+        }, rs -> consumer.accept(JdbcStorage.readRide(rs)));
+    }
+
+    @Override
+    public void searchDeparting(String source, String destination, LocalDateTime from, LocalDateTime to,
+            Consumer<Ride> consumer) throws SQLException {
+        String sql = "SELECT * FROM rides WHERE available_seats > 0 AND departure_time BETWEEN ? AND ?";
+        if (source != null && !source.isEmpty()) {
+            sql += " AND LOWER(source) LIKE LOWER(?)";
+        }
+        if (destination != null && !destination.isEmpty()) {
+            sql += " AND LOWER(destination) LIKE LOWER(?)";
+        }
+        sql += " ORDER BY departure_time, ride_id";
+
+        JdbcStorage.streamQuery(sql, stmt -> {
+            int paramIndex = 1;
+            stmt.setTimestamp(paramIndex++, Timestamp.valueOf(from));
+            stmt.setTimestamp(paramIndex++, Timestamp.valueOf(to));
+            if (source != null && !source.isEmpty()) {
+                stmt.setString(paramIndex++, "%" + source + "%");
+            }
+            if (destination != null && !destination.isEmpty()) {
+                stmt.setString(paramIndex, "%" + destination + "%");
+            }
+        }, rs -> consumer.accept(JdbcStorage.readRide(rs)));
+    }
+
+    // The boxes around both points narrow the rows in SQL; the exact circles are
+    // checked here
+    @Override
+    public void searchNearby(GeoPoint from, GeoPoint to, double radiusMeters, Consumer<Ride> consumer)
+            throws SQLException {
+        double latitudeSpan = GeoPoint.latitudeSpan(radiusMeters);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        JdbcStorage.streamQuery("SELECT * FROM rides WHERE available_seats > 0 " +
+                "AND (departure_time IS NULL OR departure_time >= ?) " +
+                "AND source_lat BETWEEN ? AND ? AND source_lng BETWEEN ? AND ? " +
+                "AND destination_lat BETWEEN ? AND ? AND destination_lng BETWEEN ? AND ?",
+                stmt -> {
+                    stmt.setTimestamp(1, now);
+                    bindBox(stmt, 2, from, latitudeSpan, from.longitudeSpan(radiusMeters));
+                    bindBox(stmt, 6, to, latitudeSpan, to.longitudeSpan(radiusMeters));
+                },
+                rs -> {
+                    Ride ride = JdbcStorage.readRide(rs);
+                    if (ride.getSourceLocation().distanceMeters(from) <= radiusMeters
+                            && ride.getDestinationLocation().distanceMeters(to) <= radiusMeters) {
+                        consumer.accept(ride);
+                    }
+                });
+    }
+
+    private static void bindBox(PreparedStatement stmt, int index, GeoPoint center, double latitudeSpan,
+            double longitudeSpan) throws SQLException {
+        stmt.setDouble(index, center.getLatitude() - latitudeSpan);
+        stmt.setDouble(index + 1, center.getLatitude() + latitudeSpan);
+        stmt.setDouble(index + 2, center.getLongitude() - longitudeSpan);
+        stmt.setDouble(index + 3, center.getLongitude() + longitudeSpan);
+    }
+
+    @Override
+    public void streamAll(Consumer<Ride> consumer) throws SQLException {
+        JdbcStorage.streamQuery("SELECT r.*, u.name as creator_name FROM rides r " +
+                "LEFT JOIN users u ON r.created_by = u.id " +
+                "ORDER BY r.ride_id",
+                stmt -> {
+                },
+                rs -> {
+                    Ride ride = JdbcStorage.readRide(rs);
+                    String creatorName = rs.getString("creator_name");
+                    if (creatorName != null) {
+                        ride.setCreatedBy(new User(ride.getCreatedById(), creatorName, null, null, 0));
+                    }
+                    consumer.accept(ride);
+                });
+    }
+
+    @Override
+    public int update(int rideId, String source, String destination, int totalSeats, double fare)
+            throws SQLException {
+        // The old row is locked and read in the same statement, so the returned change
+        // is exactly what this update did to available_seats
+        try (Connection connection = DatabaseConnection.getConnection();
+                PreparedStatement stmt = connection.prepareStatement(
+                        "UPDATE rides r SET source = COALESCE(NULLIF(?, ''), r.source), " +
+                                "destination = COALESCE(NULLIF(?, ''), r.destination), " +
+                                "total_seats = CASE WHEN ? > 0 THEN ? ELSE r.total_seats END, " +
+                                "available_seats = CASE WHEN ? > 0 " +
+                                "THEN r.available_seats + ? - r.total_seats ELSE r.available_seats END, " +
+                                "fare = CASE WHEN ? > 0 THEN ? ELSE r.fare END " +
+                                "FROM (SELECT ride_id, total_seats FROM rides WHERE ride_id = ? FOR UPDATE) old " +
+                                "WHERE r.ride_id = old.ride_id " +
+                                "RETURNING r.total_seats - old.total_seats")) {
+
+            stmt.setString(1, source != null ? source : "");
+            stmt.setString(2, destination != null ? destination : "");
+            stmt.setInt(3, totalSeats);
+            stmt.setInt(4, totalSeats);
+            stmt.setInt(5, totalSeats);
+            stmt.setInt(6, totalSeats);
+            stmt.setDouble(7, fare);
+            stmt.setDouble(8, fare);
+            stmt.setInt(9, rideId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    @Override
+    public boolean delete(int rideId) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            // First delete all bookings for this ride (cancelled ones)
+            try (PreparedStatement stmt = connection.prepareStatement("DELETE FROM bookings WHERE ride_id = ?")) {
+                stmt.setInt(1, rideId);
+                stmt.executeUpdate();
+            }
+
+            try (PreparedStatement stmt = connection.prepareStatement("DELETE FROM rides WHERE ride_id = ?")) {
+                stmt.setInt(1, rideId);
+                return stmt.executeUpdate() > 0;
+            }
+        }
+    }
+}
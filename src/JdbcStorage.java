@@ -0,0 +1,161 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Map;
+
+// PostgreSQL storage through the DatabaseConnection pool. Bookings go through the
+// group-commit BookingWriter.
+public class JdbcStorage implements Storage {
+
+    private final JdbcUserRepository users = new JdbcUserRepository();
+    private final JdbcRideRepository rides = new JdbcRideRepository();
+
+    // Batches concurrent bookings into one transaction per flush
+    private final BookingWriter bookingWriter = new BookingWriter(
+            Integer.getInteger("booking.batchSize", 64),
+            Long.getLong("booking.maxLingerMicros", 2000L));
+
+    private final JdbcBookingRepository bookings = new JdbcBookingRepository(bookingWriter);
+
+    public JdbcStorage() {
+        // Start the pool up front; each operation borrows its own connection
+        DatabaseConnection.getPool();
+    }
+
+    @Override
+    public UserRepository getUsers() {
+        return users;
+    }
+
+    @Override
+    public RideRepository getRides() {
+        return rides;
+    }
+
+    @Override
+    public BookingRepository getBookings() {
+        return bookings;
+    }
+
+    public BookingWriter getBookingWriter() {
+        return bookingWriter;
+    }
+
+    @Override
+    public void addGauges(Map<String, Number> gauges) {
+        if (DatabaseConnection.isConnected()) {
+            ConnectionPool pool = DatabaseConnection.getPool();
+            gauges.put("pool_active_connections", pool.getActiveCount());
+            gauges.put("pool_idle_connections", pool.getIdleCount());
+            gauges.put("pool_average_wait_seconds", pool.getAverageWaitMillis() / 1000);
+            gauges.put("pool_timeouts", pool.getTimeoutCount());
+        }
+        gauges.put("booking_writer_queue_depth", bookingWriter.getQueueDepth());
+        gauges.put("booking_writer_batches", bookingWriter.getBatchCount());
+    }
+
+    // Flush queued bookings before the connection pool goes away
+    @Override
+    public void close() {
+        bookingWriter.close();
+        DatabaseConnection.closeConnection();
+    }
+
+    // ==================== SHARED JDBC HELPERS ====================
+
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    interface StatementBinder {
+        void bind(PreparedStatement stmt) throws SQLException;
+    }
+
+    interface RowHandler {
+        void handle(ResultSet rs) throws SQLException;
+    }
+
+    // Runs a query inside a read-only transaction with a fetch size, which makes the
+    // PostgreSQL driver read through a server-side cursor instead of buffering every row
+    static void streamQuery(String sql, StatementBinder binder, RowHandler handler) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setFetchSize(STREAM_FETCH_SIZE);
+                binder.bind(stmt);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        handler.handle(rs);
+                    }
+                }
+            }
+            connection.commit();
+        }
+    }
+
+    static Ride readRide(ResultSet rs) throws SQLException {
+        Timestamp ts = rs.getTimestamp("timestamp");
+        Ride ride = new Ride(
+                rs.getInt("ride_id"),
+                rs.getString("source"),
+                rs.getString("destination"),
+                rs.getInt("total_seats"),
+                rs.getInt("available_seats"),
+                rs.getDouble("fare"),
+                rs.getInt("created_by"),
+                rs.getString("car_brand"),
+                rs.getString("car_model"),
+                rs.getString("car_number_plate"),
+                ts != null ? ts.toLocalDateTime() : null);
+        ride.setSourceLocation(readLocation(rs, "source_lat", "source_lng"));
+        ride.setDestinationLocation(readLocation(rs, "destination_lat", "destination_lng"));
+        Timestamp departure = rs.getTimestamp("departure_time");
+        ride.setDepartureTime(departure != null ? departure.toLocalDateTime() : null);
+        return ride;
+    }
+
+    // Both columns NULL for a ride without a position
+    static GeoPoint readLocation(ResultSet rs, String latitudeColumn, String longitudeColumn) throws SQLException {
+        double latitude = rs.getDouble(latitudeColumn);
+        if (rs.wasNull()) {
+            return null;
+        }
+        return new GeoPoint(latitude, rs.getDouble(longitudeColumn));
+    }
+
+    static void bindLocation(PreparedStatement stmt, int index, GeoPoint location) throws SQLException {
+        if (location == null) {
+            stmt.setNull(index, Types.DOUBLE);
+            stmt.setNull(index + 1, Types.DOUBLE);
+        } else {
+            stmt.setDouble(index, location.getLatitude());
+            stmt.setDouble(index + 1, location.getLongitude());
+        }
+    }
+
+    static User readUser(ResultSet rs) throws SQLException {
+        User user = new User(
+                rs.getInt("id"),
+                rs.getString("name"),
+                rs.getString("email"),
+                rs.getString("password"),
+                rs.getLong("phone_number"));
+        user.setLicence_no(rs.getString("licence_no"));
+        user.setLicence_exp(rs.getString("licence_exp"));
+        return user;
+    }
+
+    static Booking readBooking(ResultSet rs) throws SQLException {
+        Timestamp ts = rs.getTimestamp("booking_time");
+        return new Booking(
+                rs.getInt("booking_id"),
+                rs.getInt("ride_id"),
+                rs.getInt("user_id"),
+                rs.getInt("total_seats"),
+                rs.getDouble("total_fare"),
+                rs.getString("status"),
+                ts != null ? ts.toLocalDateTime() : null);
+    }
+}
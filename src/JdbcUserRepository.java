@@ -0,0 +1,222 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class JdbcUserRepository implements UserRepository {
+
+    @Override
+    public boolean emailExists(String email) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnection();
+                PreparedStatement stmt = connection.prepareStatement("SELECT id FROM users WHERE email = ?")) {
+            stmt.setString(1, email);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    @Override
+    public void insert(User user) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnection();
+                PreparedStatement stmt = connection.prepareStatement(
+                        "INSERT INTO users (name, email, password, phone_number, licence_no, licence_exp) VALUES (?, ?, ?, ?, ?, ?)",
+                        Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, user.getName());
+            stmt.setString(2, user.getEmail());
+            stmt.setString(3, user.getPassword());
+            stmt.setLong(4, user.getPhone_number());
+            stmt.setString(5, user.getLicence_no());
+            stmt.setString(6, user.getLicence_exp());
+
+            stmt.executeUpdate();
+
+            // Get the generated ID
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    user.setId(keys.getInt(1));
+                }
+            }
+        }
+    }
+
+    @Override
+    public User findByCredentials(String email, String password) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnection();
+                PreparedStatement stmt = connection.prepareStatement(
+                        "SELECT id, name, email, password, phone_number, licence_no, licence_exp FROM users WHERE email = ? AND password = ?")) {
+            stmt.setString(1, email);
+            stmt.setString(2, password);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? JdbcStorage.readUser(rs) : null;
+            }
+        }
+    }
+
+    @Override
+    public User findById(int id) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnection();
+                PreparedStatement stmt = connection.prepareStatement(
+                        "SELECT id, name, email, password, phone_number, licence_no, licence_exp FROM users WHERE id = ?")) {
+            stmt.setInt(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? JdbcStorage.readUser(rs) : null;
+            }
+        }
+    }
+
+    @Override
+    public void updateDetails(int id, String name, String email, long phoneNumber) throws SQLException {
+        StringBuilder sql = new StringBuilder("UPDATE users SET ");
+        List<Object> params = new ArrayList<>();
+
+        if (name != null && !name.isEmpty()) {
+            sql.append("name = ?");
+            params.add(name);
+        }
+        if (email != null && !email.isEmpty()) {
+            if (!params.isEmpty())
+                sql.append(", ");
+            sql.append("email = ?");
+            params.add(email);
+        }
+        if (phoneNumber > 0) {
+            if (!params.isEmpty())
+                sql.append(", ");
+            sql.append("phone_number = ?");
+            params.add(phoneNumber);
+        }
+        if (params.isEmpty()) {
+            return;
+        }
+
+        sql.append(" WHERE id = ?");
+
+        try (Connection connection = DatabaseConnection.getConnection();
+                PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (Object param : params) {
+                if (param instanceof String) {
+                    stmt.setString(index++, (String) param);
+                } else if (param instanceof Long) {
+                    stmt.setLong(index++, (Long) param);
+                }
+            }
+            stmt.setInt(index, id);
+
+            stmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public void updateLicence(int id, String licenceNo, String licenceExp) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnection();
+                PreparedStatement stmt = connection.prepareStatement(
+                        "UPDATE users SET licence_no = ?, licence_exp = ? WHERE id = ?")) {
+            stmt.setString(1, licenceNo);
+            stmt.setString(2, licenceExp);
+            stmt.setInt(3, id);
+            stmt.executeUpdate();
+        }
+    }
+
+    // One transaction with a handful of set-based statements. Seats held by the user's
+    // bookings go back to their rides in a single UPDATE.
+    @Override
+    public AccountDeletion deleteAccount(int userId) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                // Lock the user's rides so nobody can book them while we check and delete
+                try (PreparedStatement stmt = connection.prepareStatement(
+                        "SELECT ride_id FROM rides WHERE created_by = ? FOR UPDATE")) {
+                    stmt.setInt(1, userId);
+                    stmt.executeQuery().close();
+                }
+
+                try (PreparedStatement stmt = connection.prepareStatement(
+                        "SELECT COUNT(*) FROM bookings b JOIN rides r ON b.ride_id = r.ride_id " +
+                                "WHERE r.created_by = ? AND b.user_id != ? AND b.status != 'CANCELLED'")) {
+                    stmt.setInt(1, userId);
+                    stmt.setInt(2, userId);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next() && rs.getInt(1) > 0) {
+                            connection.rollback();
+                            return AccountDeletion.refused(AccountDeletion.Outcome.OTHER_PASSENGERS);
+                        }
+                    }
+                }
+
+                // Return the seats of every active booking, grouped per ride
+                List<int[]> seatCounts = new ArrayList<>();
+                try (PreparedStatement stmt = connection.prepareStatement(
+                        "UPDATE rides r SET available_seats = r.available_seats + b.seats " +
+                                "FROM (SELECT ride_id, SUM(total_seats) AS seats FROM bookings " +
+                                "WHERE user_id = ? AND status != 'CANCELLED' GROUP BY ride_id) b " +
+                                "WHERE r.ride_id = b.ride_id " +
+                                "RETURNING r.ride_id, r.available_seats, b.seats")) {
+                    stmt.setInt(1, userId);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            seatCounts.add(new int[] { rs.getInt(1), rs.getInt(2), rs.getInt(3) });
+                        }
+                    }
+                }
+
+                try (PreparedStatement stmt = connection.prepareStatement(
+                        "DELETE FROM bookings WHERE user_id = ? " +
+                                "OR ride_id IN (SELECT ride_id FROM rides WHERE created_by = ?)")) {
+                    stmt.setInt(1, userId);
+                    stmt.setInt(2, userId);
+                    stmt.executeUpdate();
+                }
+
+                IntHashSet deletedRides = new IntHashSet();
+                try (PreparedStatement stmt = connection.prepareStatement(
+                        "DELETE FROM rides WHERE created_by = ? RETURNING ride_id")) {
+                    stmt.setInt(1, userId);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            deletedRides.add(rs.getInt(1));
+                        }
+                    }
+                }
+
+                int rows;
+                try (PreparedStatement stmt = connection.prepareStatement(
+                        "DELETE FROM users WHERE id = ?")) {
+                    stmt.setInt(1, userId);
+                    rows = stmt.executeUpdate();
+                }
+                if (rows == 0) {
+                    connection.rollback();
+                    return AccountDeletion.refused(AccountDeletion.Outcome.NOT_FOUND);
+                }
+
+                connection.commit();
+                return new AccountDeletion(AccountDeletion.Outcome.DELETED, seatCounts, deletedRides);
+
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void streamAll(Consumer<User> consumer) throws SQLException {
+        JdbcStorage.streamQuery("SELECT id, name, email, phone_number FROM users ORDER BY id",
+                stmt -> {
+                },
+                rs -> consumer.accept(new User(
+                        rs.getInt("id"),
+                        rs.getString("name"),
+                        rs.getString("email"),
+                        null,
+                        rs.getLong("phone_number"))));
+    }
+}
@@ -0,0 +1,421 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+// Append-only log of checksummed records in fixed-size segment files. Segments are
+// written through a memory mapping, so an append is a copy into the page cache instead
+// of a system call. Each record is
+//   int length of type and payload | int CRC32C of type and payload | byte type | payload
+// and a zero length marks the end of a segment's records, as new segments start zeroed.
+// Replay stops at the first record that is cut short or fails its checksum, which is
+// what a write torn by a crash looks like, and appends carry on from there.
+//
+// Compaction writes the caller's current state as a snapshot segment and deletes every
+// segment before it. Replay starts at the newest snapshot, so a crash at any point of a
+// compaction leaves either the old segments or the complete snapshot to start from.
+public class Journal implements Closeable {
+
+    public enum FsyncPolicy {
+        // An append is on disk before it returns; appends waiting at the same time share one sync
+        ALWAYS,
+        // A background thread syncs every interval, so a crash loses at most that much
+        INTERVAL,
+        // Left to the operating system, which writes dirty pages back on its own schedule
+        NEVER
+    }
+
+    // Receives the records during replay
+    public interface RecordHandler {
+        // A snapshot follows; it supersedes everything replayed so far
+        void snapshotStarts();
+
+        void handle(int type, ByteBuffer payload);
+    }
+
+    public interface RecordBody {
+        void write(ByteBuffer out);
+    }
+
+    public interface RecordSink {
+        void append(int type, RecordBody body) throws IOException;
+    }
+
+    public interface SnapshotWriter {
+        void write(RecordSink sink) throws IOException;
+    }
+
+    private static final int MAGIC = 0x524A4E4C; // "RJNL"
+    private static final short VERSION = 1;
+    private static final short KIND_LOG = 0;
+    private static final short KIND_SNAPSHOT = 1;
+    private static final int SEGMENT_HEADER_BYTES = 16;
+    private static final int RECORD_HEADER_BYTES = 9;
+    private static final int MAX_RECORD_BYTES = 64 * 1024;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final Thread syncer;
+
+    // Guarded by this
+    private final ByteBuffer scratch = ByteBuffer.allocate(MAX_RECORD_BYTES);
+    private final CRC32C crc = new CRC32C();
+    private MappedByteBuffer active;
+    private long activeSequence;
+    private int logSegments;
+    private boolean closed;
+
+    // Positions are segment sequence << 32 | offset, so they keep growing across segments
+    private volatile long appendedThrough;
+    private final Object syncLock = new Object();
+    private long syncedThrough;
+
+    private final LongAdder appends = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+
+    // Replays the journal in the directory into the handler, creating the directory if
+    // needed, and opens it for appends
+    public Journal(Path directory, int segmentBytes, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis,
+            RecordHandler handler) throws IOException {
+        if (segmentBytes < SEGMENT_HEADER_BYTES + RECORD_HEADER_BYTES + MAX_RECORD_BYTES) {
+            throw new IllegalArgumentException("Journal segments must hold at least one record: " + segmentBytes);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+
+        Files.createDirectories(directory);
+        replay(handler);
+
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            long intervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+            syncer = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(intervalNanos);
+                        sync(appendedThrough);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "journal-sync");
+            syncer.setDaemon(true);
+            syncer.start();
+        } else {
+            syncer = null;
+        }
+    }
+
+    // ==================== REPLAY ====================
+
+    private void replay(RecordHandler handler) throws IOException {
+        // Leftovers of a compaction that never finished
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, "journal-*.tmp")) {
+            for (Path leftover : leftovers) {
+                Files.delete(leftover);
+            }
+        }
+
+        // Start at the newest snapshot; the segments before it are obsolete
+        List<Long> sequences = listSegments();
+        int start = 0;
+        for (int i = sequences.size() - 1; i > 0 && start == 0; i--) {
+            if (readHeader(sequences.get(i)) == KIND_SNAPSHOT) {
+                start = i;
+            }
+        }
+        for (int i = 0; i < start; i++) {
+            Files.delete(segmentPath(sequences.get(i)));
+        }
+        sequences = sequences.subList(start, sequences.size());
+
+        int end = 0;
+        short lastKind = KIND_SNAPSHOT;
+        for (int i = 0; i < sequences.size(); i++) {
+            long sequence = sequences.get(i);
+            MappedByteBuffer segment;
+            try (FileChannel channel = FileChannel.open(segmentPath(sequence), StandardOpenOption.READ)) {
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (segment.limit() < SEGMENT_HEADER_BYTES || segment.getInt(0) != MAGIC
+                    || segment.getShort(4) != VERSION) {
+                throw new IOException(segmentPath(sequence) + " is not a journal segment of version " + VERSION);
+            }
+            lastKind = segment.getShort(6);
+            if (lastKind == KIND_SNAPSHOT) {
+                handler.snapshotStarts();
+            } else {
+                logSegments++;
+            }
+
+            end = replaySegment(segment, handler);
+            boolean damaged = segment.limit() - end >= 4 && segment.getInt(end) != 0;
+            if (damaged && i < sequences.size() - 1) {
+                throw new IOException("Journal segment " + segmentPath(sequence) + " is damaged at offset " + end
+                        + "; the segments after it cannot be replayed");
+            }
+        }
+
+        if (sequences.isEmpty() || lastKind == KIND_SNAPSHOT) {
+            long next = sequences.isEmpty() ? 1 : sequences.get(sequences.size() - 1) + 1;
+            openSegment(next);
+            logSegments++;
+        } else {
+            // Carry on after the last good record, clearing whatever a torn write left behind
+            long sequence = sequences.get(sequences.size() - 1);
+            try (FileChannel channel = FileChannel.open(segmentPath(sequence), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                active = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            }
+            for (int i = end; i < active.limit(); i++) {
+                active.put(i, (byte) 0);
+            }
+            active.position(end);
+            activeSequence = sequence;
+        }
+        appendedThrough = position();
+        syncedThrough = appendedThrough;
+    }
+
+    // Hands every intact record to the handler; returns the offset after the last one
+    private int replaySegment(MappedByteBuffer segment, RecordHandler handler) throws IOException {
+        int offset = SEGMENT_HEADER_BYTES;
+        while (segment.limit() - offset >= RECORD_HEADER_BYTES) {
+            int length = segment.getInt(offset);
+            if (length <= 0 || length > segment.limit() - offset - 8) {
+                break;
+            }
+            int checksum = segment.getInt(offset + 4);
+            ByteBuffer record = segment.duplicate();
+            record.position(offset + 8).limit(offset + 8 + length);
+            crc.reset();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            int type = record.get();
+            handler.handle(type, record.slice().asReadOnlyBuffer());
+            offset += 8 + length;
+        }
+        return offset;
+    }
+
+    private short readHeader(long sequence) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+        try (FileChannel channel = FileChannel.open(segmentPath(sequence), StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading
+            }
+        }
+        if (header.getInt(0) != MAGIC || header.getShort(4) != VERSION) {
+            throw new IOException(segmentPath(sequence) + " is not a journal segment of version " + VERSION);
+        }
+        return header.getShort(6);
+    }
+
+    // ==================== APPEND ====================
+
+    // Returns once the record is in the page cache, and under ALWAYS once it is on disk
+    public void append(int type, RecordBody body) throws IOException {
+        long position;
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Journal is closed");
+            }
+            int length = encode(type, body);
+            if (active.remaining() < length) {
+                roll();
+            }
+            active.put(scratch.array(), 0, length);
+            position = position();
+            appendedThrough = position;
+        }
+        appends.increment();
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            sync(position);
+        }
+    }
+
+    // Encodes the record into scratch; returns its length
+    private int encode(int type, RecordBody body) throws IOException {
+        scratch.clear();
+        scratch.position(RECORD_HEADER_BYTES);
+        try {
+            body.write(scratch);
+        } catch (BufferOverflowException e) {
+            throw new IOException("Journal record of type " + type + " is larger than " + MAX_RECORD_BYTES + " bytes");
+        }
+        int length = scratch.position();
+        scratch.put(8, (byte) type);
+        crc.reset();
+        crc.update(scratch.array(), 8, length - 8);
+        scratch.putInt(0, length - 8);
+        scratch.putInt(4, (int) crc.getValue());
+        return length;
+    }
+
+    private void roll() throws IOException {
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            active.force();
+        }
+        openSegment(activeSequence + 1);
+        logSegments++;
+    }
+
+    private void openSegment(long sequence) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(segmentPath(sequence), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            active = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        active.putInt(MAGIC).putShort(VERSION).putShort(KIND_LOG).putLong(sequence);
+        activeSequence = sequence;
+    }
+
+    // Guarded by this
+    private long position() {
+        return activeSequence << 32 | active.position();
+    }
+
+    // Forces everything appended up to the position onto disk. A caller that finds its
+    // records already synced by someone else returns without a sync of its own.
+    private void sync(long target) {
+        synchronized (syncLock) {
+            if (syncedThrough >= target) {
+                return;
+            }
+            MappedByteBuffer segment;
+            long position;
+            synchronized (this) {
+                segment = active;
+                position = position();
+            }
+            // Earlier segments were forced when they rolled over
+            int from = (syncedThrough >>> 32) == (position >>> 32) ? (int) syncedThrough : 0;
+            int to = (int) position;
+            segment.force(from, to - from);
+            syncedThrough = position;
+            syncs.increment();
+        }
+    }
+
+    // ==================== COMPACTION ====================
+
+    // Writes a snapshot through the writer, then deletes every older segment. The caller
+    // keeps the state being written from changing until this returns.
+    public synchronized void compact(SnapshotWriter writer) throws IOException {
+        long snapshotSequence = activeSequence + 1;
+        Path temporary = directory.resolve(segmentPath(snapshotSequence).getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer out = ByteBuffer.allocate(1 << 20);
+            out.putInt(MAGIC).putShort(VERSION).putShort(KIND_SNAPSHOT).putLong(snapshotSequence);
+            writer.write((type, body) -> {
+                int length = encode(type, body);
+                if (out.remaining() < length) {
+                    writeFully(channel, out);
+                }
+                out.put(scratch.array(), 0, length);
+            });
+            writeFully(channel, out);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, segmentPath(snapshotSequence), StandardCopyOption.ATOMIC_MOVE);
+
+        // Later appends go to a fresh log segment after the snapshot
+        openSegment(snapshotSequence + 1);
+        logSegments = 1;
+        appendedThrough = position();
+        for (long sequence : listSegments()) {
+            if (sequence < snapshotSequence) {
+                Files.deleteIfExists(segmentPath(sequence));
+            }
+        }
+        compactions.increment();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    // ==================== FILES ====================
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("journal-%016d.log", sequence));
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "journal-*.log")) {
+            for (Path segment : segments) {
+                String name = segment.getFileName().toString();
+                sequences.add(Long.parseLong(name.substring("journal-".length(), name.length() - ".log".length())));
+            }
+        }
+        Collections.sort(sequences);
+        return sequences;
+    }
+
+    // Log segments written since the newest snapshot, the one being appended to included
+    public synchronized int getLogSegmentCount() {
+        return logSegments;
+    }
+
+    public long getAppendCount() {
+        return appends.sum();
+    }
+
+    public long getSyncCount() {
+        return syncs.sum();
+    }
+
+    public long getCompactionCount() {
+        return compactions.sum();
+    }
+
+    @Override
+    public void close() {
+        if (syncer != null) {
+            syncer.interrupt();
+            try {
+                syncer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long position;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            position = position();
+        }
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            sync(position);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Streaming JSON encoder that writes UTF-8 straight into a byte buffer and drains it
+// to the output stream whenever it fills, so a response of any length needs one
+// buffer and no intermediate Strings. Buffers come from a small shared pool and go
+// back to it on close(). Not thread-safe; one writer serves one response.
+public class JsonWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 64;
+    private static final int MAX_DEPTH = 64;
+
+    // A pool rather than a ThreadLocal: with one virtual thread per request a
+    // ThreadLocal buffer would never be used twice
+    private static final ConcurrentLinkedQueue<byte[]> bufferPool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooledBuffers = new AtomicInteger();
+
+    private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd',
+            'e', 'f' };
+    private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+    private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+    private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+
+    private final OutputStream out;
+    private byte[] buffer;
+    private int position;
+
+    // Bit n is set once the container at depth n has its first member
+    private long hasMember;
+    private int depth;
+    private boolean afterName;
+
+    public JsonWriter(OutputStream out) {
+        this.out = out;
+        this.buffer = acquireBuffer();
+    }
+
+    private static byte[] acquireBuffer() {
+        byte[] pooled = bufferPool.poll();
+        if (pooled == null) {
+            return new byte[BUFFER_SIZE];
+        }
+        pooledBuffers.decrementAndGet();
+        return pooled;
+    }
+
+    private static void releaseBuffer(byte[] buffer) {
+        if (pooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            bufferPool.offer(buffer);
+        } else {
+            pooledBuffers.decrementAndGet();
+        }
+    }
+
+    // ==================== STRUCTURE ====================
+
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        if (afterName) {
+            throw new IllegalStateException("Expected a value after name");
+        }
+        separate();
+        writeString(name);
+        put((byte) ':');
+        afterName = true;
+        return this;
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        beforeValue();
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("JSON nested deeper than " + MAX_DEPTH);
+        }
+        put((byte) bracket);
+        depth++;
+        hasMember &= ~(1L << depth);
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        if (depth == 0 || afterName) {
+            throw new IllegalStateException("Unbalanced " + bracket);
+        }
+        depth--;
+        put((byte) bracket);
+        return this;
+    }
+
+    // A comma before every member but the first
+    private void separate() throws IOException {
+        long bit = 1L << depth;
+        if ((hasMember & bit) != 0) {
+            put((byte) ',');
+        } else {
+            hasMember |= bit;
+        }
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+        } else if (depth > 0) {
+            separate();
+        }
+    }
+
+    // ==================== VALUES ====================
+
+    public JsonWriter value(String value) throws IOException {
+        beforeValue();
+        if (value == null) {
+            put(NULL);
+        } else {
+            writeString(value);
+        }
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    // Whole amounts keep a ".0" so fares read the same as Double.toString; NaN and
+    // the infinities have no JSON form and are written as null
+    public JsonWriter value(double value) throws IOException {
+        beforeValue();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            put(NULL);
+        } else if (value == (long) value && Math.abs(value) < 1e15) {
+            writeLong((long) value);
+            put((byte) '.');
+            put((byte) '0');
+        } else {
+            writeAscii(Double.toString(value));
+        }
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        put(value ? TRUE : FALSE);
+        return this;
+    }
+
+    // ISO-8601 local time, yyyy-MM-ddTHH:mm:ss with milliseconds when present
+    public JsonWriter value(LocalDateTime value) throws IOException {
+        beforeValue();
+        if (value == null) {
+            put(NULL);
+            return this;
+        }
+        ensure(32);
+        put((byte) '"');
+        writePadded(value.getYear(), 4);
+        put((byte) '-');
+        writePadded(value.getMonthValue(), 2);
+        put((byte) '-');
+        writePadded(value.getDayOfMonth(), 2);
+        put((byte) 'T');
+        writePadded(value.getHour(), 2);
+        put((byte) ':');
+        writePadded(value.getMinute(), 2);
+        put((byte) ':');
+        writePadded(value.getSecond(), 2);
+        int millis = value.getNano() / 1_000_000;
+        if (millis > 0) {
+            put((byte) '.');
+            writePadded(millis, 3);
+        }
+        put((byte) '"');
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        put(NULL);
+        return this;
+    }
+
+    // name(...).value(...) in one call, for the common case of a flat field
+    public JsonWriter field(String name, String value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, long value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, double value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, boolean value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, LocalDateTime value) throws IOException {
+        return name(name).value(value);
+    }
+
+    // ==================== ENCODING ====================
+
+    private void writeString(String text) throws IOException {
+        put((byte) '"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\' && c != '<' && c != '>' && c != '&') {
+                put((byte) c);
+            } else if (c < 0x80) {
+                writeEscape(c);
+            } else if (c < 0x800) {
+                ensure(2);
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                ensure(4);
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // A lone surrogate cannot be encoded as UTF-8
+                put((byte) '?');
+            } else {
+                ensure(3);
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        put((byte) '"');
+    }
+
+    // Control characters and quotes, plus <, > and & so a response is safe to embed in HTML
+    private void writeEscape(char c) throws IOException {
+        ensure(6);
+        buffer[position++] = '\\';
+        switch (c) {
+            case '"':
+                buffer[position++] = '"';
+                break;
+            case '\\':
+                buffer[position++] = '\\';
+                break;
+            case '\n':
+                buffer[position++] = 'n';
+                break;
+            case '\r':
+                buffer[position++] = 'r';
+                break;
+            case '\t':
+                buffer[position++] = 't';
+                break;
+            default:
+                buffer[position++] = 'u';
+                buffer[position++] = '0';
+                buffer[position++] = '0';
+                buffer[position++] = HEX[(c >> 4) & 0xF];
+                buffer[position++] = HEX[c & 0xF];
+        }
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position = end;
+    }
+
+    private void writePadded(int value, int width) {
+        for (int i = position + width - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += width;
+    }
+
+    private void writeAscii(String text) throws IOException {
+        ensure(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buffer[position++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = b;
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (buffer == null) {
+            throw new IOException("JsonWriter is closed");
+        }
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    // ==================== LIFECYCLE ====================
+
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    // Writes out what is buffered and returns the buffer to the pool. The underlying
+    // stream stays open; it belongs to the caller.
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            releaseBuffer(buffer);
+            buffer = null;
+        }
+    }
+}
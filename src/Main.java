@@ -1,7 +1,15 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Scanner;
 
 public class Main {
+    // Rides offered when booking, best first (-Drank.topK)
+    private static final int TOP_K = Integer.getInteger("rank.topK", 10);
+
     private static RideBookingSystem system;
     private static Scanner scanner;
     private static User currentUser = null;
@@ -26,7 +34,7 @@ public class Main {
         System.out.println("\nThank you for using Cab Booking System!");
         System.out.println("Goodbye!");
         scanner.close();
-        DatabaseConnection.closeConnection();
+        system.shutdown();
     }
 
     // ==================== AUTHENTICATION MENU ====================
@@ -208,15 +216,35 @@ public class Main {
 
     private static void searchRides() {
         System.out.println("\n--- Search Rides ---");
+        System.out.print("Enter your pickup point as latitude,longitude (or leave blank to search by name): ");
+        GeoPoint from = getLocationInput();
+        if (from != null) {
+            searchNearby(from);
+            return;
+        }
+
         System.out.print("Enter source (or leave blank): ");
         String source = scanner.nextLine().trim();
 
         System.out.print("Enter destination (or leave blank): ");
         String destination = scanner.nextLine().trim();
 
-        List<Ride> rides = system.searchRides(
-                source.isEmpty() ? null : source,
-                destination.isEmpty() ? null : destination);
+        System.out.print("Departing from (yyyy-MM-dd HH:mm, HH:mm for today, or leave blank for any time): ");
+        LocalDateTime departAfter = getDateTimeInput();
+        LocalDateTime departBefore = null;
+        if (departAfter != null) {
+            System.out.print("Departing until: ");
+            departBefore = getDateTimeInput();
+            if (departBefore == null) {
+                System.out.println("Error: The end of the time window is required!");
+                return;
+            }
+        }
+
+        List<Ride> rides = departAfter != null
+                ? system.searchRidesDeparting(source.isEmpty() ? null : source,
+                        destination.isEmpty() ? null : destination, departAfter, departBefore)
+                : system.searchRides(source.isEmpty() ? null : source, destination.isEmpty() ? null : destination);
 
         if (rides.isEmpty()) {
             System.out.println("No rides found matching your criteria.");
@@ -228,6 +256,33 @@ public class Main {
         }
     }
 
+    private static void searchNearby(GeoPoint from) {
+        System.out.print("Enter your drop-off point as latitude,longitude: ");
+        GeoPoint to = getLocationInput();
+        if (to == null) {
+            System.out.println("Error: A drop-off point is required!");
+            return;
+        }
+        System.out.print("How far would you walk to and from the car, in meters? ");
+        double radius = getDoubleInput();
+        if (radius <= 0) {
+            System.out.println("Error: The distance must be positive!");
+            return;
+        }
+
+        List<Ride> rides = system.searchNearby(from, to, radius, RideBookingSystem.MAX_PAGE_SIZE);
+        if (rides.isEmpty()) {
+            System.out.println("No rides found near those points.");
+        } else {
+            System.out.println("\n--- Rides Nearby ---");
+            for (int i = 0; i < rides.size(); i++) {
+                Ride ride = rides.get(i);
+                System.out.printf("%d. %s (pickup %.0f m away, drop-off %.0f m away)%n", i + 1, ride,
+                        ride.getSourceLocation().distanceMeters(from), ride.getDestinationLocation().distanceMeters(to));
+            }
+        }
+    }
+
     private static void createRide() {
         System.out.println("\n--- Create a Ride ---");
 
@@ -254,6 +309,18 @@ public class Main {
         System.out.print("Enter destination: ");
         String destination = scanner.nextLine().trim();
 
+        // Positions let riders find the ride by distance as well as by name
+        System.out.print("Enter the pickup point as latitude,longitude (or leave blank): ");
+        GeoPoint sourceLocation = getLocationInput();
+        GeoPoint destinationLocation = null;
+        if (sourceLocation != null) {
+            System.out.print("Enter the drop-off point as latitude,longitude: ");
+            destinationLocation = getLocationInput();
+        }
+
+        System.out.print("Enter the departure time as yyyy-MM-dd HH:mm, or HH:mm for today (or leave blank): ");
+        LocalDateTime departureTime = getDateTimeInput();
+
         System.out.print("Enter total seats available: ");
         int seats = getIntInput();
 
@@ -281,37 +348,60 @@ public class Main {
             return;
         }
 
-        system.createRide(source, destination, seats, fare, carBrand, carModel, carNumberPlate, currentUser);
+        system.createRide(source, destination, sourceLocation, destinationLocation, departureTime, seats, fare,
+                carBrand, carModel, carNumberPlate, currentUser);
     }
 
     private static void bookRide() {
         System.out.println("\n--- Book a Ride ---");
 
-        // Show available rides first
-        List<Ride> rides = system.getAllAvailableRides();
+        // Only the best few rides for the trip are shown, ranked by RideRanker
+        System.out.print("Where from? (or leave blank): ");
+        String source = scanner.nextLine().trim();
+
+        System.out.print("Where to? (or leave blank): ");
+        String destination = scanner.nextLine().trim();
+
+        System.out.print("When would you like to leave? (yyyy-MM-dd HH:mm, HH:mm for today, or blank for soonest): ");
+        LocalDateTime departure = getDateTimeInput();
+
+        System.out.print("Enter number of seats to book: ");
+        int seats = getIntInput();
+        if (seats <= 0) {
+            System.out.println("Error: Number of seats must be at least 1!");
+            return;
+        }
+
+        List<Ride> rides = system.recommendRides(source.isEmpty() ? null : source,
+                destination.isEmpty() ? null : destination, departure, seats, TOP_K);
         if (rides.isEmpty()) {
             System.out.println("No rides available for booking.");
             return;
         }
 
-        System.out.println("\nAvailable Rides:");
+        System.out.println("\nBest Rides for You:");
         for (int i = 0; i < rides.size(); i++) {
             System.out.println((i + 1) + ". " + rides.get(i));
         }
 
-        System.out.print("\nEnter ride number to book: ");
-        int rideIndex = getIntInput() - 1;
+        System.out.print("\nEnter ride number to book (or 0 to enter a ride ID): ");
+        int choice = getIntInput();
 
-        if (rideIndex < 0 || rideIndex >= rides.size()) {
+        Ride selectedRide;
+        if (choice == 0) {
+            System.out.print("Enter ride ID: ");
+            selectedRide = system.findRide(getIntInput());
+            if (selectedRide == null) {
+                System.out.println("Error: Ride not found!");
+                return;
+            }
+        } else if (choice >= 1 && choice <= rides.size()) {
+            selectedRide = rides.get(choice - 1);
+        } else {
             System.out.println("Invalid ride selection!");
             return;
         }
 
-        Ride selectedRide = rides.get(rideIndex);
-
-        System.out.print("Enter number of seats to book (available: " + selectedRide.getAvailable_seats() + "): ");
-        int seats = getIntInput();
-
         system.bookRide(currentUser, selectedRide, seats);
     }
 
@@ -404,4 +494,32 @@ public class Main {
             return 0.0;
         }
     }
+
+    // "yyyy-MM-dd HH:mm", or "HH:mm" for today; null for a blank line or one that is
+    // neither
+    private static LocalDateTime getDateTimeInput() {
+        String input = scanner.nextLine().trim();
+        if (input.isEmpty()) {
+            return null;
+        }
+        try {
+            if (input.length() <= 5) {
+                return LocalDateTime.of(LocalDate.now(), LocalTime.parse(input));
+            }
+            return LocalDateTime.parse(input, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid input! Please enter a time such as 2024-05-01 08:30 or 08:30");
+            return null;
+        }
+    }
+
+    // Null for a blank line or one that is not a position
+    private static GeoPoint getLocationInput() {
+        try {
+            return GeoPoint.parse(scanner.nextLine());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid input! Please enter latitude,longitude, e.g. 52.52,13.405");
+            return null;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+
+public class MemoryBookingRepository implements BookingRepository {
+
+    private final MemoryStorage db;
+
+    MemoryBookingRepository(MemoryStorage db) {
+        this.db = db;
+    }
+
+    // Completes before returning; there is no commit to share, so nothing is batched
+    @Override
+    public CompletableFuture<Result> book(int rideId, int userId, int seats,
+            LocalDateTime bookingTime) {
+        db.lock.readLock().lock();
+        try {
+            MemoryStorage.RideRow ride = db.rides.get(rideId);
+            if (ride == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (!db.users.containsKey(userId)) {
+                return CompletableFuture.failedFuture(new SQLException("Passenger #" + userId + " does not exist"));
+            }
+            synchronized (ride) {
+                // The same guard as BookingWriter.BOOK_RIDE_SQL
+                if (ride.availableSeats < seats) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                MemoryStorage.BookingRow booking = new MemoryStorage.BookingRow(db.nextBookingId.incrementAndGet(),
+                        rideId, userId, seats, ride.fare * seats, bookingTime);
+                if (db.journal != null) {
+                    try {
+                        db.journal.booked(booking);
+                    } catch (SQLException e) {
+                        return CompletableFuture.failedFuture(e);
+                    }
+                }
+                db.applyBooked(ride, booking);
+                return CompletableFuture.completedFuture(
+                        new Result(booking.bookingId, booking.totalFare, ride.availableSeats));
+            }
+        } finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Result update(int bookingId, int newSeats) throws SQLException {
+        db.lock.readLock().lock();
+        try {
+            MemoryStorage.BookingRow booking = db.bookings.get(bookingId);
+            MemoryStorage.RideRow ride = booking != null ? db.rides.get(booking.rideId) : null;
+            if (ride == null) {
+                return null;
+            }
+            synchronized (ride) {
+                synchronized (booking) {
+                    int difference = newSeats - booking.totalSeats;
+                    if (!booking.isActive() || ride.availableSeats < difference) {
+                        return null;
+                    }
+                    double newFare = ride.fare * newSeats;
+                    if (db.journal != null) {
+                        db.journal.seatsChanged(bookingId, newSeats, newFare);
+                    }
+                    db.applySeatsChanged(ride, booking, newSeats, newFare);
+                    return new Result(bookingId, booking.totalFare, ride.availableSeats);
+                }
+            }
+        } finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean cancel(int bookingId) throws SQLException {
+        db.lock.readLock().lock();
+        try {
+            MemoryStorage.BookingRow booking = db.bookings.get(bookingId);
+            MemoryStorage.RideRow ride = booking != null ? db.rides.get(booking.rideId) : null;
+            if (ride == null) {
+                return false;
+            }
+            synchronized (ride) {
+                synchronized (booking) {
+                    if (!booking.isActive()) {
+                        return false;
+                    }
+                    if (db.journal != null) {
+                        db.journal.cancelled(bookingId);
+                    }
+                    db.applyCancelled(ride, booking);
+                    return true;
+                }
+            }
+        } finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int activeSeats(int rideId) {
+        int seats = 0;
+        ConcurrentSkipListSet<Integer> ids = db.bookingIdsByRide.get(rideId);
+        if (ids != null) {
+            for (int bookingId : ids) {
+                MemoryStorage.BookingRow booking = db.bookings.get(bookingId);
+                if (booking != null) {
+                    synchronized (booking) {
+                        if (booking.isActive()) {
+                            seats += booking.totalSeats;
+                        }
+                    }
+                }
+            }
+        }
+        return seats;
+    }
+
+    @Override
+    public void streamActiveByUser(int userId, Consumer<Booking> consumer) {
+        ConcurrentSkipListSet<Integer> ids = db.bookingIdsByUser.get(userId);
+        if (ids == null) {
+            return;
+        }
+        for (int bookingId : ids) {
+            Booking booking = activeCopy(db.bookings.get(bookingId));
+            if (booking != null) {
+                consumer.accept(booking);
+            }
+        }
+    }
+
+    @Override
+    public void streamActive(Consumer<Booking> consumer) {
+        for (MemoryStorage.BookingRow row : db.bookings.values()) {
+            Booking booking = activeCopy(row);
+            MemoryStorage.RideRow ride = booking != null ? db.rides.get(booking.getRide_id()) : null;
+            MemoryStorage.UserRow user = ride != null ? db.users.get(booking.getUser_id()) : null;
+            if (user == null) {
+                continue;
+            }
+            Ride rideView = new Ride();
+            rideView.setRide_id(ride.rideId);
+            synchronized (ride) {
+                rideView.setSource(ride.source);
+                rideView.setDestination(ride.destination);
+            }
+            booking.setRide(rideView);
+            synchronized (user) {
+                booking.setUser(new User(user.id, user.name, null, null, 0));
+            }
+            consumer.accept(booking);
+        }
+    }
+
+    private static Booking activeCopy(MemoryStorage.BookingRow row) {
+        if (row == null) {
+            return null;
+        }
+        synchronized (row) {
+            return row.isActive() ? row.toBooking() : null;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+public class MemoryRideRepository implements RideRepository {
+
+    private final MemoryStorage db;
+
+    MemoryRideRepository(MemoryStorage db) {
+        this.db = db;
+    }
+
+    @Override
+    public void insert(Ride ride) throws SQLException {
+        db.lock.readLock().lock();
+        try {
+            if (!db.users.containsKey(ride.getCreatedById())) {
+                throw new SQLException("Ride creator #" + ride.getCreatedById() + " does not exist");
+            }
+            int rideId = db.nextRideId.incrementAndGet();
+            MemoryStorage.RideRow row = new MemoryStorage.RideRow(rideId, ride);
+            if (db.journal != null) {
+                db.journal.rideSaved(row);
+            }
+            db.putRide(row);
+            ride.setRide_id(rideId);
+        } finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Ride findById(int rideId) {
+        MemoryStorage.RideRow row = db.rides.get(rideId);
+        if (row == null) {
+            return null;
+        }
+        synchronized (row) {
+            return row.toRide();
+        }
+    }
+
+    @Override
+    public List<Ride> findByCreator(int userId) {
+        List<Ride> rides = new ArrayList<>();
+        for (MemoryStorage.RideRow row : db.rides.values()) {
+            if (row.createdBy == userId) {
+                synchronized (row) {
+                    rides.add(row.toRide());
+                }
+            }
+        }
+        return rides;
+    }
+
+    @Override
+    public void search(String source, String destination, int afterRideId, int limit, Consumer<Ride> consumer) {
+        String sourceFilter = source != null && !source.isEmpty() ? source.toLowerCase(Locale.ROOT) : null;
+        String destinationFilter = destination != null && !destination.isEmpty()
+                ? destination.toLowerCase(Locale.ROOT)
+                : null;
+
+        LocalDateTime now = LocalDateTime.now();
+        int found = 0;
+        for (MemoryStorage.RideRow row : db.rides.tailMap(afterRideId, false).values()) {
+            if (row.departureTime != null && row.departureTime.isBefore(now)) {
+                continue;
+            }
+            Ride ride;
+            synchronized (row) {
+                if (row.availableSeats <= 0 || !contains(row.source, sourceFilter)
+                        || !contains(row.destination, destinationFilter)) {
+                    continue;
+                }
+                ride = row.toRide();
+            }
+            consumer.accept(ride);
+            if (++found == limit) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void searchDeparting(String source, String destination, LocalDateTime from, LocalDateTime to,
+            Consumer<Ride> consumer) {
+        String sourceFilter = source != null && !source.isEmpty() ? source.toLowerCase(Locale.ROOT) : null;
+        String destinationFilter = destination != null && !destination.isEmpty()
+                ? destination.toLowerCase(Locale.ROOT)
+                : null;
+
+        List<Ride> departing = new ArrayList<>();
+        for (MemoryStorage.RideRow row : db.rides.values()) {
+            if (row.departureTime == null || row.departureTime.isBefore(from) || row.departureTime.isAfter(to)) {
+                continue;
+            }
+            synchronized (row) {
+                if (row.availableSeats > 0 && contains(row.source, sourceFilter)
+                        && contains(row.destination, destinationFilter)) {
+                    departing.add(row.toRide());
+                }
+            }
+        }
+        departing.sort(Comparator.comparing(Ride::getDepartureTime).thenComparingInt(Ride::getRide_id));
+        departing.forEach(consumer);
+    }
+
+    // LOWER(column) LIKE LOWER('%text%'); a NULL column never matches a filter
+    private static boolean contains(String column, String lowerCaseFilter) {
+        if (lowerCaseFilter == null) {
+            return true;
+        }
+        return column != null && column.toLowerCase(Locale.ROOT).contains(lowerCaseFilter);
+    }
+
+    @Override
+    public void searchNearby(GeoPoint from, GeoPoint to, double radiusMeters, Consumer<Ride> consumer) {
+        LocalDateTime now = LocalDateTime.now();
+        for (MemoryStorage.RideRow row : db.rides.values()) {
+            if (row.sourceLocation == null || row.destinationLocation == null
+                    || (row.departureTime != null && row.departureTime.isBefore(now))
+                    || row.sourceLocation.distanceMeters(from) > radiusMeters
+                    || row.destinationLocation.distanceMeters(to) > radiusMeters) {
+                continue;
+            }
+            Ride ride;
+            synchronized (row) {
+                if (row.availableSeats <= 0) {
+                    continue;
+                }
+                ride = row.toRide();
+            }
+            consumer.accept(ride);
+        }
+    }
+
+    @Override
+    public void streamAll(Consumer<Ride> consumer) {
+        for (MemoryStorage.RideRow row : db.rides.values()) {
+            Ride ride;
+            synchronized (row) {
+                ride = row.toRide();
+            }
+            MemoryStorage.UserRow creator = db.users.get(ride.getCreatedById());
+            if (creator != null) {
+                synchronized (creator) {
+                    ride.setCreatedBy(new User(creator.id, creator.name, null, null, 0));
+                }
+            }
+            consumer.accept(ride);
+        }
+    }
+
+    @Override
+    public int update(int rideId, String source, String destination, int totalSeats, double fare)
+            throws SQLException {
+        db.lock.readLock().lock();
+        try {
+            MemoryStorage.RideRow row = db.rides.get(rideId);
+            if (row == null) {
+                return 0;
+            }
+            synchronized (row) {
+                if (db.journal != null) {
+                    db.journal.rideUpdated(rideId, source, destination, totalSeats, fare);
+                }
+                return db.updateRide(row, source, destination, totalSeats, fare);
+            }
+        } finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(int rideId) throws SQLException {
+        db.lock.writeLock().lock();
+        try {
+            if (!db.rides.containsKey(rideId)) {
+                return false;
+            }
+            if (db.journal != null) {
+                db.journal.rideDeleted(rideId);
+            }
+            db.removeRide(rideId);
+            return true;
+        } finally {
+            db.lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,389 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Process-local storage with the same rules as the PostgreSQL schema, for tests, load
+// runs and nodes that need no durability. Each table is a concurrent map of mutable
+// rows. A row's monitor plays the row lock, taken ride before booking when a statement
+// touches both. Statements that cascade over many rows (account and ride deletion) take
+// the write lock; every other write shares the read lock. Readers take no table lock and
+// see each row as of one moment, like READ COMMITTED.
+//
+// With a journal directory every change is also written to a BookingJournal, and the
+// tables are rebuilt from it on startup.
+public final class MemoryStorage implements Storage {
+
+    static class UserRow {
+        final int id;
+        String name;
+        String email;
+        String password;
+        long phoneNumber;
+        String licenceNo;
+        String licenceExp;
+
+        UserRow(int id, String name, String email, String password, long phoneNumber, String licenceNo,
+                String licenceExp) {
+            this.id = id;
+            this.name = name;
+            this.email = email;
+            this.password = password;
+            this.phoneNumber = phoneNumber;
+            this.licenceNo = licenceNo;
+            this.licenceExp = licenceExp;
+        }
+
+        UserRow(int id, User user) {
+            this(id, user.getName(), user.getEmail(), user.getPassword(), user.getPhone_number(),
+                    user.getLicence_no(), user.getLicence_exp());
+        }
+
+        // Callers hold the row's monitor
+        User toUser() {
+            User user = new User(id, name, email, password, phoneNumber);
+            user.setLicence_no(licenceNo);
+            user.setLicence_exp(licenceExp);
+            return user;
+        }
+    }
+
+    static class RideRow {
+        final int rideId;
+        final int createdBy;
+        final String carBrand;
+        final String carModel;
+        final String carNumberPlate;
+        final LocalDateTime timestamp;
+        final GeoPoint sourceLocation;
+        final GeoPoint destinationLocation;
+        final LocalDateTime departureTime;
+        String source;
+        String destination;
+        int totalSeats;
+        int availableSeats;
+        double fare;
+
+        RideRow(int rideId, int createdBy, String carBrand, String carModel, String carNumberPlate,
+                LocalDateTime timestamp, GeoPoint sourceLocation, GeoPoint destinationLocation,
+                LocalDateTime departureTime, String source, String destination, int totalSeats, int availableSeats,
+                double fare) {
+            this.rideId = rideId;
+            this.createdBy = createdBy;
+            this.carBrand = carBrand;
+            this.carModel = carModel;
+            this.carNumberPlate = carNumberPlate;
+            this.timestamp = timestamp;
+            this.sourceLocation = sourceLocation;
+            this.destinationLocation = destinationLocation;
+            this.departureTime = departureTime;
+            this.source = source;
+            this.destination = destination;
+            this.totalSeats = totalSeats;
+            this.availableSeats = availableSeats;
+            this.fare = fare;
+        }
+
+        // A new ride, with all of its seats available
+        RideRow(int rideId, Ride ride) {
+            this(rideId, ride.getCreatedById(), ride.getCarBrand(), ride.getCarModel(), ride.getCarNumberPlate(),
+                    ride.getTimestamp(), ride.getSourceLocation(), ride.getDestinationLocation(),
+                    ride.getDepartureTime(), ride.getSource(), ride.getDestination(), ride.getTotal_seats(),
+                    ride.getTotal_seats(), ride.getFare());
+        }
+
+        // Callers hold the row's monitor
+        Ride toRide() {
+            Ride ride = new Ride(rideId, source, destination, totalSeats, availableSeats, fare, createdBy,
+                    carBrand, carModel, carNumberPlate, timestamp);
+            ride.setSourceLocation(sourceLocation);
+            ride.setDestinationLocation(destinationLocation);
+            ride.setDepartureTime(departureTime);
+            return ride;
+        }
+    }
+
+    static class BookingRow {
+        final int bookingId;
+        final int rideId;
+        final int userId;
+        final LocalDateTime bookingTime;
+        int totalSeats;
+        double totalFare;
+        String status = "CONFIRMED";
+
+        BookingRow(int bookingId, int rideId, int userId, int totalSeats, double totalFare,
+                LocalDateTime bookingTime) {
+            this.bookingId = bookingId;
+            this.rideId = rideId;
+            this.userId = userId;
+            this.totalSeats = totalSeats;
+            this.totalFare = totalFare;
+            this.bookingTime = bookingTime;
+        }
+
+        // Callers hold the row's monitor
+        boolean isActive() {
+            return !"CANCELLED".equals(status);
+        }
+
+        // Callers hold the row's monitor
+        Booking toBooking() {
+            return new Booking(bookingId, rideId, userId, totalSeats, totalFare, status, bookingTime);
+        }
+    }
+
+    // Tables in primary key order, as the exports and keyset pages read them
+    final ConcurrentSkipListMap<Integer, UserRow> users = new ConcurrentSkipListMap<>();
+    final ConcurrentSkipListMap<Integer, RideRow> rides = new ConcurrentSkipListMap<>();
+    final ConcurrentSkipListMap<Integer, BookingRow> bookings = new ConcurrentSkipListMap<>();
+
+    // Secondary indexes
+    final ConcurrentHashMap<String, Integer> userIdsByEmail = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<Integer, ConcurrentSkipListSet<Integer>> bookingIdsByUser = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<Integer, ConcurrentSkipListSet<Integer>> bookingIdsByRide = new ConcurrentHashMap<>();
+
+    // Sequences, like SERIAL columns: ids are never reused
+    final AtomicInteger nextUserId = new AtomicInteger();
+    final AtomicInteger nextRideId = new AtomicInteger();
+    final AtomicInteger nextBookingId = new AtomicInteger();
+
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Null when changes are not journaled
+    final BookingJournal journal;
+
+    private final MemoryUserRepository userRepository = new MemoryUserRepository(this);
+    private final MemoryRideRepository rideRepository = new MemoryRideRepository(this);
+    private final MemoryBookingRepository bookingRepository = new MemoryBookingRepository(this);
+
+    public MemoryStorage() {
+        journal = null;
+        System.out.println("Using in-memory storage; nothing will be persisted.");
+    }
+
+    // Rebuilds the tables from the journal in the directory and keeps journaling to it
+    public MemoryStorage(Path journalDirectory) {
+        try {
+            journal = new BookingJournal(this, journalDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the journal in " + journalDirectory, e);
+        }
+    }
+
+    @Override
+    public UserRepository getUsers() {
+        return userRepository;
+    }
+
+    @Override
+    public RideRepository getRides() {
+        return rideRepository;
+    }
+
+    @Override
+    public BookingRepository getBookings() {
+        return bookingRepository;
+    }
+
+    // ==================== CHANGES ====================
+
+    // The changes below are shared by the repositories and journal replay. Callers hold
+    // the locks the class comment asks for; replay runs before anyone else sees the tables.
+
+    // Inserts or replaces a user, keeping the email index in step
+    void putUser(UserRow row) {
+        UserRow old = users.put(row.id, row);
+        if (old != null && old.email != null && !old.email.equals(row.email)) {
+            userIdsByEmail.remove(old.email, row.id);
+        }
+        if (row.email != null) {
+            userIdsByEmail.put(row.email, row.id);
+        }
+        nextUserId.accumulateAndGet(row.id, Math::max);
+    }
+
+    void putRide(RideRow row) {
+        rides.put(row.rideId, row);
+        nextRideId.accumulateAndGet(row.rideId, Math::max);
+    }
+
+    // A null or empty text, or a number <= 0, keeps the stored value
+    // Returns the change in available seats
+    int updateRide(RideRow row, String source, String destination, int totalSeats, double fare) {
+        if (source != null && !source.isEmpty()) {
+            row.source = source;
+        }
+        if (destination != null && !destination.isEmpty()) {
+            row.destination = destination;
+        }
+        int added = 0;
+        if (totalSeats > 0) {
+            added = totalSeats - row.totalSeats;
+            row.availableSeats += added;
+            row.totalSeats = totalSeats;
+        }
+        if (fare > 0) {
+            row.fare = fare;
+        }
+        return added;
+    }
+
+    void applyBooked(RideRow ride, BookingRow booking) {
+        ride.availableSeats -= booking.totalSeats;
+        addBooking(booking);
+    }
+
+    void applySeatsChanged(RideRow ride, BookingRow booking, int newSeats, double newFare) {
+        ride.availableSeats -= newSeats - booking.totalSeats;
+        booking.totalSeats = newSeats;
+        booking.totalFare = newFare;
+    }
+
+    void applyCancelled(RideRow ride, BookingRow booking) {
+        booking.status = "CANCELLED";
+        ride.availableSeats += booking.totalSeats;
+    }
+
+    void addBooking(BookingRow row) {
+        nextBookingId.accumulateAndGet(row.bookingId, Math::max);
+        bookings.put(row.bookingId, row);
+        bookingIdsByUser.computeIfAbsent(row.userId, k -> new ConcurrentSkipListSet<>()).add(row.bookingId);
+        bookingIdsByRide.computeIfAbsent(row.rideId, k -> new ConcurrentSkipListSet<>()).add(row.bookingId);
+    }
+
+    // Callers hold the write lock
+    void removeBooking(BookingRow row) {
+        bookings.remove(row.bookingId);
+        ConcurrentSkipListSet<Integer> ofUser = bookingIdsByUser.get(row.userId);
+        if (ofUser != null) {
+            ofUser.remove(row.bookingId);
+        }
+        ConcurrentSkipListSet<Integer> ofRide = bookingIdsByRide.get(row.rideId);
+        if (ofRide != null) {
+            ofRide.remove(row.bookingId);
+        }
+    }
+
+    // Callers hold the write lock
+    void removeRide(int rideId) {
+        ConcurrentSkipListSet<Integer> ids = bookingIdsByRide.remove(rideId);
+        if (ids != null) {
+            for (int bookingId : ids) {
+                BookingRow row = bookings.get(bookingId);
+                if (row != null) {
+                    removeBooking(row);
+                }
+            }
+        }
+        rides.remove(rideId);
+    }
+
+    // Removes the user with their bookings and rides, returning the seats of their
+    // active bookings; null when there is no such user. Callers hold the write lock.
+    UserRepository.AccountDeletion deleteAccountRows(int userId) {
+        UserRow user = users.get(userId);
+        if (user == null) {
+            return null;
+        }
+
+        // Return the seats of every active booking, grouped per ride
+        Map<Integer, Integer> seatsPerRide = new LinkedHashMap<>();
+        List<BookingRow> held = bookingsOf(bookingIdsByUser.get(userId));
+        for (BookingRow booking : held) {
+            if (booking.isActive()) {
+                seatsPerRide.merge(booking.rideId, booking.totalSeats, Integer::sum);
+            }
+        }
+        List<int[]> seatCounts = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : seatsPerRide.entrySet()) {
+            RideRow ride = rides.get(entry.getKey());
+            if (ride != null) {
+                synchronized (ride) {
+                    ride.availableSeats += entry.getValue();
+                    seatCounts.add(new int[] { ride.rideId, ride.availableSeats, entry.getValue() });
+                }
+            }
+        }
+
+        for (BookingRow booking : held) {
+            removeBooking(booking);
+        }
+        bookingIdsByUser.remove(userId);
+        IntHashSet ownRides = ridesCreatedBy(userId);
+        ownRides.forEach(this::removeRide);
+
+        users.remove(userId);
+        if (user.email != null) {
+            userIdsByEmail.remove(user.email, userId);
+        }
+        return new UserRepository.AccountDeletion(UserRepository.AccountDeletion.Outcome.DELETED, seatCounts,
+                ownRides);
+    }
+
+    IntHashSet ridesCreatedBy(int userId) {
+        IntHashSet ids = new IntHashSet();
+        for (RideRow ride : rides.values()) {
+            if (ride.createdBy == userId) {
+                ids.add(ride.rideId);
+            }
+        }
+        return ids;
+    }
+
+    List<BookingRow> bookingsOf(ConcurrentSkipListSet<Integer> ids) {
+        List<BookingRow> rows = new ArrayList<>();
+        if (ids != null) {
+            for (int bookingId : ids) {
+                BookingRow row = bookings.get(bookingId);
+                if (row != null) {
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    // Empties every table; a journal snapshot starts from nothing
+    void clear() {
+        users.clear();
+        rides.clear();
+        bookings.clear();
+        userIdsByEmail.clear();
+        bookingIdsByUser.clear();
+        bookingIdsByRide.clear();
+        nextUserId.set(0);
+        nextRideId.set(0);
+        nextBookingId.set(0);
+    }
+
+    public BookingJournal getJournal() {
+        return journal;
+    }
+
+    @Override
+    public void addGauges(Map<String, Number> gauges) {
+        gauges.put("storage_users", users.size());
+        gauges.put("storage_rides", rides.size());
+        gauges.put("storage_bookings", bookings.size());
+        if (journal != null) {
+            journal.addGauges(gauges);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+}
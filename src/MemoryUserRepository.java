@@ -0,0 +1,168 @@
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+public class MemoryUserRepository implements UserRepository {
+
+    private final MemoryStorage db;
+
+    MemoryUserRepository(MemoryStorage db) {
+        this.db = db;
+    }
+
+    @Override
+    public boolean emailExists(String email) {
+        return email != null && db.userIdsByEmail.containsKey(email);
+    }
+
+    @Override
+    public void insert(User user) throws SQLException {
+        if (user.getEmail() == null) {
+            throw new SQLException("A user needs an email");
+        }
+        db.lock.readLock().lock();
+        try {
+            int id = db.nextUserId.incrementAndGet();
+            if (db.userIdsByEmail.putIfAbsent(user.getEmail(), id) != null) {
+                throw new SQLException("A user with email " + user.getEmail() + " already exists");
+            }
+            MemoryStorage.UserRow row = new MemoryStorage.UserRow(id, user);
+            if (db.journal != null) {
+                try {
+                    db.journal.userSaved(row);
+                } catch (SQLException e) {
+                    db.userIdsByEmail.remove(user.getEmail(), id);
+                    throw e;
+                }
+            }
+            db.putUser(row);
+            user.setId(id);
+        } finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public User findByCredentials(String email, String password) {
+        Integer id = email != null ? db.userIdsByEmail.get(email) : null;
+        MemoryStorage.UserRow row = id != null ? db.users.get(id) : null;
+        if (row == null) {
+            return null;
+        }
+        synchronized (row) {
+            return Objects.equals(row.email, email) && Objects.equals(row.password, password) ? row.toUser() : null;
+        }
+    }
+
+    @Override
+    public User findById(int id) {
+        MemoryStorage.UserRow row = db.users.get(id);
+        if (row == null) {
+            return null;
+        }
+        synchronized (row) {
+            return row.toUser();
+        }
+    }
+
+    @Override
+    public void updateDetails(int id, String name, String email, long phoneNumber) throws SQLException {
+        db.lock.readLock().lock();
+        try {
+            MemoryStorage.UserRow row = db.users.get(id);
+            if (row == null) {
+                return;
+            }
+            synchronized (row) {
+                boolean newEmail = email != null && !email.isEmpty() && !email.equals(row.email);
+                if (newEmail) {
+                    Integer owner = db.userIdsByEmail.putIfAbsent(email, id);
+                    if (owner != null && owner != id) {
+                        throw new SQLException("A user with email " + email + " already exists");
+                    }
+                }
+                MemoryStorage.UserRow updated = new MemoryStorage.UserRow(id,
+                        name != null && !name.isEmpty() ? name : row.name,
+                        newEmail ? email : row.email, row.password,
+                        phoneNumber > 0 ? phoneNumber : row.phoneNumber, row.licenceNo, row.licenceExp);
+                if (db.journal != null) {
+                    try {
+                        db.journal.userSaved(updated);
+                    } catch (SQLException e) {
+                        if (newEmail) {
+                            db.userIdsByEmail.remove(email, id);
+                        }
+                        throw e;
+                    }
+                }
+                if (newEmail) {
+                    db.userIdsByEmail.remove(row.email, id);
+                }
+                row.name = updated.name;
+                row.email = updated.email;
+                row.phoneNumber = updated.phoneNumber;
+            }
+        } finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateLicence(int id, String licenceNo, String licenceExp) throws SQLException {
+        db.lock.readLock().lock();
+        try {
+            MemoryStorage.UserRow row = db.users.get(id);
+            if (row == null) {
+                return;
+            }
+            synchronized (row) {
+                if (db.journal != null) {
+                    db.journal.userSaved(new MemoryStorage.UserRow(id, row.name, row.email, row.password,
+                            row.phoneNumber, licenceNo, licenceExp));
+                }
+                row.licenceNo = licenceNo;
+                row.licenceExp = licenceExp;
+            }
+        } finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public AccountDeletion deleteAccount(int userId) throws SQLException {
+        db.lock.writeLock().lock();
+        try {
+            if (!db.users.containsKey(userId)) {
+                return AccountDeletion.refused(AccountDeletion.Outcome.NOT_FOUND);
+            }
+
+            // Nothing changes while other passengers are booked on the user's rides
+            for (int rideId : db.ridesCreatedBy(userId).toArray()) {
+                for (MemoryStorage.BookingRow booking : db.bookingsOf(db.bookingIdsByRide.get(rideId))) {
+                    if (booking.userId != userId && booking.isActive()) {
+                        return AccountDeletion.refused(AccountDeletion.Outcome.OTHER_PASSENGERS);
+                    }
+                }
+            }
+
+            if (db.journal != null) {
+                db.journal.accountDeleted(userId);
+            }
+            return db.deleteAccountRows(userId);
+        } finally {
+            db.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void streamAll(Consumer<User> consumer) {
+        for (MemoryStorage.UserRow row : db.users.values()) {
+            User user;
+            synchronized (row) {
+                user = row.toUser();
+            }
+            user.setPassword(null);
+            consumer.accept(user);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+import java.io.IOException;
+
+// Hand-written JSON for the model classes, field by field into a JsonWriter, so
+// encoding a row costs no reflection and no intermediate String. User passwords are
+// never written.
+public class ModelJson {
+
+    private ModelJson() {
+    }
+
+    public static void writeRide(JsonWriter json, Ride ride) throws IOException {
+        json.beginObject()
+                .field("rideId", ride.getRide_id())
+                .field("source", ride.getSource())
+                .field("destination", ride.getDestination())
+                .field("totalSeats", ride.getTotal_seats())
+                .field("availableSeats", ride.getAvailable_seats())
+                .field("fare", ride.getFare())
+                .field("createdBy", ride.getCreatedById())
+                .field("carBrand", ride.getCarBrand())
+                .field("carModel", ride.getCarModel())
+                .field("carNumberPlate", ride.getCarNumberPlate())
+                .field("timestamp", ride.getTimestamp())
+                .field("departureTime", ride.getDepartureTime());
+        json.name("sourceLocation");
+        writeLocation(json, ride.getSourceLocation());
+        json.name("destinationLocation");
+        writeLocation(json, ride.getDestinationLocation());
+        json.endObject();
+    }
+
+    private static void writeLocation(JsonWriter json, GeoPoint location) throws IOException {
+        if (location == null) {
+            json.nullValue();
+        } else {
+            json.beginObject()
+                    .field("lat", location.getLatitude())
+                    .field("lng", location.getLongitude())
+                    .endObject();
+        }
+    }
+
+    public static void writeBooking(JsonWriter json, Booking booking) throws IOException {
+        json.beginObject()
+                .field("bookingId", booking.getBooking_id())
+                .field("rideId", booking.getRide_id())
+                .field("userId", booking.getUser_id())
+                .field("seats", booking.getTotal_seats())
+                .field("totalFare", booking.getTotal_fare())
+                .field("status", booking.getStatus())
+                .field("bookingTime", booking.getBookingTime())
+                .endObject();
+    }
+
+    public static void writeUser(JsonWriter json, User user) throws IOException {
+        json.beginObject()
+                .field("id", user.getId())
+                .field("name", user.getName())
+                .field("email", user.getEmail())
+                .field("phone", user.getPhone_number())
+                .field("hasLicence", user.getLicence_no() != null && user.getLicence_exp() != null)
+                .endObject();
+    }
+}
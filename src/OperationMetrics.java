@@ -0,0 +1,211 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Per-operation metrics for RideBookingSystem. Each public operation runs through
+// call(), callThrowing() or run(), which time it, count its database round trips and classify its
+// outcome. Code that swallows a database error calls markError() so the running
+// operation is still counted as an error. Published over JMX and as plain text.
+public class OperationMetrics {
+
+    // Set while an operation runs on this thread and hit an error it did not throw
+    private static final ThreadLocal<boolean[]> errorFlag = ThreadLocal.withInitial(() -> new boolean[1]);
+
+    private final String jmxDomain;
+    private final ConcurrentHashMap<String, OperationStats> operations = new ConcurrentHashMap<>();
+    private final List<ObjectName> registered = new ArrayList<>();
+    private volatile boolean publishToJmx;
+
+    public OperationMetrics(String jmxDomain) {
+        this.jmxDomain = jmxDomain;
+    }
+
+    // Counts the operation running on this thread as an error
+    public static void markError() {
+        errorFlag.get()[0] = true;
+    }
+
+    // Whether the operation running on this thread has marked an error so far
+    public static boolean errorMarked() {
+        return errorFlag.get()[0];
+    }
+
+    // A successful call unless it throws or marks an error
+    public <T> T call(String operation, Supplier<T> body) {
+        return call(operation, null, body);
+    }
+
+    // As call(), but a result the predicate does not accept counts as a rejection
+    public <T> T call(String operation, Predicate<? super T> accepted, Supplier<T> body) {
+        return callThrowing(operation, accepted, body::get);
+    }
+
+    // Work that passes a checked exception on to the caller
+    public interface ThrowingSupplier<T, E extends Exception> {
+        T get() throws E;
+    }
+
+    // As call(), for work that throws a checked exception; a throw counts as an error
+    public <T, E extends Exception> T callThrowing(String operation, ThrowingSupplier<T, E> body) throws E {
+        return callThrowing(operation, null, body);
+    }
+
+    private <T, E extends Exception> T callThrowing(String operation, Predicate<? super T> accepted,
+            ThrowingSupplier<T, E> body) throws E {
+        OperationStats stats = stats(operation);
+        boolean[] flag = errorFlag.get();
+        // Nested operations each see only their own errors, and pass them on to the caller
+        boolean outerError = flag[0];
+        flag[0] = false;
+        long roundTrips = RoundTripCounter.currentThread();
+        long start = System.nanoTime();
+        OperationStats.Outcome outcome = OperationStats.Outcome.ERROR;
+        try {
+            T result = body.get();
+            if (flag[0]) {
+                outcome = OperationStats.Outcome.ERROR;
+            } else if (accepted != null && !accepted.test(result)) {
+                outcome = OperationStats.Outcome.REJECTED;
+            } else {
+                outcome = OperationStats.Outcome.SUCCESS;
+            }
+            return result;
+        } finally {
+            stats.record(System.nanoTime() - start, outcome, RoundTripCounter.currentThread() - roundTrips);
+            flag[0] |= outerError;
+        }
+    }
+
+    public void run(String operation, Runnable body) {
+        call(operation, null, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    public OperationStats stats(String operation) {
+        OperationStats stats = operations.get(operation);
+        if (stats == null) {
+            stats = operations.computeIfAbsent(operation, name -> {
+                OperationStats created = new OperationStats(name);
+                if (publishToJmx) {
+                    register(created);
+                }
+                return created;
+            });
+        }
+        return stats;
+    }
+
+    public List<OperationStats> getAll() {
+        List<OperationStats> all = new ArrayList<>(operations.values());
+        all.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return all;
+    }
+
+    // ==================== JMX ====================
+
+    // Publishes every operation as <domain>:type=Operation,name=<operation>, now and
+    // as new operations appear. A bean left by an earlier instance in this JVM is replaced.
+    public synchronized void registerMBeans() {
+        publishToJmx = true;
+        for (OperationStats stats : operations.values()) {
+            register(stats);
+        }
+    }
+
+    public synchronized void unregisterMBeans() {
+        publishToJmx = false;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // Already gone
+            }
+        }
+        registered.clear();
+    }
+
+    private synchronized void register(OperationStats stats) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(jmxDomain + ":type=Operation,name=" + ObjectName.quote(stats.getName()));
+            try {
+                server.registerMBean(stats, name);
+            } catch (InstanceAlreadyExistsException e) {
+                server.unregisterMBean(name);
+                server.registerMBean(stats, name);
+            }
+            registered.add(name);
+        } catch (JMException e) {
+            System.err.println("Could not publish metrics for " + stats.getName() + " over JMX: " + e.getMessage());
+        }
+    }
+
+    // ==================== TEXT ====================
+
+    // Prometheus text exposition format: a latency summary, outcome counters and round
+    // trips per operation, followed by the extra gauges given by the caller
+    public void writeText(Appendable out, Map<String, Number> gauges) throws IOException {
+        String prefix = jmxDomain.replaceAll("[^A-Za-z0-9_]", "_");
+
+        out.append("# TYPE ").append(prefix).append("_operation_latency_seconds summary\n");
+        for (OperationStats stats : getAll()) {
+            LatencyHistogram latency = stats.getLatency();
+            String label = "operation=\"" + stats.getName() + "\"";
+            writeSample(out, prefix + "_operation_latency_seconds", label + ",quantile=\"0.5\"",
+                    latency.getPercentile(50) / 1e9);
+            writeSample(out, prefix + "_operation_latency_seconds", label + ",quantile=\"0.99\"",
+                    latency.getPercentile(99) / 1e9);
+            writeSample(out, prefix + "_operation_latency_seconds", label + ",quantile=\"0.999\"",
+                    latency.getPercentile(99.9) / 1e9);
+            writeSample(out, prefix + "_operation_latency_seconds_sum", label, latency.getSum() / 1e9);
+            writeSample(out, prefix + "_operation_latency_seconds_count", label, latency.getCount());
+        }
+
+        out.append("# TYPE ").append(prefix).append("_operations_total counter\n");
+        for (OperationStats stats : getAll()) {
+            String label = "operation=\"" + stats.getName() + "\"";
+            writeSample(out, prefix + "_operations_total", label + ",outcome=\"success\"", stats.getSuccessCount());
+            writeSample(out, prefix + "_operations_total", label + ",outcome=\"rejected\"", stats.getRejectedCount());
+            writeSample(out, prefix + "_operations_total", label + ",outcome=\"error\"", stats.getErrorCount());
+        }
+
+        out.append("# TYPE ").append(prefix).append("_db_round_trips_total counter\n");
+        for (OperationStats stats : getAll()) {
+            writeSample(out, prefix + "_db_round_trips_total", "operation=\"" + stats.getName() + "\"",
+                    stats.getDbRoundTrips());
+        }
+
+        for (Map.Entry<String, Number> gauge : gauges.entrySet()) {
+            String name = prefix + "_" + gauge.getKey();
+            out.append("# TYPE ").append(name).append(" gauge\n");
+            writeSample(out, name, null, gauge.getValue().doubleValue());
+        }
+    }
+
+    private static void writeSample(Appendable out, String name, String labels, double value) throws IOException {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append(Long.toString((long) value));
+        } else {
+            out.append(Double.toString(value));
+        }
+        out.append('\n');
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency, outcome counts and database round trips of one operation. A call ends in
+// exactly one outcome: success, rejected (a business rule said no, e.g. not enough
+// seats) or error (a database error or an exception).
+public class OperationStats implements OperationStatsMXBean {
+
+    public enum Outcome {
+        SUCCESS, REJECTED, ERROR
+    }
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder roundTrips = new LongAdder();
+
+    public OperationStats(String name) {
+        this.name = name;
+    }
+
+    public void record(long nanos, Outcome outcome, long dbRoundTrips) {
+        latency.record(nanos);
+        switch (outcome) {
+            case SUCCESS:
+                successes.increment();
+                break;
+            case REJECTED:
+                rejections.increment();
+                break;
+            default:
+                errors.increment();
+        }
+        if (dbRoundTrips > 0) {
+            roundTrips.add(dbRoundTrips);
+        }
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getSuccessCount() {
+        return successes.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejections.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getErrorRate() {
+        long count = getCount();
+        return count == 0 ? 0.0 : getErrorCount() / (double) count;
+    }
+
+    @Override
+    public long getDbRoundTrips() {
+        return roundTrips.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latency.getMean() / 1e6;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return latency.getPercentile(50) / 1e6;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return latency.getPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return latency.getPercentile(99.9) / 1e6;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latency.getMax() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return name + "{ok=" + getSuccessCount() +
+                ", rejected=" + getRejectedCount() +
+                ", errors=" + getErrorCount() +
+                ", roundTrips=" + getDbRoundTrips() +
+                ", " + latency +
+                '}';
+    }
+}
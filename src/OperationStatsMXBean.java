@@ -0,0 +1,28 @@
+// JMX view of one RideBookingSystem operation. Latencies are in milliseconds.
+public interface OperationStatsMXBean {
+
+    String getName();
+
+    long getCount();
+
+    long getSuccessCount();
+
+    long getRejectedCount();
+
+    long getErrorCount();
+
+    // Errors as a fraction of all calls
+    double getErrorRate();
+
+    long getDbRoundTrips();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+}
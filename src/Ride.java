@@ -1,5 +1,4 @@
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
 
 public class Ride {
@@ -7,19 +6,23 @@ public class Ride {
     private String source;
     private String destination;
     private int total_seats;
-    private int available_seats;
     private double fare;
     private LocalDateTime timestamp;
+    // When the ride leaves; null for rides offered without a time
+    private LocalDateTime departureTime;
     private String carBrand;
     private String carModel;
     private String carNumberPlate;
+    // Pickup and drop-off positions; null when the driver gave only place names
+    private GeoPoint sourceLocation;
+    private GeoPoint destinationLocation;
     private int createdById; // Foreign key to users table
     private User createdBy; // Object reference for in-memory use
-    private List<User> passengers;
+    // Free seats are whatever the seat map leaves of total_seats
+    private final SeatMap seatMap = new SeatMap();
 
     // Default constructor
     public Ride() {
-        this.passengers = new ArrayList<>();
     }
 
     // Constructor for creating new ride (without ride_id, before DB insertion)
@@ -28,12 +31,10 @@ public class Ride {
         this.source = source;
         this.destination = destination;
         this.total_seats = total_seats;
-        this.available_seats = total_seats; // Initially all seats are available
         this.fare = fare;
         this.timestamp = timestamp;
         this.createdBy = createdBy;
         this.createdById = createdBy != null ? createdBy.getId() : 0;
-        this.passengers = new ArrayList<>();
     }
 
     // Constructor for loading from database
@@ -43,10 +44,9 @@ public class Ride {
         this.source = source;
         this.destination = destination;
         this.total_seats = total_seats;
-        this.available_seats = available_seats;
+        seatMap.settle(total_seats - available_seats);
         this.fare = fare;
         this.createdById = createdById;
-        this.passengers = new ArrayList<>();
     }
 
     // Constructor for loading from database with car details and timestamp
@@ -56,14 +56,13 @@ public class Ride {
         this.source = source;
         this.destination = destination;
         this.total_seats = total_seats;
-        this.available_seats = available_seats;
+        seatMap.settle(total_seats - available_seats);
         this.fare = fare;
         this.createdById = createdById;
         this.carBrand = carBrand;
         this.carModel = carModel;
         this.carNumberPlate = carNumberPlate;
         this.timestamp = timestamp;
-        this.passengers = new ArrayList<>();
     }
 
     // Legacy constructor (for backward compatibility with Main.java)
@@ -71,31 +70,30 @@ public class Ride {
         this.source = source;
         this.destination = destination;
         this.total_seats = total_seats;
-        this.available_seats = available_seats;
+        seatMap.settle(total_seats - available_seats);
         this.fare = fare;
-        this.passengers = new ArrayList<>();
     }
 
-    // Add a passenger to the ride
+    // Add a passenger to the ride, assigning them specific seats
     public boolean addPassenger(User passenger, int seats) {
-        if (available_seats >= seats) {
-            for (int i = 0; i < seats; i++) {
-                passengers.add(passenger);
-            }
-            available_seats -= seats;
-            return true;
-        }
-        return false;
+        return seatMap.assign(passenger, seats, total_seats) != null;
     }
 
-    // Remove a passenger from the ride
+    // Remove a passenger from the ride, freeing their seats
     public boolean removePassenger(User passenger, int seats) {
-        int removed = 0;
-        while (removed < seats && passengers.remove(passenger)) {
-            removed++;
-        }
-        available_seats += removed;
-        return removed == seats;
+        return seatMap.release(passenger, seats) == seats;
+    }
+
+    // Record a booking change storage has confirmed: the passenger's seats changed by
+    // seatChange, leaving remainingSeats free. The seats follow storage even when this
+    // copy of the ride had missed bookings made or cancelled elsewhere.
+    public void confirmBooking(User passenger, int seatChange, int remainingSeats) {
+        seatMap.record(passenger, seatChange, total_seats - remainingSeats, total_seats);
+    }
+
+    // Record a cancellation storage has confirmed
+    public void confirmCancellation(User passenger, int seats) {
+        seatMap.cancel(passenger, seats);
     }
 
     // Getters and Setters
@@ -132,11 +130,12 @@ public class Ride {
     }
 
     public int getAvailable_seats() {
-        return available_seats;
+        return Math.max(0, total_seats - seatMap.getOccupiedCount());
     }
 
+    // Books or frees unattributed seats so that available_seats are left free
     public void setAvailable_seats(int available_seats) {
-        this.available_seats = available_seats;
+        seatMap.settle(total_seats - available_seats);
     }
 
     public double getFare() {
@@ -174,6 +173,14 @@ public class Ride {
         this.timestamp = timestamp;
     }
 
+    public LocalDateTime getDepartureTime() {
+        return departureTime;
+    }
+
+    public void setDepartureTime(LocalDateTime departureTime) {
+        this.departureTime = departureTime;
+    }
+
     public String getCarBrand() {
         return carBrand;
     }
@@ -198,12 +205,37 @@ public class Ride {
         this.carNumberPlate = carNumberPlate;
     }
 
+    public GeoPoint getSourceLocation() {
+        return sourceLocation;
+    }
+
+    public void setSourceLocation(GeoPoint sourceLocation) {
+        this.sourceLocation = sourceLocation;
+    }
+
+    public GeoPoint getDestinationLocation() {
+        return destinationLocation;
+    }
+
+    public void setDestinationLocation(GeoPoint destinationLocation) {
+        this.destinationLocation = destinationLocation;
+    }
+
+    // Each passenger once; use getSeatsOf for how many seats they hold
     public List<User> getPassengers() {
-        return passengers;
+        return seatMap.passengers();
+    }
+
+    public int getSeatsOf(User passenger) {
+        return seatMap.seatsOf(passenger);
+    }
+
+    public int[] getSeatNumbersOf(User passenger) {
+        return seatMap.seatNumbersOf(passenger);
     }
 
-    public void setPassengers(List<User> passengers) {
-        this.passengers = passengers;
+    public SeatMap getSeatMap() {
+        return seatMap;
     }
 
     @Override
@@ -213,11 +245,12 @@ public class Ride {
                 ", source='" + source + '\'' +
                 ", destination='" + destination + '\'' +
                 ", total_seats=" + total_seats +
-                ", available_seats=" + available_seats +
+                ", available_seats=" + getAvailable_seats() +
                 ", fare=" + fare +
                 ", car='" + (carBrand != null ? carBrand + " " + carModel + " (" + carNumberPlate + ")" : "N/A") + '\''
                 +
                 ", timestamp=" + timestamp +
+                ", departureTime=" + departureTime +
                 ", createdBy=" + (createdBy != null ? createdBy.getName() : "ID:" + createdById) +
                 '}';
     }
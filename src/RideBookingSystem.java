@@ -1,310 +1,598 @@
-import java.sql.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 public class RideBookingSystem {
 
-    private Connection connection;
+    // In-memory caches keyed by primitive ids, with bookings also indexed by ride and user
+    private final IntObjectMap<Ride> rideCache = new IntObjectMap<>();
+    private final BookingIndex bookingIndex = new BookingIndex();
+
+    // Seat counters that decide admission before a booking reaches the database
+    private final SeatInventory seatInventory = new SeatInventory();
+
+    // Recently seen users by id and email, bounded and expiring
+    private final UserCache userCache = new UserCache(
+            Integer.getInteger("userCache.maxSize", 10_000),
+            Long.getLong("userCache.ttlSeconds", 600L) * 1000);
+
+    // Background thread for account deletions requested through deleteAccountAsync
+    private final ExecutorService accountCleanup = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "account-cleanup");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Trigram index that answers searchRides from memory
+    private final RideSearchIndex searchIndex = new RideSearchIndex(seatInventory);
+
+    // Identical searches running at the same time share one: while a search for a
+    // source and destination (and page) is under way, the same search waits for its
+    // answer instead of asking storage again. Terms compare as storage does, ignoring
+    // case. -Dsearch.coalesce=false sends every search on its own.
+    private final boolean coalesceSearches = Boolean.parseBoolean(System.getProperty("search.coalesce", "true"));
+    private final SingleFlight<List<Object>, List<Ride>> searchFlights = new SingleFlight<>();
+    private final SingleFlight<List<Object>, RidePage> searchPageFlights = new SingleFlight<>();
+
+    // Grid of pickup and drop-off positions that answers searchNearby from memory;
+    // cells are -Dgeo.cellMeters (1000) tall
+    private final RideGeoIndex geoIndex = new RideGeoIndex(
+            Double.parseDouble(System.getProperty("geo.cellMeters", "1000")));
+
+    // Scores rides for recommendRides; weights come from -Drank.* (see RideRanker)
+    private final RideRanker ranker = RideRanker.fromSystemProperties();
+
+    // Departure times that answer searchRidesDeparting from memory. Every
+    // -Ddepartures.sweepSeconds (60) the rides that have left are dropped from it and
+    // from the indexes above; storage keeps them for the bookings made on them.
+    private final RideDepartureIndex departureIndex = new RideDepartureIndex();
+    private final ScheduledExecutorService departureSweep = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ride-departures");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Binary image of the search index that a restart maps instead of reading every
+    // ride (-DrideSnapshot.file), rewritten every -DrideSnapshot.intervalSeconds (300).
+    // Null when disabled, and then so is the thread that catches up and writes it.
+    private final Path rideSnapshotFile = rideSnapshotFile();
+    private final ScheduledExecutorService rideSnapshotTasks = rideSnapshotFile == null ? null
+            : Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "ride-snapshot");
+                t.setDaemon(true);
+                return t;
+            });
+    // Whether the index has seen every ride in storage, so a snapshot of it is complete
+    private volatile boolean ridesCaughtUp;
+
+    // Latency, outcome and round-trip counts of every public operation
+    private final OperationMetrics metrics = new OperationMetrics("ridebooking");
+
+    // Where users, rides and bookings live; the caches above sit in front of it
+    private final Storage storage;
+    private final UserRepository users;
+    private final RideRepository rides;
+    private final BookingRepository bookings;
+
+    // Uses the storage engine chosen with -Dstorage
+    public RideBookingSystem() {
+        this(Storage.open());
+    }
 
-    // In-memory lists for caching and backward compatibility with Main.java demo
-    private List<Ride> rideList = new ArrayList<>();
-    private List<User> userList = new ArrayList<>();
-    private List<Booking> bookingList = new ArrayList<>();
+    public RideBookingSystem(Storage storage) {
+        this.storage = storage;
+        this.users = storage.getUsers();
+        this.rides = storage.getRides();
+        this.bookings = storage.getBookings();
+        loadRideCaches();
+        long sweep = Long.getLong("departures.sweepSeconds", 60L);
+        departureSweep.scheduleWithFixedDelay(this::expireDepartedRides, sweep, sweep, TimeUnit.SECONDS);
+        if (rideSnapshotTasks != null) {
+            long interval = Long.getLong("rideSnapshot.intervalSeconds", 300L);
+            rideSnapshotTasks.scheduleWithFixedDelay(this::writeRideSnapshot, interval, interval, TimeUnit.SECONDS);
+        }
+        metrics.registerMBeans();
+    }
 
-    public RideBookingSystem() {
-        this.connection = DatabaseConnection.getConnection();
+    private static Path rideSnapshotFile() {
+        String file = System.getProperty("rideSnapshot.file");
+        return file != null && !file.isEmpty() ? Paths.get(file) : null;
     }
 
-    // ==================== USER OPERATIONS ====================
+    // Logs a database error the caller recovers from, and counts it against the running operation
+    private static void databaseError(String context, Throwable e) {
+        System.err.println(context + ": " + e.getMessage());
+        OperationMetrics.markError();
+    }
+
+    // Rides without a departure time never depart
+    private static boolean hasDeparted(Ride ride, LocalDateTime now) {
+        return ride.getDepartureTime() != null && ride.getDepartureTime().isBefore(now);
+    }
+
+    // Fill the seat inventory and the search index, from the ride snapshot when there
+    // is one and otherwise from one pass over the rides table. Departed rides keep
+    // their seat counts but stay out of the indexes.
+    private void loadRideCaches() {
+        if (rideSnapshotFile != null && loadRideSnapshot()) {
+            return;
+        }
+        seatInventory.clear();
+        searchIndex.clear();
+        geoIndex.clear();
+        departureIndex.clear();
 
-    public void registerUser(User user) {
         try {
-            // Check if user with same email already exists
-            PreparedStatement checkStmt = connection.prepareStatement(
-                    "SELECT id FROM users WHERE email = ?");
-            checkStmt.setString(1, user.getEmail());
-            ResultSet rs = checkStmt.executeQuery();
+            LocalDateTime now = LocalDateTime.now();
+            rides.streamAll(ride -> {
+                seatInventory.track(ride.getRide_id(), ride.getAvailable_seats());
+                if (!hasDeparted(ride, now)) {
+                    searchIndex.add(ride);
+                    geoIndex.add(ride);
+                    departureIndex.add(ride);
+                }
+            });
+            searchIndex.markReady();
+            geoIndex.markReady();
+            departureIndex.markReady();
+            ridesCaughtUp = true;
+            System.out.println("Ride caches loaded for " + searchIndex.size() + " rides.");
+        } catch (SQLException e) {
+            // Untracked rides fall back to the database guard, and searches to SQL
+            databaseError("Database error loading ride caches", e);
+        }
+    }
 
-            if (rs.next()) {
-                System.out.println("Error: User with email " + user.getEmail() + " already exists!");
-                return;
+    // Serves searches from the mapped snapshot at once and leaves the rest to catchUp
+    private boolean loadRideSnapshot() {
+        if (!Files.exists(rideSnapshotFile)) {
+            return false;
+        }
+        try {
+            long started = System.nanoTime();
+            RideSnapshot snapshot = RideSnapshot.open(rideSnapshotFile);
+            seatInventory.clear();
+            searchIndex.load(snapshot);
+            geoIndex.clear();
+            departureIndex.clear();
+            System.out.printf(Locale.ROOT, "Ride caches loaded for %d rides from %s in %.1f ms.%n",
+                    snapshot.size(), rideSnapshotFile, (System.nanoTime() - started) / 1e6);
+            rideSnapshotTasks.execute(() -> catchUp(snapshot));
+            return true;
+        } catch (IOException e) {
+            System.err.println("Could not load the ride snapshot, reading the rides table instead: "
+                    + e.getMessage());
+            return false;
+        }
+    }
+
+    // Brings an index loaded from a snapshot up to date with storage. Until a ride is
+    // tracked again its searches show the snapshot's seat count and its bookings are
+    // left to the database guard. Rides this node changed meanwhile keep their entries.
+    private void catchUp(RideSnapshot snapshot) {
+        long started = System.nanoTime();
+
+        // Nearby and time-windowed searches go to storage until the grid and the
+        // departure index hold the snapshot's rides; rides that left since it was
+        // written are dropped
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < snapshot.size(); i++) {
+            int rideId = snapshot.rideIdAt(i);
+            if (searchIndex.isChangedSinceSnapshot(rideId)) {
+                continue;
+            }
+            Ride ride = snapshot.ride(i);
+            if (hasDeparted(ride, now)) {
+                searchIndex.remove(rideId);
+            } else {
+                geoIndex.add(ride);
+                departureIndex.add(ride);
+            }
+        }
+        geoIndex.markReady();
+        departureIndex.markReady();
+        IntHashSet seen = new IntHashSet(snapshot.size());
+        int[] changed = { 0 };
+        try {
+            rides.streamAll(ride -> {
+                int rideId = ride.getRide_id();
+                seen.add(rideId);
+                seatInventory.trackIfAbsent(rideId, ride.getAvailable_seats());
+                if (searchIndex.isChangedSinceSnapshot(rideId)) {
+                    return;
+                }
+                int index = snapshot.indexOf(rideId);
+                if (index < 0 || !snapshot.sameColumns(index, ride)) {
+                    if (hasDeparted(ride, now)) {
+                        searchIndex.remove(rideId);
+                        geoIndex.remove(rideId);
+                        departureIndex.remove(rideId);
+                        return;
+                    }
+                    searchIndex.update(ride);
+                    geoIndex.add(ride);
+                    departureIndex.add(ride);
+                    changed[0]++;
+                }
+            });
+        } catch (SQLException e) {
+            databaseError("Database error catching up the ride snapshot", e);
+            return;
+        }
+
+        int removed = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            int rideId = snapshot.rideIdAt(i);
+            if (!seen.contains(rideId)) {
+                searchIndex.remove(rideId);
+                geoIndex.remove(rideId);
+                departureIndex.remove(rideId);
+                removed++;
             }
+        }
+        ridesCaughtUp = true;
+        System.out.printf(Locale.ROOT, "Ride snapshot caught up in %.1f ms: %d rides added or changed, %d removed.%n",
+                (System.nanoTime() - started) / 1e6, changed[0], removed);
+    }
+
+    // Runs on the ride-departures thread. Seat counts stay tracked, so a late booking
+    // attempt is still refused in memory.
+    private void expireDepartedRides() {
+        for (int rideId : departureIndex.expire(LocalDateTime.now())) {
+            searchIndex.remove(rideId);
+            geoIndex.remove(rideId);
+        }
+    }
+
+    // Runs on the ride-snapshot thread, so it never overlaps the catch-up
+    private void writeRideSnapshot() {
+        if (!ridesCaughtUp) {
+            return;
+        }
+        try {
+            long started = System.nanoTime();
+            List<Ride> indexed = searchIndex.rides();
+            RideSnapshot.write(rideSnapshotFile, indexed);
+            System.out.printf(Locale.ROOT, "Ride snapshot of %d rides written in %.1f ms.%n",
+                    indexed.size(), (System.nanoTime() - started) / 1e6);
+        } catch (IOException e) {
+            System.err.println("Could not write the ride snapshot: " + e.getMessage());
+        }
+    }
 
-            // Insert new user
-            PreparedStatement insertStmt = connection.prepareStatement(
-                    "INSERT INTO users (name, email, password, phone_number, licence_no, licence_exp) VALUES (?, ?, ?, ?, ?, ?)",
-                    Statement.RETURN_GENERATED_KEYS);
-            insertStmt.setString(1, user.getName());
-            insertStmt.setString(2, user.getEmail());
-            insertStmt.setString(3, user.getPassword());
-            insertStmt.setLong(4, user.getPhone_number());
-            insertStmt.setString(5, user.getLicence_no());
-            insertStmt.setString(6, user.getLicence_exp());
+    // ==================== USER OPERATIONS ====================
 
-            insertStmt.executeUpdate();
+    public void registerUser(User user) {
+        metrics.run("registerUser", () -> doRegisterUser(user));
+    }
 
-            // Get the generated ID
-            ResultSet keys = insertStmt.getGeneratedKeys();
-            if (keys.next()) {
-                user.setId(keys.getInt(1));
+    private void doRegisterUser(User user) {
+        try {
+            // Check if user with same email already exists
+            if (users.emailExists(user.getEmail())) {
+                System.out.println("Error: User with email " + user.getEmail() + " already exists!");
+                return;
             }
 
-            userList.add(user);
+            users.insert(user);
+            userCache.put(user);
             System.out.println("User '" + user.getName() + "' registered successfully!");
 
         } catch (SQLException e) {
-            System.err.println("Database error during registration: " + e.getMessage());
+            databaseError("Database error during registration", e);
         }
     }
 
     public User loginUser(String email, String password) {
+        return metrics.call("loginUser", Objects::nonNull, () -> doLoginUser(email, password));
+    }
+
+    private User doLoginUser(String email, String password) {
+        // Always checked against storage, so a password changed on another node or in
+        // the database takes effect at once; the cache only saves later profile reads
         try {
-            PreparedStatement stmt = connection.prepareStatement(
-                    "SELECT id, name, email, password, phone_number FROM users WHERE email = ? AND password = ?");
-            stmt.setString(1, email);
-            stmt.setString(2, password);
-
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                User user = new User(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("email"),
-                        rs.getString("password"),
-                        rs.getLong("phone_number"));
+            User user = users.findByCredentials(email, password);
+            if (user != null) {
                 System.out.println("Login successful! Welcome, " + user.getName());
 
-                // Add to cache if not already present
-                if (!userList.contains(user)) {
-                    userList.add(user);
-                }
+                userCache.put(user);
                 return user;
             }
-
         } catch (SQLException e) {
-            System.err.println("Database error during login: " + e.getMessage());
+            databaseError("Database error during login", e);
         }
 
         System.out.println("Login failed! Invalid email or password.");
         return null;
     }
 
+    // Profile read, served from the cache when possible
+    public User getUser(int id) {
+        return metrics.call("getUser", () -> doGetUser(id));
+    }
+
+    private User doGetUser(int id) {
+        User cached = userCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+
+        try {
+            User user = users.findById(id);
+            if (user != null) {
+                userCache.put(user);
+            }
+            return user;
+        } catch (SQLException e) {
+            databaseError("Database error loading user", e);
+        }
+        return null;
+    }
+
     public void updateUser(User user, String name, String email, long phoneNumber) {
+        metrics.run("updateUser", () -> doUpdateUser(user, name, email, phoneNumber));
+    }
+
+    private void doUpdateUser(User user, String name, String email, long phoneNumber) {
         try {
-            StringBuilder sql = new StringBuilder("UPDATE users SET ");
-            List<Object> params = new ArrayList<>();
-            boolean first = true;
+            users.updateDetails(user.getId(), name, email, phoneNumber);
 
             if (name != null && !name.isEmpty()) {
-                sql.append("name = ?");
-                params.add(name);
                 user.setName(name);
-                first = false;
             }
             if (email != null && !email.isEmpty()) {
-                if (!first)
-                    sql.append(", ");
-                sql.append("email = ?");
-                params.add(email);
                 user.setEmail(email);
-                first = false;
             }
             if (phoneNumber > 0) {
-                if (!first)
-                    sql.append(", ");
-                sql.append("phone_number = ?");
-                params.add(phoneNumber);
                 user.setPhone_number(phoneNumber);
             }
-
-            sql.append(" WHERE id = ?");
-
-            PreparedStatement stmt = connection.prepareStatement(sql.toString());
-            int index = 1;
-            for (Object param : params) {
-                if (param instanceof String) {
-                    stmt.setString(index++, (String) param);
-                } else if (param instanceof Long) {
-                    stmt.setLong(index++, (Long) param);
-                }
-            }
-            stmt.setInt(index, user.getId());
-
-            stmt.executeUpdate();
+            // Re-key the cache in case the email changed
+            userCache.put(user);
             System.out.println("User details updated successfully!");
 
         } catch (SQLException e) {
-            System.err.println("Database error during user update: " + e.getMessage());
+            databaseError("Database error during user update", e);
         }
     }
 
     // Check if user has valid licence details
     public boolean hasValidLicence(User user) {
-        try {
-            PreparedStatement stmt = connection.prepareStatement(
-                    "SELECT licence_no, licence_exp FROM users WHERE id = ?");
-            stmt.setInt(1, user.getId());
-            ResultSet rs = stmt.executeQuery();
+        return metrics.call("hasValidLicence", () -> doHasValidLicence(user));
+    }
+
+    private boolean doHasValidLicence(User user) {
+        // Licence details only ever get added, so a cached positive answer is safe
+        User cached = userCache.get(user.getId());
+        if (cached != null && hasLicence(cached.getLicence_no(), cached.getLicence_exp())) {
+            return true;
+        }
 
-            if (rs.next()) {
-                String licenceNo = rs.getString("licence_no");
-                String licenceExp = rs.getString("licence_exp");
-                return licenceNo != null && !licenceNo.isEmpty()
-                        && licenceExp != null && !licenceExp.isEmpty();
+        try {
+            User stored = users.findById(user.getId());
+            if (stored != null) {
+                userCache.put(stored);
+                return hasLicence(stored.getLicence_no(), stored.getLicence_exp());
             }
         } catch (SQLException e) {
-            System.err.println("Database error checking licence: " + e.getMessage());
+            databaseError("Database error checking licence", e);
         }
         return false;
     }
 
+    private static boolean hasLicence(String licenceNo, String licenceExp) {
+        return licenceNo != null && !licenceNo.isEmpty()
+                && licenceExp != null && !licenceExp.isEmpty();
+    }
+
     // Update user's licence details
     public void updateUserLicence(User user, String licenceNo, String licenceExp) {
+        metrics.run("updateUserLicence", () -> doUpdateUserLicence(user, licenceNo, licenceExp));
+    }
+
+    private void doUpdateUserLicence(User user, String licenceNo, String licenceExp) {
         try {
-            PreparedStatement stmt = connection.prepareStatement(
-                    "UPDATE users SET licence_no = ?, licence_exp = ? WHERE id = ?");
-            stmt.setString(1, licenceNo);
-            stmt.setString(2, licenceExp);
-            stmt.setInt(3, user.getId());
-            stmt.executeUpdate();
+            users.updateLicence(user.getId(), licenceNo, licenceExp);
 
             user.setLicence_no(licenceNo);
             user.setLicence_exp(licenceExp);
+            userCache.put(user);
             System.out.println("Licence details updated successfully!");
         } catch (SQLException e) {
-            System.err.println("Database error updating licence: " + e.getMessage());
+            databaseError("Database error updating licence", e);
         }
     }
 
+    // Removes the user, their bookings and their rides all or nothing, returning the
+    // seats held by the user's bookings to their rides. Refuses while other passengers
+    // hold bookings on the user's rides.
     public boolean deleteAccount(User user) {
-        try {
-            // First cancel all bookings by this user
-            List<Booking> userBookings = getUserBookings(user);
-            for (Booking booking : userBookings) {
-                deleteBooking(booking);
-            }
+        return metrics.call("deleteAccount", Boolean::booleanValue, () -> doDeleteAccount(user));
+    }
 
-            // Delete all rides created by this user
-            List<Ride> userRides = getUserCreatedRides(user);
-            for (Ride ride : userRides) {
-                deleteRide(ride);
+    private boolean doDeleteAccount(User user) {
+        try {
+            UserRepository.AccountDeletion deletion = users.deleteAccount(user.getId());
+            switch (deletion.getOutcome()) {
+                case OTHER_PASSENGERS:
+                    System.out.println("Error: Cannot delete account - other passengers have bookings on your rides!");
+                    return false;
+                case NOT_FOUND:
+                    System.out.println("Error: User not found!");
+                    return false;
+                default:
+                    forgetAccount(user.getId(), deletion.getSeatCounts(), deletion.getDeletedRides());
+                    System.out.println("Account deleted successfully!");
+                    return true;
             }
+        } catch (SQLException e) {
+            databaseError("Database error during account deletion", e);
+        }
+        return false;
+    }
 
-            // Delete the user
-            PreparedStatement stmt = connection.prepareStatement(
-                    "DELETE FROM users WHERE id = ?");
-            stmt.setInt(1, user.getId());
+    // Runs deleteAccount on the background cleanup thread so the caller is not blocked
+    public CompletableFuture<Boolean> deleteAccountAsync(User user) {
+        return CompletableFuture.supplyAsync(() -> deleteAccount(user), accountCleanup);
+    }
 
-            int rows = stmt.executeUpdate();
-            if (rows > 0) {
-                userList.remove(user);
-                System.out.println("Account deleted successfully!");
-                return true;
-            } else {
-                System.out.println("Error: User not found!");
+    // Bring the in-memory caches in line with a committed account deletion
+    private void forgetAccount(int userId, List<int[]> seatCounts, IntHashSet deletedRides) {
+        // Released rather than set, so seats reserved by bookings in flight stay taken
+        for (int[] seatCount : seatCounts) {
+            seatInventory.release(seatCount[0], seatCount[2]);
+        }
+        for (Booking booking : bookingIndex.bookingsOfUser(userId)) {
+            bookingIndex.remove(booking.getBooking_id());
+        }
+        deletedRides.forEach(rideId -> {
+            seatInventory.remove(rideId);
+            searchIndex.remove(rideId);
+            geoIndex.remove(rideId);
+            departureIndex.remove(rideId);
+            bookingIndex.removeRide(rideId);
+        });
+        synchronized (rideCache) {
+            deletedRides.forEach(rideCache::remove);
+            for (int[] seatCount : seatCounts) {
+                Ride ride = rideCache.get(seatCount[0]);
+                if (ride != null) {
+                    ride.setAvailable_seats(seatCount[1]);
+                }
             }
-
-        } catch (SQLException e) {
-            System.err.println("Database error during account deletion: " + e.getMessage());
         }
-        return false;
+        userCache.invalidate(userId);
     }
 
     // ==================== RIDE OPERATIONS ====================
 
     public Ride createRide(String source, String destination, int totalSeats, double fare,
             String carBrand, String carModel, String carNumberPlate, User createdBy) {
+        return createRide(source, destination, null, null, null, totalSeats, fare, carBrand, carModel,
+                carNumberPlate, createdBy);
+    }
+
+    // Positions and the departure time are optional. Only rides with both positions can
+    // be found by searchNearby, and only rides with a departure time by
+    // searchRidesDeparting.
+    public Ride createRide(String source, String destination, GeoPoint sourceLocation,
+            GeoPoint destinationLocation, LocalDateTime departureTime, int totalSeats, double fare,
+            String carBrand, String carModel, String carNumberPlate, User createdBy) {
+        return metrics.call("createRide", Objects::nonNull, () -> doCreateRide(source, destination, sourceLocation,
+                destinationLocation, departureTime, totalSeats, fare, carBrand, carModel, carNumberPlate,
+                createdBy));
+    }
+
+    private Ride doCreateRide(String source, String destination, GeoPoint sourceLocation,
+            GeoPoint destinationLocation, LocalDateTime departureTime, int totalSeats, double fare,
+            String carBrand, String carModel, String carNumberPlate, User createdBy) {
+        if (departureTime != null && departureTime.isBefore(LocalDateTime.now())) {
+            System.out.println("Error: Departure time must be in the future!");
+            return null;
+        }
+
         try {
             LocalDateTime timestamp = LocalDateTime.now();
-            PreparedStatement stmt = connection.prepareStatement(
-                    "INSERT INTO rides (source, destination, total_seats, available_seats, fare, created_by, car_brand, car_model, car_number_plate, timestamp) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
-                    Statement.RETURN_GENERATED_KEYS);
-            stmt.setString(1, source);
-            stmt.setString(2, destination);
-            stmt.setInt(3, totalSeats);
-            stmt.setInt(4, totalSeats); // available_seats = total_seats initially
-            stmt.setDouble(5, fare);
-            stmt.setInt(6, createdBy.getId());
-            stmt.setString(7, carBrand);
-            stmt.setString(8, carModel);
-            stmt.setString(9, carNumberPlate);
-            stmt.setTimestamp(10, Timestamp.valueOf(timestamp));
-
-            stmt.executeUpdate();
-
-            // Get the generated ride_id
-            ResultSet keys = stmt.getGeneratedKeys();
             Ride ride = new Ride(source, destination, totalSeats, fare, timestamp, createdBy);
             ride.setCarBrand(carBrand);
             ride.setCarModel(carModel);
             ride.setCarNumberPlate(carNumberPlate);
-            if (keys.next()) {
-                ride.setRide_id(keys.getInt(1));
-            }
+            ride.setSourceLocation(sourceLocation);
+            ride.setDestinationLocation(destinationLocation);
+            ride.setDepartureTime(departureTime);
 
-            rideList.add(ride);
+            rides.insert(ride);
+
+            synchronized (rideCache) {
+                rideCache.put(ride.getRide_id(), ride);
+            }
+            seatInventory.track(ride.getRide_id(), totalSeats);
+            searchIndex.add(ride);
+            geoIndex.add(ride);
+            departureIndex.add(ride);
             System.out.println("Ride created successfully: " + source + " -> " + destination);
             return ride;
 
         } catch (SQLException e) {
-            System.err.println("Database error during ride creation: " + e.getMessage());
+            databaseError("Database error during ride creation", e);
             return null;
         }
     }
 
+    // One ride by id, answered from the search index when it is loaded. The caller
+    // gets its own copy, so concurrent requests never share a Ride.
+    public Ride findRide(int rideId) {
+        return metrics.call("findRide", () -> doFindRide(rideId));
+    }
+
+    private Ride doFindRide(int rideId) {
+        if (searchIndex.isReady()) {
+            Ride indexed = searchIndex.get(rideId);
+            if (indexed != null) {
+                return indexed;
+            }
+        }
+
+        try {
+            return rides.findById(rideId);
+        } catch (SQLException e) {
+            databaseError("Database error loading ride", e);
+        }
+        return null;
+    }
+
     // Check if a ride has any bookings
     public boolean hasBookings(Ride ride) {
+        return metrics.call("hasBookings", () -> doHasBookings(ride));
+    }
+
+    private boolean doHasBookings(Ride ride) {
         try {
-            PreparedStatement stmt = connection.prepareStatement(
-                    "SELECT COUNT(*) FROM bookings WHERE ride_id = ? AND status != 'CANCELLED'");
-            stmt.setInt(1, ride.getRide_id());
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1) > 0;
-            }
+            return bookings.activeSeats(ride.getRide_id()) > 0;
         } catch (SQLException e) {
-            System.err.println("Database error checking bookings: " + e.getMessage());
+            databaseError("Database error checking bookings", e);
         }
         return false;
     }
 
     public void updateRide(Ride ride, String source, String destination, int totalSeats, double fare) {
+        metrics.run("updateRide", () -> doUpdateRide(ride, source, destination, totalSeats, fare));
+    }
+
+    private void doUpdateRide(Ride ride, String source, String destination, int totalSeats, double fare) {
         // Check if ride has any bookings
         if (hasBookings(ride)) {
             System.out.println("Error: Cannot update ride - there are existing bookings for this ride!");
             return;
         }
 
-        try {
-            int bookedSeats = ride.getTotal_seats() - ride.getAvailable_seats();
-
-            if (totalSeats > 0 && totalSeats < bookedSeats) {
-                System.out.println("Error: Cannot reduce seats below booked count!");
-                return;
-            }
+        int bookedSeats = ride.getTotal_seats() - ride.getAvailable_seats();
 
-            PreparedStatement stmt = connection.prepareStatement(
-                    "UPDATE rides SET source = COALESCE(NULLIF(?, ''), source), " +
-                            "destination = COALESCE(NULLIF(?, ''), destination), " +
-                            "total_seats = CASE WHEN ? > 0 THEN ? ELSE total_seats END, " +
-                            "available_seats = CASE WHEN ? > 0 THEN ? - (total_seats - available_seats) ELSE available_seats END, "
-                            +
-                            "fare = CASE WHEN ? > 0 THEN ? ELSE fare END " +
-                            "WHERE ride_id = ?");
-
-            stmt.setString(1, source != null ? source : "");
-            stmt.setString(2, destination != null ? destination : "");
-            stmt.setInt(3, totalSeats);
-            stmt.setInt(4, totalSeats);
-            stmt.setInt(5, totalSeats);
-            stmt.setInt(6, totalSeats);
-            stmt.setDouble(7, fare);
-            stmt.setDouble(8, fare);
-            stmt.setInt(9, ride.getRide_id());
+        if (totalSeats > 0 && totalSeats < bookedSeats) {
+            System.out.println("Error: Cannot reduce seats below booked count!");
+            return;
+        }
 
-            stmt.executeUpdate();
+        try {
+            int addedSeats = rides.update(ride.getRide_id(), source, destination, totalSeats, fare);
 
             // Update the object in memory
             if (source != null && !source.isEmpty())
@@ -315,18 +603,25 @@ public class RideBookingSystem {
                 int newAvailable = totalSeats - bookedSeats;
                 ride.setTotal_seats(totalSeats);
                 ride.setAvailable_seats(newAvailable);
+                // A delta, so seats reserved by bookings still in flight stay taken
+                seatInventory.release(ride.getRide_id(), addedSeats);
             }
             if (fare > 0)
                 ride.setFare(fare);
+            searchIndex.update(ride);
 
             System.out.println("Ride updated successfully!");
 
         } catch (SQLException e) {
-            System.err.println("Database error during ride update: " + e.getMessage());
+            databaseError("Database error during ride update", e);
         }
     }
 
     public boolean deleteRide(Ride ride) {
+        return metrics.call("deleteRide", Boolean::booleanValue, () -> doDeleteRide(ride));
+    }
+
+    private boolean doDeleteRide(Ride ride) {
         // Check if ride has any bookings
         if (hasBookings(ride)) {
             System.out.println("Error: Cannot delete ride - there are existing bookings for this ride!");
@@ -334,23 +629,18 @@ public class RideBookingSystem {
         }
 
         try {
-            // First delete all bookings for this ride (cancelled ones)
-            PreparedStatement deleteBookings = connection.prepareStatement(
-                    "DELETE FROM bookings WHERE ride_id = ?");
-            deleteBookings.setInt(1, ride.getRide_id());
-            deleteBookings.executeUpdate();
-
-            // Remove from bookingList cache
-            bookingList.removeIf(b -> b.getRide_id() == ride.getRide_id());
-
-            // Delete the ride
-            PreparedStatement stmt = connection.prepareStatement(
-                    "DELETE FROM rides WHERE ride_id = ?");
-            stmt.setInt(1, ride.getRide_id());
-
-            int rows = stmt.executeUpdate();
-            if (rows > 0) {
-                rideList.remove(ride);
+            // Cancelled bookings on the ride go with it
+            boolean deleted = rides.delete(ride.getRide_id());
+            bookingIndex.removeRide(ride.getRide_id());
+
+            if (deleted) {
+                synchronized (rideCache) {
+                    rideCache.remove(ride.getRide_id());
+                }
+                seatInventory.remove(ride.getRide_id());
+                searchIndex.remove(ride.getRide_id());
+                geoIndex.remove(ride.getRide_id());
+                departureIndex.remove(ride.getRide_id());
                 System.out.println("Ride deleted successfully!");
                 return true;
             } else {
@@ -358,135 +648,306 @@ public class RideBookingSystem {
             }
 
         } catch (SQLException e) {
-            System.err.println("Database error during ride deletion: " + e.getMessage());
+            databaseError("Database error during ride deletion", e);
         }
         return false;
     }
 
+    // Largest page a caller may ask for
+    public static final int MAX_PAGE_SIZE = 100;
+
     public List<Ride> searchRides(String source, String destination) {
+        return metrics.call("searchRides", () -> {
+            if (!coalesceSearches) {
+                return doSearchRides(source, destination);
+            }
+            return searchFlights.execute(searchKey(source, destination), () -> doSearchRides(source, destination),
+                    RideBookingSystem::copyRides);
+        });
+    }
+
+    // Null and empty terms both mean no filter
+    private static List<Object> searchKey(Object... parts) {
+        List<Object> key = new ArrayList<>(parts.length);
+        for (Object part : parts) {
+            key.add(part instanceof String ? RideSearchIndex.normalize((String) part) : part);
+        }
+        return key;
+    }
+
+    // Callers that shared a search get rides of their own, as from the index
+    private static List<Ride> copyRides(List<Ride> rides) {
+        List<Ride> copies = new ArrayList<>(rides.size());
+        for (Ride ride : rides) {
+            copies.add(RideSearchIndex.copyOf(ride));
+        }
+        return copies;
+    }
+
+    private List<Ride> doSearchRides(String source, String destination) {
+        if (searchIndex.isReady()) {
+            return searchIndex.search(source, destination);
+        }
+
         List<Ride> matchingRides = new ArrayList<>();
 
         try {
-            String sql = "SELECT r.*, u.name as creator_name FROM rides r " +
-                    "LEFT JOIN users u ON r.created_by = u.id " +
-                    "WHERE available_seats > 0";
+            rides.search(source, destination, 0, 0, matchingRides::add);
+        } catch (SQLException e) {
+            databaseError("Database error during ride search", e);
+        }
 
-            if (source != null && !source.isEmpty()) {
-                sql += " AND LOWER(source) LIKE LOWER(?)";
-            }
-            if (destination != null && !destination.isEmpty()) {
-                sql += " AND LOWER(destination) LIKE LOWER(?)";
+        return matchingRides;
+    }
+
+    // Keyset pagination on ride_id: each page starts after the last ride_id of the
+    // previous one, so deep pages cost the same as the first. ride_id grows with the
+    // creation timestamp, so it also orders rides by age.
+    public RidePage searchRidesPage(String source, String destination, int afterRideId, int pageSize) {
+        return metrics.call("searchRidesPage", () -> {
+            if (!coalesceSearches) {
+                return doSearchRidesPage(source, destination, afterRideId, pageSize);
             }
+            return searchPageFlights.execute(searchKey(source, destination, afterRideId, pageSize),
+                    () -> doSearchRidesPage(source, destination, afterRideId, pageSize),
+                    page -> new RidePage(copyRides(page.getRides()), page.getNextCursor(), page.hasMore()));
+        });
+    }
+
+    private RidePage doSearchRidesPage(String source, String destination, int afterRideId, int pageSize) {
+        int limit = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+
+        if (searchIndex.isReady()) {
+            return searchIndex.searchPage(source, destination, afterRideId, limit);
+        }
+
+        List<Ride> matchingRides = new ArrayList<>();
+
+        try {
+            // One extra row tells us whether another page follows
+            rides.search(source, destination, afterRideId, limit + 1, matchingRides::add);
+        } catch (SQLException e) {
+            databaseError("Database error during ride search", e);
+        }
+
+        boolean hasMore = matchingRides.size() > limit;
+        if (hasMore) {
+            matchingRides.remove(limit);
+        }
+        int nextCursor = matchingRides.isEmpty() ? afterRideId
+                : matchingRides.get(matchingRides.size() - 1).getRide_id();
+        return new RidePage(matchingRides, nextCursor, hasMore);
+    }
 
-            PreparedStatement stmt = connection.prepareStatement(sql);
+    // Hands each matching ride to the consumer in ride_id order. Storage is read in
+    // keyset pages of -Dstream.pageSize (500) rows, each read whole and its connection
+    // given back before its rows go to the consumer, so a slow consumer never holds a
+    // connection. A storage failure is thrown, after the rows handed over so far.
+    // Returns the row count.
+    public int streamRides(String source, String destination, Consumer<Ride> consumer) throws SQLException {
+        return metrics.callThrowing("streamRides", () -> doStreamRides(source, destination, consumer));
+    }
 
-            int paramIndex = 1;
-            if (source != null && !source.isEmpty()) {
-                stmt.setString(paramIndex++, "%" + source + "%");
+    private static final int STREAM_PAGE_SIZE = Math.max(1, Integer.getInteger("stream.pageSize", 500));
+
+    private int doStreamRides(String source, String destination, Consumer<Ride> consumer) throws SQLException {
+        int count = 0;
+        int afterRideId = 0;
+        List<Ride> page = new ArrayList<>(STREAM_PAGE_SIZE);
+        while (true) {
+            page.clear();
+            rides.search(source, destination, afterRideId, STREAM_PAGE_SIZE, page::add);
+            for (Ride ride : page) {
+                consumer.accept(ride);
             }
-            if (destination != null && !destination.isEmpty()) {
-                stmt.setString(paramIndex++, "%" + destination + "%");
+            count += page.size();
+            if (page.size() < STREAM_PAGE_SIZE) {
+                return count;
             }
+            afterRideId = page.get(page.size() - 1).getRide_id();
+        }
+    }
 
-            ResultSet rs = stmt.executeQuery();
+    // The k rides that suit the rider best by RideRanker's score, best first. The text
+    // filters work as in searchRides; departure is the wanted time (null for as soon as
+    // possible) and seats the number needed. Only the k winners are ever copied.
+    public List<Ride> recommendRides(String source, String destination, LocalDateTime departure, int seats,
+            int k) {
+        return metrics.call("recommendRides", () -> doRecommendRides(source, destination, departure, seats, k));
+    }
 
-            while (rs.next()) {
-                Ride ride = new Ride(
-                        rs.getInt("ride_id"),
-                        rs.getString("source"),
-                        rs.getString("destination"),
-                        rs.getInt("total_seats"),
-                        rs.getInt("available_seats"),
-                        rs.getDouble("fare"),
-                        rs.getInt("created_by"));
-                matchingRides.add(ride);
-            }
+    private List<Ride> doRecommendRides(String source, String destination, LocalDateTime departure, int seats,
+            int k) {
+        RideRanker.TopK top = ranker.topK(source, destination, departure, seats, Math.min(k, MAX_PAGE_SIZE));
+        if (searchIndex.isReady()) {
+            return searchIndex.searchTop(source, destination, top);
+        }
 
+        try {
+            rides.search(source, destination, 0, 0, ride -> top.offer(ride, ride.getAvailable_seats()));
         } catch (SQLException e) {
-            System.err.println("Database error during ride search: " + e.getMessage());
+            databaseError("Database error during ride search", e);
+        }
+        List<Ride> best = new ArrayList<>();
+        for (RideRanker.Scored scored : top.best()) {
+            best.add(scored.getRide());
         }
+        return best;
+    }
 
-        return matchingRides;
+    // Rides with free seats matching the text filters as searchRides does, leaving between
+    // from and to inclusive, earliest first. The window never starts before now.
+    public List<Ride> searchRidesDeparting(String source, String destination, LocalDateTime from,
+            LocalDateTime to) {
+        return metrics.call("searchRidesDeparting", () -> doSearchRidesDeparting(source, destination, from, to));
     }
 
-    public List<Ride> getUserCreatedRides(User user) {
-        List<Ride> userRides = new ArrayList<>();
+    private List<Ride> doSearchRidesDeparting(String source, String destination, LocalDateTime from,
+            LocalDateTime to) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime start = from.isBefore(now) ? now : from;
+        if (start.isAfter(to)) {
+            return new ArrayList<>();
+        }
 
+        if (departureIndex.isReady() && searchIndex.isReady()) {
+            return searchIndex.searchAmong(departureIndex.departing(start, to), source, destination);
+        }
+
+        List<Ride> departingRides = new ArrayList<>();
         try {
-            PreparedStatement stmt = connection.prepareStatement(
-                    "SELECT * FROM rides WHERE created_by = ?");
-            stmt.setInt(1, user.getId());
-
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                Ride ride = new Ride(
-                        rs.getInt("ride_id"),
-                        rs.getString("source"),
-                        rs.getString("destination"),
-                        rs.getInt("total_seats"),
-                        rs.getInt("available_seats"),
-                        rs.getDouble("fare"),
-                        rs.getInt("created_by"));
-                ride.setCreatedBy(user);
-                userRides.add(ride);
+            rides.searchDeparting(source, destination, start, to, departingRides::add);
+        } catch (SQLException e) {
+            databaseError("Database error during ride search", e);
+        }
+        return departingRides;
+    }
+
+    // Rides with free seats that pick up within radiusMeters of from and drop off within
+    // radiusMeters of to, the smallest sum of both distances first, at most limit of them
+    public List<Ride> searchNearby(GeoPoint from, GeoPoint to, double radiusMeters, int limit) {
+        return metrics.call("searchNearby", () -> doSearchNearby(from, to, radiusMeters, limit));
+    }
+
+    private List<Ride> doSearchNearby(GeoPoint from, GeoPoint to, double radiusMeters, int limit) {
+        int max = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<Ride> nearbyRides = new ArrayList<>();
+
+        if (geoIndex.isReady() && searchIndex.isReady()) {
+            // Departed rides leave the index on the next sweep; until then they are skipped
+            LocalDateTime now = LocalDateTime.now();
+            for (int rideId : geoIndex.nearby(from, to, radiusMeters)) {
+                Ride ride = searchIndex.get(rideId);
+                if (ride != null && ride.getAvailable_seats() > 0 && !hasDeparted(ride, now)) {
+                    nearbyRides.add(ride);
+                    if (nearbyRides.size() == max) {
+                        break;
+                    }
+                }
             }
+            return nearbyRides;
+        }
 
+        try {
+            rides.searchNearby(from, to, radiusMeters, nearbyRides::add);
         } catch (SQLException e) {
-            System.err.println("Database error: " + e.getMessage());
+            databaseError("Database error during nearby search", e);
         }
+        nearbyRides.sort(Comparator.comparingDouble((Ride ride) -> ride.getSourceLocation().distanceMeters(from)
+                + ride.getDestinationLocation().distanceMeters(to)).thenComparingInt(Ride::getRide_id));
+        return nearbyRides.size() > max ? new ArrayList<>(nearbyRides.subList(0, max)) : nearbyRides;
+    }
+
+    public List<Ride> getUserCreatedRides(User user) {
+        return metrics.call("getUserCreatedRides", () -> doGetUserCreatedRides(user));
+    }
 
-        return userRides;
+    private List<Ride> doGetUserCreatedRides(User user) {
+        try {
+            List<Ride> userRides = rides.findByCreator(user.getId());
+            for (Ride ride : userRides) {
+                ride.setCreatedBy(user);
+            }
+            return userRides;
+        } catch (SQLException e) {
+            databaseError("Database error", e);
+        }
+        return new ArrayList<>();
     }
 
     public List<Ride> getAllAvailableRides() {
         return searchRides(null, null);
     }
 
+    public RidePage getAvailableRidesPage(int afterRideId, int pageSize) {
+        return searchRidesPage(null, null, afterRideId, pageSize);
+    }
+
     // ==================== BOOKING OPERATIONS ====================
 
+    // Longest a booking waits for its write (-Dbooking.timeoutMillis)
+    private static final long BOOKING_TIMEOUT_MILLIS = Long.getLong("booking.timeoutMillis", 10_000L);
+
     public Booking bookRide(User user, Ride ride, int seats) {
-        if (ride.getAvailable_seats() < seats) {
-            System.out.println("Error: Not enough seats available! Available: " + ride.getAvailable_seats());
+        return metrics.call("bookRide", Objects::nonNull, () -> doBookRide(user, ride, seats));
+    }
+
+    private Booking doBookRide(User user, Ride ride, int seats) {
+        if (seats <= 0) {
+            System.out.println("Error: Number of seats must be at least 1!");
+            return null;
+        }
+
+        if (hasDeparted(ride, LocalDateTime.now())) {
+            System.out.println("Error: Ride #" + ride.getRide_id() + " has already departed!");
+            return null;
+        }
+
+        // Rejections are decided in memory and never reach the database
+        if (!seatInventory.tryReserve(ride.getRide_id(), seats)) {
+            System.out.println("Error: Not enough seats available! Available: "
+                    + seatInventory.getAvailable(ride.getRide_id()));
             return null;
         }
 
+        boolean keepSeats = false;
         try {
-            double totalFare = ride.getFare() * seats;
             LocalDateTime bookingTime = LocalDateTime.now();
 
-            // Insert booking into database with booking_time
-            PreparedStatement stmt = connection.prepareStatement(
-                    "INSERT INTO bookings (ride_id, user_id, total_seats, total_fare, status, booking_time) VALUES (?, ?, ?, ?, ?, ?)",
-                    Statement.RETURN_GENERATED_KEYS);
-            stmt.setInt(1, ride.getRide_id());
-            stmt.setInt(2, user.getId());
-            stmt.setInt(3, seats);
-            stmt.setDouble(4, totalFare);
-            stmt.setString(5, "CONFIRMED");
-            stmt.setTimestamp(6, Timestamp.valueOf(bookingTime));
-
-            stmt.executeUpdate();
-
-            // Get generated booking_id
-            ResultSet keys = stmt.getGeneratedKeys();
-            int bookingId = 0;
-            if (keys.next()) {
-                bookingId = keys.getInt(1);
-            }
-
-            // Update ride's available seats in database
-            PreparedStatement updateRide = connection.prepareStatement(
-                    "UPDATE rides SET available_seats = available_seats - ? WHERE ride_id = ?");
-            updateRide.setInt(1, seats);
-            updateRide.setInt(2, ride.getRide_id());
-            updateRide.executeUpdate();
+            CompletableFuture<BookingRepository.Result> write = bookings
+                    .book(ride.getRide_id(), user.getId(), seats, bookingTime);
+            BookingRepository.Result result;
+            try {
+                result = write.get(BOOKING_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // The write may still land, so the seats stay taken until it is known
+                keepSeats = true;
+                write.whenComplete((late, error) -> {
+                    if (late == null) {
+                        seatInventory.release(ride.getRide_id(), seats);
+                    }
+                });
+                System.err.println("Booking not confirmed within " + BOOKING_TIMEOUT_MILLIS
+                        + " ms; check your bookings before trying again");
+                OperationMetrics.markError();
+                return null;
+            }
+            if (result == null) {
+                System.out.println("Error: Not enough seats available for ride #" + ride.getRide_id() + "!");
+                return null;
+            }
+            keepSeats = true;
 
-            // Update in-memory objects
-            ride.addPassenger(user, seats);
+            int bookingId = result.getBookingId();
+            double totalFare = result.getTotalFare();
+            int remainingSeats = result.getRemainingSeats();
+
+            // Sync the in-memory ride with the row we just updated
+            ride.confirmBooking(user, seats, remainingSeats);
 
             Booking booking = new Booking(bookingId, ride, user, seats, totalFare);
-            bookingList.add(booking);
+            booking.setBookingTime(bookingTime);
+            bookingIndex.add(booking);
 
             System.out.println("Booking confirmed! Booking ID: " + booking.getBooking_id());
             System.out.println("  Route: " + ride.getSource() + " -> " + ride.getDestination());
@@ -494,82 +955,88 @@ public class RideBookingSystem {
 
             return booking;
 
-        } catch (SQLException e) {
-            System.err.println("Database error during booking: " + e.getMessage());
+        } catch (ExecutionException e) {
+            databaseError("Database error during booking", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            databaseError("Interrupted while booking", e);
             return null;
+        } finally {
+            if (!keepSeats) {
+                // The write-through failed, so hand the seats back
+                seatInventory.release(ride.getRide_id(), seats);
+            }
         }
     }
 
     public List<Booking> getUserBookings(User user) {
-        List<Booking> userBookings = new ArrayList<>();
+        return metrics.call("getUserBookings", () -> doGetUserBookings(user));
+    }
 
+    private List<Booking> doGetUserBookings(User user) {
+        List<Booking> userBookings = new ArrayList<>();
         try {
-            PreparedStatement stmt = connection.prepareStatement(
-                    "SELECT b.*, r.source, r.destination FROM bookings b " +
-                            "JOIN rides r ON b.ride_id = r.ride_id " +
-                            "WHERE b.user_id = ? AND b.status != 'CANCELLED'");
-            stmt.setInt(1, user.getId());
-
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                LocalDateTime bookingTime = null;
-                Timestamp ts = rs.getTimestamp("booking_time");
-                if (ts != null) {
-                    bookingTime = ts.toLocalDateTime();
-                }
-                Booking booking = new Booking(
-                        rs.getInt("booking_id"),
-                        rs.getInt("ride_id"),
-                        rs.getInt("user_id"),
-                        rs.getInt("total_seats"),
-                        rs.getDouble("total_fare"),
-                        rs.getString("status"),
-                        bookingTime);
-                booking.setUser(user);
-                userBookings.add(booking);
-            }
-
+            streamUserBookings(user, userBookings::add);
         } catch (SQLException e) {
-            System.err.println("Database error: " + e.getMessage());
+            databaseError("Database error", e);
         }
-
         return userBookings;
     }
 
+    // Hands each of the user's active bookings to the consumer straight off a
+    // server-side cursor. A storage failure is thrown, after the rows handed over so
+    // far. Returns the row count.
+    public int streamUserBookings(User user, Consumer<Booking> consumer) throws SQLException {
+        return metrics.callThrowing("streamUserBookings", () -> doStreamUserBookings(user, consumer));
+    }
+
+    private int doStreamUserBookings(User user, Consumer<Booking> consumer) throws SQLException {
+        int[] count = { 0 };
+        bookings.streamActiveByUser(user.getId(), booking -> {
+            booking.setUser(user);
+            consumer.accept(booking);
+            count[0]++;
+        });
+        return count[0];
+    }
+
     public boolean updateBooking(Booking booking, int newSeats) {
+        return metrics.call("updateBooking", Boolean::booleanValue, () -> doUpdateBooking(booking, newSeats));
+    }
+
+    private boolean doUpdateBooking(Booking booking, int newSeats) {
+        if (newSeats <= 0) {
+            System.out.println("Error: Number of seats must be at least 1!");
+            return false;
+        }
+
+        int rideId = booking.getRide_id();
+        int seatDifference = newSeats - booking.getTotal_seats();
+        if (seatDifference > 0 && !seatInventory.tryReserve(rideId, seatDifference)) {
+            System.out.println("Error: Not enough seats available!");
+            return false;
+        }
+
+        boolean updated = false;
         try {
             Ride ride = booking.getRide();
-            int currentSeats = booking.getTotal_seats();
-            int seatDifference = newSeats - currentSeats;
 
-            if (seatDifference > 0 && ride.getAvailable_seats() < seatDifference) {
+            BookingRepository.Result result = bookings.update(booking.getBooking_id(), newSeats);
+            if (result == null) {
                 System.out.println("Error: Not enough seats available!");
                 return false;
             }
-
-            double newFare = ride.getFare() * newSeats;
-
-            // Update booking in database
-            PreparedStatement stmt = connection.prepareStatement(
-                    "UPDATE bookings SET total_seats = ?, total_fare = ? WHERE booking_id = ?");
-            stmt.setInt(1, newSeats);
-            stmt.setDouble(2, newFare);
-            stmt.setInt(3, booking.getBooking_id());
-            stmt.executeUpdate();
-
-            // Update ride's available seats
-            PreparedStatement updateRide = connection.prepareStatement(
-                    "UPDATE rides SET available_seats = available_seats - ? WHERE ride_id = ?");
-            updateRide.setInt(1, seatDifference);
-            updateRide.setInt(2, ride.getRide_id());
-            updateRide.executeUpdate();
+            double newFare = result.getTotalFare();
+            int remainingSeats = result.getRemainingSeats();
+            updated = true;
+            if (seatDifference < 0) {
+                seatInventory.release(rideId, -seatDifference);
+            }
 
             // Update in-memory objects
-            if (seatDifference > 0) {
-                ride.addPassenger(booking.getUser(), seatDifference);
-            } else if (seatDifference < 0) {
-                ride.removePassenger(booking.getUser(), -seatDifference);
+            if (ride != null) {
+                ride.confirmBooking(booking.getUser(), seatDifference, remainingSeats);
             }
 
             booking.setTotal_seats(newSeats);
@@ -579,12 +1046,20 @@ public class RideBookingSystem {
             return true;
 
         } catch (SQLException e) {
-            System.err.println("Database error during booking update: " + e.getMessage());
+            databaseError("Database error during booking update", e);
             return false;
+        } finally {
+            if (!updated && seatDifference > 0) {
+                seatInventory.release(rideId, seatDifference);
+            }
         }
     }
 
     public boolean deleteBooking(Booking booking) {
+        return metrics.call("deleteBooking", Boolean::booleanValue, () -> doDeleteBooking(booking));
+    }
+
+    private boolean doDeleteBooking(Booking booking) {
         // Check 10-minute cancellation window
         LocalDateTime bookingTime = booking.getBookingTime();
         if (bookingTime != null) {
@@ -603,31 +1078,25 @@ public class RideBookingSystem {
             Ride ride = booking.getRide();
             int seats = booking.getTotal_seats();
 
-            // Update booking status to CANCELLED
-            PreparedStatement stmt = connection.prepareStatement(
-                    "UPDATE bookings SET status = 'CANCELLED' WHERE booking_id = ?");
-            stmt.setInt(1, booking.getBooking_id());
-            stmt.executeUpdate();
+            if (!bookings.cancel(booking.getBooking_id())) {
+                System.out.println("Error: Booking #" + booking.getBooking_id() + " is already cancelled!");
+                return false;
+            }
 
-            // Return seats to the ride
-            PreparedStatement updateRide = connection.prepareStatement(
-                    "UPDATE rides SET available_seats = available_seats + ? WHERE ride_id = ?");
-            updateRide.setInt(1, seats);
-            updateRide.setInt(2, booking.getRide_id());
-            updateRide.executeUpdate();
+            seatInventory.release(booking.getRide_id(), seats);
 
             // Update in-memory objects
             if (ride != null) {
-                ride.removePassenger(booking.getUser(), seats);
+                ride.confirmCancellation(booking.getUser(), seats);
             }
             booking.setStatus("CANCELLED");
-            bookingList.remove(booking);
+            bookingIndex.remove(booking.getBooking_id());
 
             System.out.println("Booking #" + booking.getBooking_id() + " cancelled successfully!");
             return true;
 
         } catch (SQLException e) {
-            System.err.println("Database error during booking cancellation: " + e.getMessage());
+            databaseError("Database error during booking cancellation", e);
             return false;
         }
     }
@@ -635,108 +1104,182 @@ public class RideBookingSystem {
     // ==================== DISPLAY OPERATIONS ====================
 
     public void displayAllRides() {
-        System.out.println("\n=== All Available Rides ===");
-
-        try {
-            PreparedStatement stmt = connection.prepareStatement(
-                    "SELECT r.*, u.name as creator_name FROM rides r " +
-                            "LEFT JOIN users u ON r.created_by = u.id");
-            ResultSet rs = stmt.executeQuery();
-
-            boolean hasRides = false;
-            int count = 1;
-
-            while (rs.next()) {
-                hasRides = true;
-                System.out.println(count++ + ". Ride{ride_id=" + rs.getInt("ride_id") +
-                        ", source='" + rs.getString("source") + "'" +
-                        ", destination='" + rs.getString("destination") + "'" +
-                        ", total_seats=" + rs.getInt("total_seats") +
-                        ", available_seats=" + rs.getInt("available_seats") +
-                        ", fare=" + rs.getDouble("fare") +
-                        ", createdBy=" + rs.getString("creator_name") + "}");
-            }
-
-            if (!hasRides) {
-                System.out.println("No rides available.");
-            }
-
-        } catch (SQLException e) {
-            System.err.println("Database error: " + e.getMessage());
-        }
+        exportAllRides(ExportSink.console());
     }
 
     public void displayAllBookings() {
-        System.out.println("\n=== All Bookings ===");
+        exportAllBookings(ExportSink.console());
+    }
 
-        try {
-            PreparedStatement stmt = connection.prepareStatement(
-                    "SELECT b.*, r.source, r.destination, u.name as user_name " +
-                            "FROM bookings b " +
-                            "JOIN rides r ON b.ride_id = r.ride_id " +
-                            "JOIN users u ON b.user_id = u.id " +
-                            "WHERE b.status != 'CANCELLED'");
-            ResultSet rs = stmt.executeQuery();
+    public void displayAllUsers() {
+        exportAllUsers(ExportSink.console());
+    }
 
-            boolean hasBookings = false;
+    // The export methods stream rows from storage straight into the sink and close it
+    // when done. They return the number of rows written.
 
-            while (rs.next()) {
-                hasBookings = true;
-                System.out.println("Booking{booking_id=" + rs.getInt("booking_id") +
-                        ", route=" + rs.getString("source") + "->" + rs.getString("destination") +
-                        ", user=" + rs.getString("user_name") +
-                        ", seats=" + rs.getInt("total_seats") +
-                        ", fare=" + rs.getDouble("total_fare") +
-                        ", status='" + rs.getString("status") + "'}");
-            }
+    public int exportAllRides(ExportSink sink) {
+        return metrics.call("exportAllRides", () -> doExportAllRides(sink));
+    }
 
-            if (!hasBookings) {
-                System.out.println("No bookings found.");
-            }
+    private int doExportAllRides(ExportSink sink) {
+        return export(sink, "\n=== All Available Rides ===", "No rides available.", rides::streamAll,
+                (ride, count) -> count + ". Ride{ride_id=" + ride.getRide_id() +
+                        ", source='" + ride.getSource() + "'" +
+                        ", destination='" + ride.getDestination() + "'" +
+                        ", total_seats=" + ride.getTotal_seats() +
+                        ", available_seats=" + ride.getAvailable_seats() +
+                        ", fare=" + ride.getFare() +
+                        ", createdBy=" + (ride.getCreatedBy() != null ? ride.getCreatedBy().getName() : null) + "}");
+    }
 
-        } catch (SQLException e) {
-            System.err.println("Database error: " + e.getMessage());
-        }
+    public int exportAllBookings(ExportSink sink) {
+        return metrics.call("exportAllBookings", () -> doExportAllBookings(sink));
     }
 
-    public void displayAllUsers() {
-        System.out.println("\n=== Registered Users ===");
+    private int doExportAllBookings(ExportSink sink) {
+        return export(sink, "\n=== All Bookings ===", "No bookings found.", bookings::streamActive,
+                (booking, count) -> "Booking{booking_id=" + booking.getBooking_id() +
+                        ", route=" + booking.getRide().getSource() + "->" + booking.getRide().getDestination() +
+                        ", user=" + booking.getUser().getName() +
+                        ", seats=" + booking.getTotal_seats() +
+                        ", fare=" + booking.getTotal_fare() +
+                        ", status='" + booking.getStatus() + "'}");
+    }
 
-        try {
-            PreparedStatement stmt = connection.prepareStatement(
-                    "SELECT id, name, email, phone_number FROM users");
-            ResultSet rs = stmt.executeQuery();
+    public int exportAllUsers(ExportSink sink) {
+        return metrics.call("exportAllUsers", () -> doExportAllUsers(sink));
+    }
 
-            boolean hasUsers = false;
+    private int doExportAllUsers(ExportSink sink) {
+        return export(sink, "\n=== Registered Users ===", "No users registered.", users::streamAll,
+                (user, count) -> "User{id=" + user.getId() +
+                        ", name='" + user.getName() + "'" +
+                        ", email='" + user.getEmail() + "'" +
+                        ", phone=" + user.getPhone_number() + "}");
+    }
 
-            while (rs.next()) {
-                hasUsers = true;
-                System.out.println("User{id=" + rs.getInt("id") +
-                        ", name='" + rs.getString("name") + "'" +
-                        ", email='" + rs.getString("email") + "'" +
-                        ", phone=" + rs.getLong("phone_number") + "}");
-            }
+    private interface RowSource<T> {
+        void stream(Consumer<T> consumer) throws SQLException;
+    }
+
+    private interface RowFormatter<T> {
+        String format(T row, int count);
+    }
 
-            if (!hasUsers) {
-                System.out.println("No users registered.");
+    private <T> int export(ExportSink sink, String title, String emptyMessage, RowSource<T> source,
+            RowFormatter<T> formatter) {
+        int[] count = { 0 };
+
+        try (ExportSink out = sink) {
+            out.writeLine(title);
+            source.stream(row -> {
+                try {
+                    out.writeLine(formatter.format(row, ++count[0]));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (count[0] == 0) {
+                out.writeLine(emptyMessage);
             }
 
         } catch (SQLException e) {
-            System.err.println("Database error: " + e.getMessage());
+            databaseError("Database error", e);
+        } catch (IOException | UncheckedIOException e) {
+            databaseError("Export error", e);
         }
+        return count[0];
     }
 
     // ==================== GETTERS FOR LISTS (cached data) ====================
 
+    // Snapshot of the rides created through this instance
     public List<Ride> getRideList() {
-        return rideList;
+        synchronized (rideCache) {
+            return rideCache.values();
+        }
     }
 
+    // Snapshot of the users currently cached
     public List<User> getUserList() {
-        return userList;
+        return userCache.snapshot();
     }
 
+    public UserCache getUserCache() {
+        return userCache;
+    }
+
+    // Snapshot of the bookings made through this instance
     public List<Booking> getBookingList() {
-        return bookingList;
+        return bookingIndex.values();
+    }
+
+    public BookingIndex getBookingIndex() {
+        return bookingIndex;
+    }
+
+    public SeatInventory getSeatInventory() {
+        return seatInventory;
+    }
+
+    public RideSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    public RideGeoIndex getGeoIndex() {
+        return geoIndex;
+    }
+
+    public RideDepartureIndex getDepartureIndex() {
+        return departureIndex;
+    }
+
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Point-in-time values published next to the operation metrics
+    public Map<String, Number> getGauges() {
+        Map<String, Number> gauges = new LinkedHashMap<>();
+        storage.addGauges(gauges);
+        gauges.put("db_round_trips", RoundTripCounter.total());
+        gauges.put("seat_inventory_rejected", seatInventory.getRejectedCount());
+        gauges.put("user_cache_hit_ratio", userCache.getHitRatio());
+        RideSnapshot snapshot = searchIndex.getSnapshot();
+        if (snapshot != null) {
+            gauges.put("ride_snapshot_rides", snapshot.size());
+            gauges.put("ride_snapshot_caught_up", ridesCaughtUp ? 1 : 0);
+        }
+        gauges.put("geo_index_rides", geoIndex.size());
+        gauges.put("departure_index_rides", departureIndex.size());
+        long searches = searchFlights.getCalls() + searchPageFlights.getCalls();
+        long coalesced = searchFlights.getShared() + searchPageFlights.getShared();
+        gauges.put("search_coalesced", coalesced);
+        gauges.put("search_coalescing_ratio", searches == 0 ? 0 : (double) coalesced / searches);
+        return gauges;
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    // Finish background work, then let the storage flush queued bookings and close
+    public void shutdown() {
+        departureSweep.shutdownNow();
+        accountCleanup.shutdown();
+        try {
+            accountCleanup.awaitTermination(10, TimeUnit.SECONDS);
+            if (rideSnapshotTasks != null) {
+                // A last snapshot, so the next start has nothing to catch up on from this node
+                rideSnapshotTasks.shutdown();
+                rideSnapshotTasks.awaitTermination(60, TimeUnit.SECONDS);
+                writeRideSnapshot();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        storage.close();
+        metrics.unregisterMBeans();
     }
 }
@@ -0,0 +1,99 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Rides ordered by departure time. A time window is one range of the skip list, so a
+// search for rides leaving between 08:00 and 09:30 reads only those rides, and the
+// rides that have left are the head of the list, which expire cuts off. Rides without
+// a departure time are not kept.
+public class RideDepartureIndex {
+
+    // Rides leaving at each instant, in ride_id order, and the departure of each ride
+    private final ConcurrentSkipListMap<LocalDateTime, Set<Integer>> byDeparture = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<Integer, LocalDateTime> departures = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    // Files the ride under its current departure time
+    public void add(Ride ride) {
+        int rideId = ride.getRide_id();
+        remove(rideId);
+        LocalDateTime departure = ride.getDepartureTime();
+        if (departure == null) {
+            return;
+        }
+        departures.put(rideId, departure);
+        // Add inside compute so a concurrent remove cannot drop the set under us
+        byDeparture.compute(departure, (k, rides) -> {
+            if (rides == null) {
+                rides = new ConcurrentSkipListSet<>();
+            }
+            rides.add(rideId);
+            return rides;
+        });
+    }
+
+    public void remove(int rideId) {
+        LocalDateTime departure = departures.remove(rideId);
+        if (departure != null) {
+            byDeparture.computeIfPresent(departure, (k, rides) -> {
+                rides.remove(rideId);
+                return rides.isEmpty() ? null : rides;
+            });
+        }
+    }
+
+    public void clear() {
+        ready = false;
+        departures.clear();
+        byDeparture.clear();
+    }
+
+    public void markReady() {
+        ready = true;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Rides with a departure time
+    public int size() {
+        return departures.size();
+    }
+
+    // Ids of the rides leaving between from and to inclusive, earliest first and in
+    // ride_id order at the same instant
+    public List<Integer> departing(LocalDateTime from, LocalDateTime to) {
+        List<Integer> rideIds = new ArrayList<>();
+        if (from.isAfter(to)) {
+            return rideIds;
+        }
+        for (Set<Integer> rides : byDeparture.subMap(from, true, to, true).values()) {
+            rideIds.addAll(rides);
+        }
+        return rideIds;
+    }
+
+    // Takes out every ride that left before now and returns their ids
+    public List<Integer> expire(LocalDateTime now) {
+        List<Integer> departed = new ArrayList<>();
+        Map.Entry<LocalDateTime, Set<Integer>> first;
+        while ((first = byDeparture.firstEntry()) != null && first.getKey().isBefore(now)) {
+            if (!byDeparture.remove(first.getKey(), first.getValue())) {
+                continue;
+            }
+            for (Integer rideId : first.getValue()) {
+                // A ride re-filed under another time meanwhile stays
+                if (departures.remove(rideId, first.getKey())) {
+                    departed.add(rideId);
+                }
+            }
+        }
+        return departed;
+    }
+}
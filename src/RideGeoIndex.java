@@ -0,0 +1,228 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Uniform grid over latitude and longitude for the nearby search. Each ride is filed
+// under the cell of its pickup and the cell of its drop-off. A query collects the
+// cells that cover the box around each point and walks the rides of the side with
+// fewer of them. A ride whose other end lies outside the other box is dropped by
+// comparing cell numbers; only the rest get exact distances. So a query touches a
+// few cells instead of every ride. Cells are as many degrees wide as they are tall,
+// which makes them narrower in meters away from the equator; the covering box widens
+// to match.
+public class RideGeoIndex {
+
+    // Beyond this many cells per point a query walks every located ride instead
+    private static final int MAX_QUERY_CELLS = 4096;
+
+    private final double cellDegrees;
+
+    // Pickup and drop-off per ride, and the rides filed under each cell with their
+    // positions, so a query reads them without another lookup
+    private final ConcurrentHashMap<Integer, Located> locations = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Map<Integer, Located>> sourceCells = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Map<Integer, Located>> destinationCells = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    private static final class Located {
+        final int rideId;
+        final GeoPoint source;
+        final GeoPoint destination;
+        final long sourceCell;
+        final long destinationCell;
+
+        Located(int rideId, GeoPoint source, GeoPoint destination, long sourceCell, long destinationCell) {
+            this.rideId = rideId;
+            this.source = source;
+            this.destination = destination;
+            this.sourceCell = sourceCell;
+            this.destinationCell = destinationCell;
+        }
+    }
+
+    // The cells, by row and column, that cover the box around a point
+    private static final class Box {
+        final long firstRow;
+        final long lastRow;
+        final long firstColumn;
+        final long lastColumn;
+
+        Box(long firstRow, long lastRow, long firstColumn, long lastColumn) {
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+            this.firstColumn = firstColumn;
+            this.lastColumn = lastColumn;
+        }
+
+        long cells() {
+            return (lastRow - firstRow + 1) * (lastColumn - firstColumn + 1);
+        }
+
+        boolean contains(long cell) {
+            long row = cell >> 32;
+            long column = (int) cell;
+            return row >= firstRow && row <= lastRow && column >= firstColumn && column <= lastColumn;
+        }
+    }
+
+    // Cells about cellMeters tall; the radius riders usually search with is a good size
+    public RideGeoIndex(double cellMeters) {
+        if (!(cellMeters > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellMeters);
+        }
+        this.cellDegrees = GeoPoint.latitudeSpan(cellMeters);
+    }
+
+    // Files the ride under its current positions. A ride without both is not kept.
+    public void add(Ride ride) {
+        int rideId = ride.getRide_id();
+        remove(rideId);
+        GeoPoint source = ride.getSourceLocation();
+        GeoPoint destination = ride.getDestinationLocation();
+        if (source == null || destination == null) {
+            return;
+        }
+        Located located = new Located(rideId, source, destination, cellOf(source), cellOf(destination));
+        locations.put(rideId, located);
+        file(sourceCells, located.sourceCell, located);
+        file(destinationCells, located.destinationCell, located);
+    }
+
+    public void remove(int rideId) {
+        Located previous = locations.remove(rideId);
+        if (previous != null) {
+            unfile(sourceCells, previous.sourceCell, rideId);
+            unfile(destinationCells, previous.destinationCell, rideId);
+        }
+    }
+
+    public void clear() {
+        ready = false;
+        locations.clear();
+        sourceCells.clear();
+        destinationCells.clear();
+    }
+
+    public void markReady() {
+        ready = true;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Rides with a pickup and a drop-off
+    public int size() {
+        return locations.size();
+    }
+
+    // Ids of the rides that pick up within the radius of from and drop off within the
+    // radius of to, the smallest sum of both distances first
+    public int[] nearby(GeoPoint from, GeoPoint to, double radiusMeters) {
+        Box fromBox = box(from, radiusMeters);
+        Box toBox = box(to, radiusMeters);
+        List<Map<Integer, Located>> fromCells = cover(sourceCells, fromBox);
+        List<Map<Integer, Located>> toCells = cover(destinationCells, toBox);
+
+        // A ride is filed under one cell per side, so the walk meets it at most once
+        List<Map<Integer, Located>> walk;
+        if (fromCells == null && toCells == null) {
+            walk = List.of(locations);
+        } else if (toCells == null || (fromCells != null && count(fromCells) <= count(toCells))) {
+            walk = fromCells;
+        } else {
+            walk = toCells;
+        }
+
+        List<double[]> matches = new ArrayList<>();
+        for (Map<Integer, Located> cell : walk) {
+            for (Located located : cell.values()) {
+                if (!fromBox.contains(located.sourceCell)
+                        || !toBox.contains(located.destinationCell)) {
+                    continue;
+                }
+                double pickup = located.source.distanceMeters(from);
+                double dropOff = located.destination.distanceMeters(to);
+                if (pickup <= radiusMeters && dropOff <= radiusMeters) {
+                    matches.add(new double[] { pickup + dropOff, located.rideId });
+                }
+            }
+        }
+        matches.sort(Comparator.comparingDouble((double[] match) -> match[0]).thenComparingDouble(match -> match[1]));
+
+        int[] rideIds = new int[matches.size()];
+        for (int i = 0; i < rideIds.length; i++) {
+            rideIds[i] = (int) matches.get(i)[1];
+        }
+        return rideIds;
+    }
+
+    private Box box(GeoPoint center, double radiusMeters) {
+        double latitudeSpan = GeoPoint.latitudeSpan(radiusMeters);
+        double longitudeSpan = center.longitudeSpan(radiusMeters);
+        return new Box(row(center.getLatitude() - latitudeSpan), row(center.getLatitude() + latitudeSpan),
+                column(center.getLongitude() - longitudeSpan), column(center.getLongitude() + longitudeSpan));
+    }
+
+    // The non-empty cells in the box, or null when it spans too many cells to be worth
+    // visiting one by one
+    private static List<Map<Integer, Located>> cover(ConcurrentHashMap<Long, Map<Integer, Located>> cells, Box box) {
+        if (box.cells() > MAX_QUERY_CELLS) {
+            return null;
+        }
+        List<Map<Integer, Located>> covered = new ArrayList<>();
+        for (long row = box.firstRow; row <= box.lastRow; row++) {
+            for (long column = box.firstColumn; column <= box.lastColumn; column++) {
+                Map<Integer, Located> cell = cells.get(key(row, column));
+                if (cell != null) {
+                    covered.add(cell);
+                }
+            }
+        }
+        return covered;
+    }
+
+    private static int count(List<Map<Integer, Located>> cells) {
+        int rides = 0;
+        for (Map<Integer, Located> cell : cells) {
+            rides += cell.size();
+        }
+        return rides;
+    }
+
+    private long cellOf(GeoPoint point) {
+        return key(row(point.getLatitude()), column(point.getLongitude()));
+    }
+
+    private long row(double latitude) {
+        return (long) Math.floor(Math.max(-90, Math.min(90, latitude)) / cellDegrees);
+    }
+
+    private long column(double longitude) {
+        return (long) Math.floor(Math.max(-180, Math.min(180, longitude)) / cellDegrees);
+    }
+
+    private static long key(long row, long column) {
+        return (row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    private static void file(ConcurrentHashMap<Long, Map<Integer, Located>> cells, long cell, Located located) {
+        // Add inside compute so a concurrent unfile cannot drop the map under us
+        cells.compute(cell, (k, rides) -> {
+            if (rides == null) {
+                rides = new ConcurrentHashMap<>();
+            }
+            rides.put(located.rideId, located);
+            return rides;
+        });
+    }
+
+    private static void unfile(ConcurrentHashMap<Long, Map<Integer, Located>> cells, long cell, int rideId) {
+        cells.computeIfPresent(cell, (k, rides) -> {
+            rides.remove(rideId);
+            return rides.isEmpty() ? null : rides;
+        });
+    }
+}
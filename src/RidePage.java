@@ -0,0 +1,35 @@
+import java.util.List;
+
+// One page of a keyset-paginated ride listing. Pass getNextCursor() back as the
+// afterRideId of the next request to continue where this page stopped.
+public class RidePage {
+    private final List<Ride> rides;
+    private final int nextCursor;
+    private final boolean hasMore;
+
+    public RidePage(List<Ride> rides, int nextCursor, boolean hasMore) {
+        this.rides = rides;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    public List<Ride> getRides() {
+        return rides;
+    }
+
+    public int getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    @Override
+    public String toString() {
+        return "RidePage{rides=" + rides.size() +
+                ", nextCursor=" + nextCursor +
+                ", hasMore=" + hasMore +
+                '}';
+    }
+}
@@ -0,0 +1,188 @@
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+// Scores rides for a rider's query and keeps the best K. Each part of the score lies
+// between 0 and 1 and is weighted:
+//
+//   fare       referenceFare / (referenceFare + fare), so a free ride scores 1 and one
+//              at the reference fare 0.5
+//   seats      the share of the ride's seats still free
+//   departure  departureScale / (departureScale + minutes away from the wanted time,
+//              or from now); 0 for a ride without a departure time
+//   match      how well source and destination match the terms: 1 for the whole
+//              name, 0.75 for its start, 0.5 for the start of a later word, 0.25
+//              anywhere else; averaged over the terms given
+//
+// Weights and scales come from -Drank.fareWeight (1), -Drank.seatsWeight (0.5),
+// -Drank.departureWeight (1), -Drank.matchWeight (2), -Drank.referenceFare (20) and
+// -Drank.departureScaleMinutes (60).
+public class RideRanker {
+
+    private final double fareWeight;
+    private final double seatsWeight;
+    private final double departureWeight;
+    private final double matchWeight;
+    private final double referenceFare;
+    private final double departureScaleMinutes;
+
+    public RideRanker(double fareWeight, double seatsWeight, double departureWeight, double matchWeight,
+            double referenceFare, double departureScaleMinutes) {
+        if (!(fareWeight >= 0) || !(seatsWeight >= 0) || !(departureWeight >= 0) || !(matchWeight >= 0)) {
+            throw new IllegalArgumentException("Ranking weights must not be negative");
+        }
+        if (!(referenceFare > 0) || !(departureScaleMinutes > 0)) {
+            throw new IllegalArgumentException("Reference fare and departure scale must be positive");
+        }
+        this.fareWeight = fareWeight;
+        this.seatsWeight = seatsWeight;
+        this.departureWeight = departureWeight;
+        this.matchWeight = matchWeight;
+        this.referenceFare = referenceFare;
+        this.departureScaleMinutes = departureScaleMinutes;
+    }
+
+    public static RideRanker fromSystemProperties() {
+        return new RideRanker(
+                doubleProperty("rank.fareWeight", 1),
+                doubleProperty("rank.seatsWeight", 0.5),
+                doubleProperty("rank.departureWeight", 1),
+                doubleProperty("rank.matchWeight", 2),
+                doubleProperty("rank.referenceFare", 20),
+                doubleProperty("rank.departureScaleMinutes", 60));
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return value != null && !value.isEmpty() ? Double.parseDouble(value) : defaultValue;
+    }
+
+    // A fresh top-K for one query. A null term or departure leaves that part out of the
+    // match or measures from now; rides with fewer than seats free are never kept.
+    public TopK topK(String source, String destination, LocalDateTime departure, int seats, int k) {
+        return new TopK(this, source, destination, departure, seats, k);
+    }
+
+    // A kept ride with the free seats it was scored with
+    public static final class Scored {
+        final Ride ride;
+        final int availableSeats;
+        final double score;
+
+        Scored(Ride ride, int availableSeats, double score) {
+            this.ride = ride;
+            this.availableSeats = availableSeats;
+            this.score = score;
+        }
+
+        public Ride getRide() {
+            return ride;
+        }
+
+        public int getAvailableSeats() {
+            return availableSeats;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    // The best K rides offered so far. The heap holds the worst kept ride at its head,
+    // so a ride that cannot make the cut costs one score and one comparison, and only
+    // rides that are kept get an entry.
+    public static final class TopK {
+        // Worst first: lower score, then the later ride
+        private static final Comparator<Scored> WORST_FIRST = Comparator.comparingDouble((Scored s) -> s.score)
+                .thenComparing(Comparator.comparingInt((Scored s) -> s.ride.getRide_id()).reversed());
+
+        private final RideRanker ranker;
+        private final String sourceTerm;
+        private final String destinationTerm;
+        private final LocalDateTime target;
+        private final int seats;
+        private final int k;
+        private final PriorityQueue<Scored> heap;
+
+        private TopK(RideRanker ranker, String source, String destination, LocalDateTime departure, int seats,
+                int k) {
+            this.ranker = ranker;
+            this.sourceTerm = RideSearchIndex.normalize(source);
+            this.destinationTerm = RideSearchIndex.normalize(destination);
+            this.target = departure != null ? departure : LocalDateTime.now();
+            this.seats = Math.max(1, seats);
+            this.k = Math.max(1, k);
+            this.heap = new PriorityQueue<>(this.k + 1, WORST_FIRST);
+        }
+
+        // The ride is only referenced, not copied; callers hand in rides nobody changes
+        public void offer(Ride ride, int availableSeats) {
+            if (availableSeats < seats) {
+                return;
+            }
+            double score = ranker.score(ride, availableSeats, sourceTerm, destinationTerm, target);
+            if (heap.size() == k) {
+                Scored worst = heap.peek();
+                if (score < worst.score || (score == worst.score && ride.getRide_id() > worst.ride.getRide_id())) {
+                    return;
+                }
+                heap.poll();
+            }
+            heap.add(new Scored(ride, availableSeats, score));
+        }
+
+        // The kept rides, best first
+        public List<Scored> best() {
+            List<Scored> best = new ArrayList<>(heap);
+            best.sort(WORST_FIRST.reversed());
+            return best;
+        }
+    }
+
+    double score(Ride ride, int availableSeats, String sourceTerm, String destinationTerm, LocalDateTime target) {
+        double score = fareWeight * referenceFare / (referenceFare + Math.max(0, ride.getFare()));
+        if (ride.getTotal_seats() > 0) {
+            score += seatsWeight * Math.min(1, (double) availableSeats / ride.getTotal_seats());
+        }
+        LocalDateTime departure = ride.getDepartureTime();
+        if (departure != null) {
+            double minutes = Math.abs(Duration.between(target, departure).toSeconds()) / 60.0;
+            score += departureWeight * departureScaleMinutes / (departureScaleMinutes + minutes);
+        }
+        int terms = (sourceTerm != null ? 1 : 0) + (destinationTerm != null ? 1 : 0);
+        if (terms > 0) {
+            double match = matchQuality(ride.getSource(), sourceTerm)
+                    + matchQuality(ride.getDestination(), destinationTerm);
+            score += matchWeight * match / terms;
+        }
+        return score;
+    }
+
+    // 0 when there is no term to match
+    private static double matchQuality(String text, String term) {
+        if (term == null || text == null) {
+            return 0;
+        }
+        String name = text.toLowerCase(Locale.ROOT).trim();
+        if (name.equals(term)) {
+            return 1;
+        }
+        if (name.startsWith(term)) {
+            return 0.75;
+        }
+        int at = name.indexOf(term);
+        if (at < 0) {
+            return 0;
+        }
+        for (; at >= 0; at = name.indexOf(term, at + 1)) {
+            if (!Character.isLetterOrDigit(name.charAt(at - 1))) {
+                return 0.5;
+            }
+        }
+        return 0.25;
+    }
+}
@@ -0,0 +1,47 @@
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+// The rides table
+public interface RideRepository {
+
+    // Inserts the ride with all of its seats available and sets its generated id
+    void insert(Ride ride) throws SQLException;
+
+    Ride findById(int rideId) throws SQLException;
+
+    List<Ride> findByCreator(int userId) throws SQLException;
+
+    // Rides with free seats that have not departed, whose source and destination contain
+    // the given text, ignoring case; a null or empty filter matches every ride. Rides
+    // without a departure time never count as departed. Rides come in ride_id order,
+    // starting after afterRideId, at most limit of them (no limit when limit <= 0).
+    void search(String source, String destination, int afterRideId, int limit, Consumer<Ride> consumer)
+            throws SQLException;
+
+    // Rides with free seats matching the text filters as search does, whose departure
+    // time lies between from and to inclusive, earliest first (ride_id breaks ties).
+    // Rides without a departure time never match.
+    void searchDeparting(String source, String destination, LocalDateTime from, LocalDateTime to,
+            Consumer<Ride> consumer) throws SQLException;
+
+    // Rides with free seats that have not departed, whose pickup lies within the radius
+    // of from and whose drop-off lies within the radius of to, in no particular order.
+    // Rides without positions never match.
+    void searchNearby(GeoPoint from, GeoPoint to, double radiusMeters, Consumer<Ride> consumer)
+            throws SQLException;
+
+    // Every ride in ride_id order. createdBy carries the creator's id and name when the
+    // creator still exists.
+    void streamAll(Consumer<Ride> consumer) throws SQLException;
+
+    // A null or empty source or destination, or a seat count or fare <= 0, keeps the
+    // stored value. A new seat count keeps the booked seats booked. Returns the seats the
+    // change added to available_seats, negative when it took some away, and 0 when the
+    // ride is gone.
+    int update(int rideId, String source, String destination, int totalSeats, double fare) throws SQLException;
+
+    // Deletes the ride and every booking on it; false when there is no such ride
+    boolean delete(int rideId) throws SQLException;
+}
@@ -0,0 +1,446 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// In-memory trigram index over ride source and destination. A substring query is
+// answered by intersecting the posting sets of its trigrams and then confirming the
+// match, so a search no longer scans the rides table with a leading-wildcard LIKE.
+//
+// After a restart the index can start from a RideSnapshot, which is queried in place.
+// The maps below then hold only the rides changed since; every snapshot ride they
+// replace or remove is shadowed, so each ride is answered from exactly one layer.
+//
+// Both layers keep ride ids in ascending order, so a page walks from its cursor and
+// stops once it is full: a deep page costs about as much as the first.
+public class RideSearchIndex {
+
+    private final ConcurrentSkipListMap<Integer, Ride> rides = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<Long, NavigableSet<Integer>> sourceGrams = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, NavigableSet<Integer>> destinationGrams = new ConcurrentHashMap<>();
+
+    private volatile RideSnapshot snapshot;
+    private final Set<Integer> shadowed = ConcurrentHashMap.newKeySet();
+
+    // Live seat counts; the index reads these instead of keeping its own copy
+    private final SeatInventory seatInventory;
+    private volatile boolean ready;
+
+    public RideSearchIndex(SeatInventory seatInventory) {
+        this.seatInventory = seatInventory;
+    }
+
+    public void add(Ride ride) {
+        Ride indexed = copyOf(ride);
+        shadow(indexed.getRide_id());
+        Ride previous = rides.put(indexed.getRide_id(), indexed);
+        if (previous != null) {
+            unindex(previous);
+        }
+        index(sourceGrams, indexed.getSource(), indexed.getRide_id());
+        index(destinationGrams, indexed.getDestination(), indexed.getRide_id());
+    }
+
+    public void remove(int rideId) {
+        shadow(rideId);
+        Ride previous = rides.remove(rideId);
+        if (previous != null) {
+            unindex(previous);
+        }
+    }
+
+    // Used when a ride's columns change without a full reload
+    public void update(Ride ride) {
+        add(ride);
+    }
+
+    public void clear() {
+        ready = false;
+        snapshot = null;
+        shadowed.clear();
+        rides.clear();
+        sourceGrams.clear();
+        destinationGrams.clear();
+    }
+
+    // Starts over from the snapshot; the index is ready at once
+    public void load(RideSnapshot snapshot) {
+        clear();
+        this.snapshot = snapshot;
+        ready = true;
+    }
+
+    public RideSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // Whether the ride was added, updated or removed here since the snapshot was loaded
+    public boolean isChangedSinceSnapshot(int rideId) {
+        return rides.containsKey(rideId) || shadowed.contains(rideId);
+    }
+
+    // Hides the snapshot's copy of the ride. Done before the maps change, so a search
+    // may briefly miss the ride but never sees it twice.
+    private void shadow(int rideId) {
+        RideSnapshot base = snapshot;
+        if (base != null && base.indexOf(rideId) >= 0) {
+            shadowed.add(rideId);
+        }
+    }
+
+    public void markReady() {
+        ready = true;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        RideSnapshot base = snapshot;
+        return rides.size() + (base != null ? base.size() - shadowed.size() : 0);
+    }
+
+    // Copies of every indexed ride with live seat counts, in ride_id order, as a new
+    // snapshot is written from
+    public List<Ride> rides() {
+        List<Ride> result = new ArrayList<>(size());
+        for (Ride ride : rides.values()) {
+            result.add(withLiveSeats(ride));
+        }
+        RideSnapshot base = snapshot;
+        if (base != null) {
+            for (int i = 0; i < base.size(); i++) {
+                if (!shadowed.contains(base.rideIdAt(i))) {
+                    result.add(withLiveSeats(base.ride(i)));
+                }
+            }
+        }
+        result.sort(Comparator.comparingInt(Ride::getRide_id));
+        return result;
+    }
+
+    // A copy of one indexed ride with its live seat count, or null if it is not indexed
+    public Ride get(int rideId) {
+        Ride ride = rides.get(rideId);
+        if (ride == null) {
+            RideSnapshot base = snapshot;
+            int index = base != null && !shadowed.contains(rideId) ? base.indexOf(rideId) : -1;
+            return index >= 0 ? withLiveSeats(base.ride(index)) : null;
+        }
+        return withLiveSeats(ride);
+    }
+
+    private Ride withLiveSeats(Ride ride) {
+        Ride result = copyOf(ride);
+        result.setAvailable_seats(availableSeats(ride));
+        return result;
+    }
+
+    // Rides with free seats that have not departed, whose source and destination
+    // contain the given text, ignoring case. A null or empty term matches everything.
+    public List<Ride> search(String source, String destination) {
+        return searchAfter(source, destination, 0, Integer.MAX_VALUE);
+    }
+
+    // One page of matches ordered by ride_id, starting after the given ride_id
+    public RidePage searchPage(String source, String destination, int afterRideId, int pageSize) {
+        // Ask for one extra row to learn whether another page follows
+        List<Ride> rides = searchAfter(source, destination, afterRideId, pageSize + 1);
+        boolean hasMore = rides.size() > pageSize;
+        if (hasMore) {
+            rides = new ArrayList<>(rides.subList(0, pageSize));
+        }
+        int nextCursor = rides.isEmpty() ? afterRideId : rides.get(rides.size() - 1).getRide_id();
+        return new RidePage(rides, nextCursor, hasMore);
+    }
+
+    // The rides among rideIds, in their order, that search would return for the terms
+    public List<Ride> searchAmong(List<Integer> rideIds, String source, String destination) {
+        Matches matches = new Matches(normalize(source), normalize(destination), 0, Integer.MAX_VALUE);
+        RideSnapshot base = snapshot;
+        for (int rideId : rideIds) {
+            Ride ride = rides.get(rideId);
+            if (ride == null && base != null && !shadowed.contains(rideId)) {
+                int index = base.indexOf(rideId);
+                ride = index >= 0 ? base.ride(index) : null;
+            }
+            if (ride != null) {
+                matches.offer(ride);
+            }
+        }
+        return matches.results;
+    }
+
+    // The matches that search would return, ranked into top; the k best come back best
+    // first. Rides are scored where they are stored and only the winners are copied.
+    public List<Ride> searchTop(String source, String destination, RideRanker.TopK top) {
+        Matches matches = new Matches(normalize(source), normalize(destination), 0, Integer.MAX_VALUE);
+        matches.ranked = top;
+        walk(matches);
+
+        List<Ride> best = new ArrayList<>();
+        for (RideRanker.Scored scored : top.best()) {
+            Ride ride = copyOf(scored.getRide());
+            ride.setAvailable_seats(scored.getAvailableSeats());
+            best.add(ride);
+        }
+        return best;
+    }
+
+    // The lowest-numbered matches above afterRideId, at most limit of them. A bounded
+    // max-heap keeps only the rows that can still make the cut.
+    private List<Ride> searchAfter(String source, String destination, int afterRideId, int limit) {
+        Matches matches = new Matches(normalize(source), normalize(destination), afterRideId, limit);
+        walk(matches);
+        return matches.results();
+    }
+
+    // Offers every candidate of both layers to the matches
+    private void walk(Matches matches) {
+        List<NavigableSet<Integer>> sourcePostings = postings(sourceGrams, matches.sourceTerm);
+        List<NavigableSet<Integer>> destinationPostings = postings(destinationGrams, matches.destinationTerm);
+
+        // Walk the smallest posting set of the more selective term and check the
+        // term's other trigrams directly; offer checks the other term
+        List<NavigableSet<Integer>> postings;
+        if (sourcePostings == null && destinationPostings == null) {
+            postings = List.of(rides.navigableKeySet());
+        } else if (sourcePostings == null) {
+            postings = destinationPostings;
+        } else if (destinationPostings == null || sourcePostings.isEmpty()
+                || (!destinationPostings.isEmpty()
+                        && sourcePostings.get(0).size() <= destinationPostings.get(0).size())) {
+            postings = sourcePostings;
+        } else {
+            postings = destinationPostings;
+        }
+
+        if (!postings.isEmpty()) {
+            // Ascending ids, so the walk ends at the first one that cannot make the cut
+            for (Integer id : postings.get(0).tailSet(matches.afterRideId, false)) {
+                if (matches.isFull(id)) {
+                    break;
+                }
+                if (!inAll(postings, id)) {
+                    continue;
+                }
+                Ride ride = rides.get(id);
+                if (ride != null) {
+                    matches.offer(ride);
+                }
+            }
+        }
+
+        RideSnapshot base = snapshot;
+        if (base != null) {
+            searchSnapshot(base, matches);
+        }
+    }
+
+    private static boolean inAll(List<NavigableSet<Integer>> postings, Integer id) {
+        for (int i = 1; i < postings.size(); i++) {
+            if (!postings.get(i).contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The same walk over the snapshot, whose candidate ids come back in ascending
+    // order, so it can stop at the first id that cannot make the cut. Only the more
+    // selective term is intersected; offer checks the other one.
+    private void searchSnapshot(RideSnapshot base, Matches matches) {
+        boolean bySource = base.candidateBound(true, matches.sourceTerm)
+                <= base.candidateBound(false, matches.destinationTerm);
+        int[] ids = bySource
+                ? base.candidates(true, matches.sourceTerm)
+                : base.candidates(false, matches.destinationTerm);
+
+        if (ids == null) {
+            for (int i = base.indexAfter(matches.afterRideId); i < base.size(); i++) {
+                int id = base.rideIdAt(i);
+                if (matches.isFull(id)) {
+                    return;
+                }
+                if (!shadowed.contains(id)) {
+                    matches.offer(base.ride(i));
+                }
+            }
+            return;
+        }
+        for (int id : ids) {
+            if (id <= matches.afterRideId || shadowed.contains(id)) {
+                continue;
+            }
+            if (matches.isFull(id)) {
+                return;
+            }
+            int index = base.indexOf(id);
+            if (index >= 0) {
+                matches.offer(base.ride(index));
+            }
+        }
+    }
+
+    // The rides a search has kept so far
+    private final class Matches {
+        final String sourceTerm;
+        final String destinationTerm;
+        final int afterRideId;
+        final int limit;
+        final boolean bounded;
+        final LocalDateTime now = LocalDateTime.now();
+        final PriorityQueue<Ride> heap = new PriorityQueue<>(Comparator.comparingInt(Ride::getRide_id).reversed());
+        final List<Ride> results = new ArrayList<>();
+        // When set, matches go here uncopied instead
+        RideRanker.TopK ranked;
+
+        Matches(String sourceTerm, String destinationTerm, int afterRideId, int limit) {
+            this.sourceTerm = sourceTerm;
+            this.destinationTerm = destinationTerm;
+            this.afterRideId = afterRideId;
+            this.limit = limit;
+            this.bounded = limit != Integer.MAX_VALUE;
+        }
+
+        // Whether the heap holds limit rides that all come before this id
+        boolean isFull(int rideId) {
+            return bounded && heap.size() >= limit && rideId > heap.peek().getRide_id();
+        }
+
+        void offer(Ride ride) {
+            if (!contains(ride.getSource(), sourceTerm) || !contains(ride.getDestination(), destinationTerm)) {
+                return;
+            }
+            // Departed rides leave the index on the next sweep; until then they are skipped
+            LocalDateTime departure = ride.getDepartureTime();
+            if (departure != null && departure.isBefore(now)) {
+                return;
+            }
+            int available = availableSeats(ride);
+            if (available <= 0) {
+                return;
+            }
+            if (ranked != null) {
+                ranked.offer(ride, available);
+                return;
+            }
+            Ride result = copyOf(ride);
+            result.setAvailable_seats(available);
+            if (bounded) {
+                heap.add(result);
+                if (heap.size() > limit) {
+                    heap.poll();
+                }
+            } else {
+                results.add(result);
+            }
+        }
+
+        List<Ride> results() {
+            if (bounded) {
+                results.addAll(heap);
+            }
+            results.sort(Comparator.comparingInt(Ride::getRide_id));
+            return results;
+        }
+    }
+
+    // The posting sets of the term's trigrams, smallest first: a ride contains the term
+    // only if it is in all of them. Empty when some trigram has no rides, and null when
+    // the term is too short to have trigrams and has to be checked row by row.
+    private static List<NavigableSet<Integer>> postings(ConcurrentHashMap<Long, NavigableSet<Integer>> grams,
+            String term) {
+        if (term == null || term.length() < 3) {
+            return null;
+        }
+
+        List<NavigableSet<Integer>> postings = new ArrayList<>();
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            NavigableSet<Integer> posting = grams.get(trigram(term, i));
+            if (posting == null) {
+                return List.of();
+            }
+            postings.add(posting);
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+        return postings;
+    }
+
+    private int availableSeats(Ride ride) {
+        int tracked = seatInventory.getAvailable(ride.getRide_id());
+        return tracked >= 0 ? tracked : ride.getAvailable_seats();
+    }
+
+    private void unindex(Ride ride) {
+        unindex(sourceGrams, ride.getSource(), ride.getRide_id());
+        unindex(destinationGrams, ride.getDestination(), ride.getRide_id());
+    }
+
+    private static void index(ConcurrentHashMap<Long, NavigableSet<Integer>> grams, String text, int rideId) {
+        String term = normalize(text);
+        if (term == null) {
+            return;
+        }
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            // Add inside compute so a concurrent unindex cannot drop the posting set under us
+            grams.compute(trigram(term, i), (k, posting) -> {
+                if (posting == null) {
+                    posting = new ConcurrentSkipListSet<>();
+                }
+                posting.add(rideId);
+                return posting;
+            });
+        }
+    }
+
+    private static void unindex(ConcurrentHashMap<Long, NavigableSet<Integer>> grams, String text, int rideId) {
+        String term = normalize(text);
+        if (term == null) {
+            return;
+        }
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            grams.computeIfPresent(trigram(term, i), (k, posting) -> {
+                posting.remove(rideId);
+                return posting.isEmpty() ? null : posting;
+            });
+        }
+    }
+
+    // Three UTF-16 chars packed into one long
+    static long trigram(String term, int offset) {
+        return ((long) term.charAt(offset) << 32)
+                | ((long) term.charAt(offset + 1) << 16)
+                | term.charAt(offset + 2);
+    }
+
+    private static boolean contains(String text, String term) {
+        return term == null || (text != null && text.toLowerCase(Locale.ROOT).contains(term));
+    }
+
+    static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    static Ride copyOf(Ride ride) {
+        Ride copy = new Ride(ride.getRide_id(), ride.getSource(), ride.getDestination(), ride.getTotal_seats(),
+                ride.getAvailable_seats(), ride.getFare(), ride.getCreatedById(), ride.getCarBrand(),
+                ride.getCarModel(), ride.getCarNumberPlate(), ride.getTimestamp());
+        copy.setSourceLocation(ride.getSourceLocation());
+        copy.setDestinationLocation(ride.getDestinationLocation());
+        copy.setDepartureTime(ride.getDepartureTime());
+        copy.setCreatedBy(ride.getCreatedBy());
+        return copy;
+    }
+}
@@ -0,0 +1,512 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.zip.CRC32C;
+
+// A read-only image of the ride search index, written periodically and mapped at
+// startup. Every section is a flat array read in place with absolute gets, so a mapped
+// snapshot answers lookups and trigram queries without building objects first; only
+// the rides a query returns are decoded.
+//
+//   header     magic, version, write time, counts, section offsets, CRC32C of the rest
+//   records    per ride: ids, seats, fare, positions, timestamp, departure time and
+//              five length-prefixed strings
+//   ride ids   int[rides], ascending
+//   offsets    int[rides], where each ride's record starts within the records
+//   grams      per column (source, destination): long[grams] ascending trigrams,
+//              int[grams + 1] posting starts, int[] postings of ascending ride ids
+public final class RideSnapshot {
+
+    private static final int MAGIC = 0x52534E50; // "RSNP"
+    private static final short VERSION = 3;
+    private static final int HEADER_BYTES = 96;
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final long writtenAt;
+    private final int size;
+    private final int idsOffset;
+    private final int offsetsOffset;
+    private final int recordsOffset;
+    private final Column sourceGrams;
+    private final Column destinationGrams;
+
+    // Where one column's trigram table lives in the file
+    private static final class Column {
+        final int count;
+        final int keysOffset;
+        final int startsOffset;
+        final int postingsOffset;
+
+        Column(ByteBuffer header, int at) {
+            count = header.getInt(at);
+            keysOffset = header.getInt(at + 4);
+            startsOffset = header.getInt(at + 8);
+            postingsOffset = header.getInt(at + 12);
+        }
+    }
+
+    private RideSnapshot(Path file, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION) {
+            throw new IOException(file + " is not a ride snapshot of version " + VERSION);
+        }
+        if (buffer.getLong(8) != buffer.capacity()) {
+            throw new IOException(file + " is truncated");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(HEADER_BYTES, buffer.capacity() - HEADER_BYTES));
+        if ((int) crc.getValue() != buffer.getInt(16)) {
+            throw new IOException(file + " is damaged: checksum mismatch");
+        }
+        writtenAt = buffer.getLong(24);
+        size = buffer.getInt(32);
+        recordsOffset = buffer.getInt(36);
+        idsOffset = buffer.getInt(40);
+        offsetsOffset = buffer.getInt(44);
+        sourceGrams = new Column(buffer, 48);
+        destinationGrams = new Column(buffer, 64);
+    }
+
+    // Maps the snapshot and checks it end to end; the mapping outlives the file handle
+    public static RideSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_BYTES || length > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not a ride snapshot");
+            }
+            return new RideSnapshot(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    // Epoch milliseconds
+    public long getWrittenAt() {
+        return writtenAt;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int rideIdAt(int index) {
+        return buffer.getInt(idsOffset + 4 * index);
+    }
+
+    // Position of the ride in id order, or -1 when the snapshot does not hold it
+    public int indexOf(int rideId) {
+        int index = indexAfter(rideId - 1);
+        return index < size && rideIdAt(index) == rideId ? index : -1;
+    }
+
+    // Position of the first ride with a larger id, or size() when there is none
+    public int indexAfter(int rideId) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (rideIdAt(middle) <= rideId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Decodes one ride, with the seat count it had when the snapshot was written
+    public Ride ride(int index) {
+        int[] at = { recordsOffset + buffer.getInt(offsetsOffset + 4 * index) };
+        int rideId = getInt(at);
+        int createdBy = getInt(at);
+        int totalSeats = getInt(at);
+        int availableSeats = getInt(at);
+        double fare = getDouble(at);
+        GeoPoint sourceLocation = getLocation(at);
+        GeoPoint destinationLocation = getLocation(at);
+        LocalDateTime timestamp = getTime(at);
+        LocalDateTime departureTime = getTime(at);
+        Ride ride = new Ride(rideId, getString(at), getString(at), totalSeats, availableSeats, fare, createdBy,
+                getString(at), getString(at), getString(at), timestamp);
+        ride.setSourceLocation(sourceLocation);
+        ride.setDestinationLocation(destinationLocation);
+        ride.setDepartureTime(departureTime);
+        return ride;
+    }
+
+    // Whether the ride still has the columns the snapshot holds for it; seat counts
+    // are not compared, they are tracked separately
+    public boolean sameColumns(int index, Ride ride) {
+        Ride stored = ride(index);
+        return stored.getTotal_seats() == ride.getTotal_seats()
+                && stored.getFare() == ride.getFare()
+                && stored.getCreatedById() == ride.getCreatedById()
+                && Objects.equals(stored.getSource(), ride.getSource())
+                && Objects.equals(stored.getDestination(), ride.getDestination())
+                && Objects.equals(stored.getCarBrand(), ride.getCarBrand())
+                && Objects.equals(stored.getCarModel(), ride.getCarModel())
+                && Objects.equals(stored.getCarNumberPlate(), ride.getCarNumberPlate())
+                && Objects.equals(stored.getTimestamp(), ride.getTimestamp())
+                && Objects.equals(stored.getSourceLocation(), ride.getSourceLocation())
+                && Objects.equals(stored.getDestinationLocation(), ride.getDestinationLocation())
+                && Objects.equals(stored.getDepartureTime(), ride.getDepartureTime());
+    }
+
+    // The most candidates a term can yield: the length of its shortest posting run, or
+    // Integer.MAX_VALUE when the term is too short to have trigrams
+    public int candidateBound(boolean source, String term) {
+        if (term == null || term.length() < 3) {
+            return Integer.MAX_VALUE;
+        }
+        Column column = source ? sourceGrams : destinationGrams;
+        int bound = Integer.MAX_VALUE;
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            int key = findGram(column, RideSearchIndex.trigram(term, i));
+            if (key < 0) {
+                return 0;
+            }
+            bound = Math.min(bound, buffer.getInt(column.startsOffset + 4 * (key + 1))
+                    - buffer.getInt(column.startsOffset + 4 * key));
+        }
+        return bound;
+    }
+
+    // Ascending ids of the rides whose source (or destination) holds every trigram of
+    // the normalized term, or null when the term is too short to have trigrams
+    public int[] candidates(boolean source, String term) {
+        if (term == null || term.length() < 3) {
+            return null;
+        }
+        Column column = source ? sourceGrams : destinationGrams;
+
+        int grams = term.length() - 2;
+        int[] from = new int[grams];
+        int[] to = new int[grams];
+        int smallest = 0;
+        for (int i = 0; i < grams; i++) {
+            int key = findGram(column, RideSearchIndex.trigram(term, i));
+            if (key < 0) {
+                return new int[0];
+            }
+            from[i] = buffer.getInt(column.startsOffset + 4 * key);
+            to[i] = buffer.getInt(column.startsOffset + 4 * (key + 1));
+            if (to[i] - from[i] < to[smallest] - from[smallest]) {
+                smallest = i;
+            }
+        }
+
+        // Walk the shortest posting run and look each id up in the others
+        int[] result = new int[to[smallest] - from[smallest]];
+        int found = 0;
+        for (int p = from[smallest]; p < to[smallest]; p++) {
+            int rideId = buffer.getInt(column.postingsOffset + 4 * p);
+            boolean inAll = true;
+            for (int i = 0; i < grams && inAll; i++) {
+                inAll = i == smallest || postingContains(column, from[i], to[i], rideId);
+            }
+            if (inAll) {
+                result[found++] = rideId;
+            }
+        }
+        return found == result.length ? result : Arrays.copyOf(result, found);
+    }
+
+    private int findGram(Column column, long gram) {
+        int low = 0;
+        int high = column.count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long key = buffer.getLong(column.keysOffset + 8 * middle);
+            if (key < gram) {
+                low = middle + 1;
+            } else if (key > gram) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private boolean postingContains(Column column, int from, int to, int rideId) {
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = buffer.getInt(column.postingsOffset + 4 * middle);
+            if (id < rideId) {
+                low = middle + 1;
+            } else if (id > rideId) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int getInt(int[] at) {
+        int value = buffer.getInt(at[0]);
+        at[0] += 4;
+        return value;
+    }
+
+    private double getDouble(int[] at) {
+        double value = buffer.getDouble(at[0]);
+        at[0] += 8;
+        return value;
+    }
+
+    // NaN latitude for null
+    private GeoPoint getLocation(int[] at) {
+        double latitude = getDouble(at);
+        double longitude = getDouble(at);
+        return Double.isNaN(latitude) ? null : new GeoPoint(latitude, longitude);
+    }
+
+    private String getString(int[] at) {
+        int length = getInt(at);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(at[0], bytes);
+        at[0] += length;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private LocalDateTime getTime(int[] at) {
+        long seconds = buffer.getLong(at[0]);
+        at[0] += 8;
+        if (seconds == Long.MIN_VALUE) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(seconds, getInt(at), ZoneOffset.UTC);
+    }
+
+    // ==================== WRITING ====================
+
+    // Writes the rides, which must be in ascending ride_id order, through a temporary
+    // file that replaces the snapshot in one move, so a reader never sees half of one
+    public static void write(Path file, List<Ride> rides) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Output out = new Output(channel);
+
+            int[] recordOffsets = new int[rides.size()];
+            int recordsOffset = out.offset();
+            for (int i = 0; i < rides.size(); i++) {
+                recordOffsets[i] = out.offset() - recordsOffset;
+                writeRecord(out, rides.get(i));
+            }
+
+            out.align();
+            int idsOffset = out.offset();
+            for (Ride ride : rides) {
+                out.putInt(ride.getRide_id());
+            }
+            int offsetsOffset = out.offset();
+            for (int offset : recordOffsets) {
+                out.putInt(offset);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            writeGrams(out, header, 48, rides, Ride::getSource);
+            writeGrams(out, header, 64, rides, Ride::getDestination);
+            out.flush();
+
+            header.putInt(0, MAGIC);
+            header.putShort(4, VERSION);
+            header.putLong(8, out.offset());
+            header.putInt(16, (int) out.crc.getValue());
+            header.putLong(24, System.currentTimeMillis());
+            header.putInt(32, rides.size());
+            header.putInt(36, recordsOffset);
+            header.putInt(40, idsOffset);
+            header.putInt(44, offsetsOffset);
+            channel.write(header, 0);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeRecord(Output out, Ride ride) throws IOException {
+        out.putInt(ride.getRide_id());
+        out.putInt(ride.getCreatedById());
+        out.putInt(ride.getTotal_seats());
+        out.putInt(ride.getAvailable_seats());
+        out.putDouble(ride.getFare());
+        out.putLocation(ride.getSourceLocation());
+        out.putLocation(ride.getDestinationLocation());
+        out.putTime(ride.getTimestamp());
+        out.putTime(ride.getDepartureTime());
+        out.putString(ride.getSource());
+        out.putString(ride.getDestination());
+        out.putString(ride.getCarBrand());
+        out.putString(ride.getCarModel());
+        out.putString(ride.getCarNumberPlate());
+    }
+
+    // Builds one column's posting runs and writes its trigram table, noting where it
+    // went in the header
+    private static void writeGrams(Output out, ByteBuffer header, int at, List<Ride> rides,
+            Function<Ride, String> column) throws IOException {
+        Map<Long, Posting> postings = new HashMap<>();
+        for (Ride ride : rides) {
+            String term = RideSearchIndex.normalize(column.apply(ride));
+            if (term == null) {
+                continue;
+            }
+            for (int i = 0; i + 3 <= term.length(); i++) {
+                postings.computeIfAbsent(RideSearchIndex.trigram(term, i), k -> new Posting()).add(ride.getRide_id());
+            }
+        }
+        long[] keys = postings.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+
+        header.putInt(at, keys.length);
+        header.putInt(at + 4, out.offset());
+        for (long key : keys) {
+            out.putLong(key);
+        }
+        header.putInt(at + 8, out.offset());
+        int start = 0;
+        out.putInt(start);
+        for (long key : keys) {
+            start += postings.get(key).size;
+            out.putInt(start);
+        }
+        header.putInt(at + 12, out.offset());
+        for (long key : keys) {
+            Posting posting = postings.get(key);
+            for (int i = 0; i < posting.size; i++) {
+                out.putInt(posting.ids[i]);
+            }
+        }
+        out.align();
+    }
+
+    // Ride ids for one trigram, appended in ascending order
+    private static final class Posting {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int rideId) {
+            // A trigram can repeat within one text
+            if (size > 0 && ids[size - 1] == rideId) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = rideId;
+        }
+    }
+
+    // Buffered sequential writer after the header, keeping the checksum as it goes
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        private final CRC32C crc = new CRC32C();
+        private long written = HEADER_BYTES;
+
+        Output(FileChannel channel) throws IOException {
+            this.channel = channel;
+            channel.position(HEADER_BYTES);
+        }
+
+        int offset() throws IOException {
+            long offset = written + buffer.position();
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("Ride snapshot would exceed 2 GB");
+            }
+            return (int) offset;
+        }
+
+        void putInt(int value) throws IOException {
+            room(4).putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            room(8).putLong(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            room(8).putDouble(value);
+        }
+
+        void putLocation(GeoPoint location) throws IOException {
+            putDouble(location != null ? location.getLatitude() : Double.NaN);
+            putDouble(location != null ? location.getLongitude() : Double.NaN);
+        }
+
+        // Seconds and nanoseconds of the local time read as UTC; Long.MIN_VALUE for null
+        void putTime(LocalDateTime time) throws IOException {
+            if (time == null) {
+                putLong(Long.MIN_VALUE);
+            } else {
+                putLong(time.toEpochSecond(ZoneOffset.UTC));
+                putInt(time.getNano());
+            }
+        }
+
+        // Length-prefixed UTF-8; -1 for null
+        void putString(String value) throws IOException {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            for (int i = 0; i < bytes.length;) {
+                int chunk = Math.min(bytes.length - i, room(1).remaining());
+                buffer.put(bytes, i, chunk);
+                i += chunk;
+            }
+        }
+
+        // Pads to the next multiple of 8, so the long arrays start aligned
+        void align() throws IOException {
+            while ((offset() & 7) != 0) {
+                room(1).put((byte) 0);
+            }
+        }
+
+        private ByteBuffer room(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            return buffer;
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
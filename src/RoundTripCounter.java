@@ -0,0 +1,39 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts requests sent to the database: statement executions, commits and rollbacks.
+// Kept per thread as well as in total, so an operation can read how many round trips
+// it caused by comparing the thread's count before and after. Cursor fetches of
+// further rows are not counted.
+//
+// Work done for a thread elsewhere, like a booking written by the group-commit
+// writer, is credited to that thread's count, so it lands on the operation that
+// asked for it.
+public class RoundTripCounter {
+
+    private static final LongAdder total = new LongAdder();
+    private static final ThreadLocal<AtomicLong> perThread = ThreadLocal.withInitial(AtomicLong::new);
+
+    private RoundTripCounter() {
+    }
+
+    static void increment() {
+        total.increment();
+        perThread.get().incrementAndGet();
+    }
+
+    // Round trips made so far by the calling thread
+    public static long currentThread() {
+        return perThread.get().get();
+    }
+
+    // The calling thread's count, for another thread to credit; a credit is already
+    // part of the total, so only this count grows
+    static AtomicLong currentCounter() {
+        return perThread.get();
+    }
+
+    public static long total() {
+        return total.sum();
+    }
+}
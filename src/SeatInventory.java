@@ -0,0 +1,96 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// In-process seat counters keyed by ride_id. Admission is decided here with a CAS on
+// the ride's counter; the rides table stays the source of truth and is written
+// through by RideBookingSystem after a successful reservation.
+public class SeatInventory {
+
+    private final ConcurrentHashMap<Integer, AtomicInteger> seats = new ConcurrentHashMap<>();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder untracked = new LongAdder();
+
+    public void clear() {
+        seats.clear();
+    }
+
+    // Take seats if the ride has enough. Rides this node does not track are always
+    // admitted and left for the database guard to decide.
+    public boolean tryReserve(int rideId, int count) {
+        AtomicInteger counter = seats.get(rideId);
+        if (counter == null) {
+            untracked.increment();
+            return true;
+        }
+        while (true) {
+            int current = counter.get();
+            if (current < count) {
+                rejected.increment();
+                return false;
+            }
+            if (counter.compareAndSet(current, current - count)) {
+                admitted.increment();
+                return true;
+            }
+        }
+    }
+
+    // Give seats back, after a cancellation or a failed write-through
+    public void release(int rideId, int count) {
+        AtomicInteger counter = seats.get(rideId);
+        if (counter != null) {
+            counter.addAndGet(count);
+        }
+    }
+
+    public void track(int rideId, int available) {
+        seats.put(rideId, new AtomicInteger(available));
+    }
+
+    // Leaves a counter this node already keeps alone
+    public void trackIfAbsent(int rideId, int available) {
+        seats.putIfAbsent(rideId, new AtomicInteger(available));
+    }
+
+    public void remove(int rideId) {
+        seats.remove(rideId);
+    }
+
+    public boolean isTracked(int rideId) {
+        return seats.containsKey(rideId);
+    }
+
+    // Returns -1 for rides this node does not track
+    public int getAvailable(int rideId) {
+        AtomicInteger counter = seats.get(rideId);
+        return counter == null ? -1 : counter.get();
+    }
+
+    public int size() {
+        return seats.size();
+    }
+
+    public long getAdmittedCount() {
+        return admitted.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getUntrackedCount() {
+        return untracked.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "SeatInventory{rides=" + size() +
+                ", admitted=" + getAdmittedCount() +
+                ", rejected=" + getRejectedCount() +
+                ", untracked=" + getUntrackedCount() +
+                '}';
+    }
+}
@@ -0,0 +1,166 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+// Seat occupancy for one ride: a bitset of taken seats plus, per passenger, the set
+// of seats they hold. Seats are numbered from 1. Assigning or releasing a seat is a
+// single bit operation, whatever the size of the vehicle.
+//
+// Seats booked by passengers this map has not seen, such as bookings made before the
+// ride was loaded or through another copy of it, are held unattributed, so the map
+// always accounts for every booked seat. Ride objects are shared between request
+// threads, so every method holds the map's lock.
+public class SeatMap {
+
+    private static class Holding {
+        final User user;
+        final BitSet seats = new BitSet();
+        int count;
+
+        Holding(User user) {
+            this.user = user;
+        }
+    }
+
+    private final BitSet occupied = new BitSet();
+    private final BitSet unattributed = new BitSet();
+    private final IntObjectMap<Holding> byUser = new IntObjectMap<>();
+    private int occupiedCount;
+
+    // Give the passenger the lowest free seats below capacity. Returns the assigned seat
+    // numbers, or null (assigning nothing) if there are not enough free seats.
+    public synchronized int[] assign(User user, int count, int capacity) {
+        if (capacity - occupiedCount < count) {
+            return null;
+        }
+        Holding holding = byUser.get(keyOf(user));
+        if (holding == null) {
+            holding = new Holding(user);
+            byUser.put(keyOf(user), holding);
+        }
+
+        int[] assigned = new int[count];
+        int seat = 0;
+        for (int i = 0; i < count; i++) {
+            seat = occupied.nextClearBit(seat);
+            occupied.set(seat);
+            holding.seats.set(seat);
+            assigned[i] = seat + 1;
+        }
+        holding.count += count;
+        occupiedCount += count;
+        return assigned;
+    }
+
+    // Free up to count of the passenger's seats, highest numbers first. Returns how
+    // many were actually released.
+    public synchronized int release(User user, int count) {
+        Holding holding = byUser.get(keyOf(user));
+        return holding == null ? 0 : release(holding, count);
+    }
+
+    private int release(Holding holding, int count) {
+        int released = 0;
+        int seat = holding.seats.length() - 1;
+        while (released < count && seat >= 0) {
+            seat = holding.seats.previousSetBit(seat);
+            if (seat < 0) {
+                break;
+            }
+            holding.seats.clear(seat);
+            occupied.clear(seat);
+            released++;
+        }
+        holding.count -= released;
+        occupiedCount -= released;
+        if (holding.count == 0) {
+            byUser.remove(keyOf(holding.user));
+        }
+        return released;
+    }
+
+    // Takes or frees unattributed seats until exactly booked seats are occupied. If
+    // that is not enough, passengers' highest seats go too: storage no longer counts
+    // them, so they were given up through another copy of the ride.
+    public synchronized void settle(int booked) {
+        booked = Math.max(0, booked);
+        int seat = 0;
+        while (occupiedCount < booked) {
+            seat = occupied.nextClearBit(seat);
+            occupied.set(seat);
+            unattributed.set(seat);
+            occupiedCount++;
+        }
+        while (occupiedCount > booked && !unattributed.isEmpty()) {
+            seat = unattributed.length() - 1;
+            unattributed.clear(seat);
+            occupied.clear(seat);
+            occupiedCount--;
+        }
+        if (occupiedCount > booked) {
+            for (Holding holding : byUser.values()) {
+                release(holding, occupiedCount - booked);
+                if (occupiedCount == booked) {
+                    break;
+                }
+            }
+        }
+    }
+
+    // A change storage has confirmed: the passenger's seats changed by seatChange and
+    // booked seats are taken on the ride afterwards
+    public synchronized void record(User user, int seatChange, int booked, int capacity) {
+        settle(booked - seatChange);
+        if (seatChange > 0) {
+            assign(user, seatChange, capacity);
+        } else if (seatChange < 0) {
+            release(user, -seatChange);
+        }
+        settle(booked);
+    }
+
+    // A cancellation storage has confirmed; seats the passenger does not hold here
+    // come out of the unattributed ones
+    public synchronized void cancel(User user, int seats) {
+        record(user, -seats, occupiedCount - seats, 0);
+    }
+
+    public synchronized int seatsOf(User user) {
+        Holding holding = byUser.get(keyOf(user));
+        return holding == null ? 0 : holding.count;
+    }
+
+    public synchronized int[] seatNumbersOf(User user) {
+        Holding holding = byUser.get(keyOf(user));
+        if (holding == null) {
+            return new int[0];
+        }
+        return holding.seats.stream().map(seat -> seat + 1).toArray();
+    }
+
+    public synchronized boolean isOccupied(int seatNumber) {
+        return seatNumber > 0 && occupied.get(seatNumber - 1);
+    }
+
+    public synchronized int getOccupiedCount() {
+        return occupiedCount;
+    }
+
+    // Each known passenger once, however many seats they hold
+    public synchronized List<User> passengers() {
+        List<User> users = new ArrayList<>(byUser.size());
+        byUser.forEachValue(holding -> users.add(holding.user));
+        return users;
+    }
+
+    public synchronized void clear() {
+        occupied.clear();
+        unattributed.clear();
+        byUser.clear();
+        occupiedCount = 0;
+    }
+
+    private static int keyOf(User user) {
+        return user != null ? user.getId() : 0;
+    }
+}
@@ -0,0 +1,77 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+// Lets concurrent callers asking for the same key share one computation. The first
+// caller runs it; callers arriving while it runs wait for that result instead of
+// starting their own, and each gets it through share(), so a mutable result can be
+// copied per caller. The flight is forgotten as soon as it lands: a call that starts
+// afterwards computes afresh, so nothing is cached and no result is older than the
+// wait for it.
+//
+// An error the leader recovered from (OperationMetrics.markError) is marked on every
+// caller that shared its result, and an exception it threw is thrown to all of them.
+public class SingleFlight<K, V> {
+
+    private static final class Flight<V> {
+        final CompletableFuture<V> result = new CompletableFuture<>();
+        volatile boolean error;
+    }
+
+    private final ConcurrentHashMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+
+    public V execute(K key, Supplier<V> body, UnaryOperator<V> share) {
+        calls.increment();
+        Flight<V> flight = new Flight<>();
+        Flight<V> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            shared.increment();
+            return await(running, share);
+        }
+        try {
+            V value = body.get();
+            flight.error = OperationMetrics.errorMarked();
+            flight.result.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private static <V> V await(Flight<V> flight, UnaryOperator<V> share) {
+        V value;
+        try {
+            value = flight.result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+        if (flight.error) {
+            OperationMetrics.markError();
+        }
+        return value != null ? share.apply(value) : null;
+    }
+
+    // Calls made, and how many of them shared another caller's flight
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getShared() {
+        return shared.sum();
+    }
+}
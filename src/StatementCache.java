@@ -0,0 +1,247 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.postgresql.PGStatement;
+
+// Per-connection registry of prepared statements. Each distinct SQL string is prepared
+// once per physical connection; close() on the returned statement hands it back
+// instead of closing it. Parameters, batch, fetch size, max rows and query timeout are
+// reset on the way back, so the next borrower gets the statement as it was prepared.
+public class StatementCache {
+
+    // Shared counters for every cache in a pool
+    public static class Stats {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        private final LongAdder promotions = new LongAdder();
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        public long getEvictions() {
+            return evictions.sum();
+        }
+
+        public long getPromotions() {
+            return promotions.sum();
+        }
+
+        public double getHitRatio() {
+            long h = hits.sum();
+            long total = h + misses.sum();
+            return total == 0 ? 0.0 : (double) h / total;
+        }
+
+        @Override
+        public String toString() {
+            return "StatementCache{hits=" + getHits() +
+                    ", misses=" + getMisses() +
+                    ", hitRatio=" + String.format("%.3f", getHitRatio()) +
+                    ", evictions=" + getEvictions() +
+                    ", promotions=" + getPromotions() +
+                    '}';
+        }
+    }
+
+    private final Connection physical;
+    private final int capacity;
+    private final int promoteAfter;
+    private final Stats stats;
+    private final LinkedHashMap<String, Entry> entries;
+
+    public StatementCache(Connection physical, int capacity, int promoteAfter, Stats stats) {
+        this.physical = physical;
+        this.capacity = capacity;
+        this.promoteAfter = promoteAfter;
+        this.stats = stats;
+        // Access order so the least recently used statement is evicted first
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        if (capacity <= 0) {
+            return uncached(physical.prepareStatement(sql, autoGeneratedKeys));
+        }
+
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : "N:" + sql;
+        Entry entry = entries.get(key);
+
+        if (entry != null && !entry.inUse) {
+            stats.hits.increment();
+        } else {
+            stats.misses.increment();
+            if (entry != null) {
+                // Same SQL is already open on this connection; hand out an uncached statement
+                return uncached(physical.prepareStatement(sql, autoGeneratedKeys));
+            }
+            entry = new Entry(physical.prepareStatement(sql, autoGeneratedKeys));
+            entries.put(key, entry);
+            evictOverflow();
+        }
+
+        entry.inUse = true;
+        entry.uses++;
+        if (entry.uses == promoteAfter) {
+            promote(entry);
+        }
+        return entry.newHandle();
+    }
+
+    // A statement outside the cache, still behind a handle so its executions are counted;
+    // it starts out evicted, so giving it back closes it
+    private PreparedStatement uncached(PreparedStatement statement) throws SQLException {
+        Entry entry = new Entry(statement);
+        entry.inUse = true;
+        entry.evicted = true;
+        return entry.newHandle();
+    }
+
+    // Switch a hot statement to a named server-side prepared statement right away
+    private void promote(Entry entry) {
+        try {
+            if (entry.statement.isWrapperFor(PGStatement.class)) {
+                entry.statement.unwrap(PGStatement.class).setPrepareThreshold(1);
+                stats.promotions.increment();
+            }
+        } catch (SQLException e) {
+            // Promotion is only an optimization; keep using the client-side plan
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > capacity && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            if (eldest.inUse) {
+                continue;
+            }
+            it.remove();
+            eldest.evicted = true;
+            stats.evictions.increment();
+            closeQuietly(eldest.statement);
+        }
+    }
+
+    public void closeAll() {
+        for (Entry entry : entries.values()) {
+            entry.evicted = true;
+            if (!entry.inUse) {
+                closeQuietly(entry.statement);
+            }
+        }
+        entries.clear();
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // Connection is going away anyway
+        }
+    }
+
+    private class Entry {
+        final PreparedStatement statement;
+        // Settings as prepared; a borrower such as JdbcStorage.streamQuery may change them
+        final int fetchSize;
+        final int maxRows;
+        final int queryTimeout;
+        boolean inUse;
+        boolean evicted;
+        long uses;
+
+        Entry(PreparedStatement statement) throws SQLException {
+            this.statement = statement;
+            this.fetchSize = statement.getFetchSize();
+            this.maxRows = statement.getMaxRows();
+            this.queryTimeout = statement.getQueryTimeout();
+        }
+
+        PreparedStatement newHandle() {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class },
+                    new Handle(this));
+        }
+
+        void giveBack() {
+            try {
+                statement.clearParameters();
+                statement.clearBatch();
+                if (statement.getFetchSize() != fetchSize) {
+                    statement.setFetchSize(fetchSize);
+                }
+                if (statement.getMaxRows() != maxRows) {
+                    statement.setMaxRows(maxRows);
+                }
+                if (statement.getQueryTimeout() != queryTimeout) {
+                    statement.setQueryTimeout(queryTimeout);
+                }
+                inUse = false;
+                if (evicted) {
+                    // Cache was cleared while this statement was borrowed
+                    closeQuietly(statement);
+                }
+            } catch (SQLException e) {
+                entries.values().remove(this);
+                evicted = true;
+                closeQuietly(statement);
+            }
+        }
+    }
+
+    private static class Handle implements InvocationHandler {
+        private final Entry entry;
+        private boolean closed;
+
+        Handle(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        entry.giveBack();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || entry.statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    if (closed) {
+                        throw new SQLException("Statement has already been closed");
+                    }
+                    if (method.getName().startsWith("execute")) {
+                        RoundTripCounter.increment();
+                    }
+                    try {
+                        return method.invoke(entry.statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+import java.nio.file.Paths;
+import java.util.Map;
+
+// The storage engine behind RideBookingSystem: one repository per table. The engine
+// is picked at startup with -Dstorage=jdbc (PostgreSQL, the default) or
+// -Dstorage=memory (process-local maps). The memory engine persists nothing unless
+// -Djournal.dir names a directory for its BookingJournal.
+public interface Storage extends AutoCloseable {
+
+    UserRepository getUsers();
+
+    RideRepository getRides();
+
+    BookingRepository getBookings();
+
+    // Engine-specific values for the metrics page, such as pool usage
+    void addGauges(Map<String, Number> gauges);
+
+    // Finishes pending writes and releases the engine's resources
+    @Override
+    void close();
+
+    static Storage open() {
+        String engine = System.getProperty("storage", "jdbc");
+        switch (engine) {
+            case "jdbc":
+                return new JdbcStorage();
+            case "memory":
+                String journalDir = System.getProperty("journal.dir");
+                return journalDir != null ? new MemoryStorage(Paths.get(journalDir)) : new MemoryStorage();
+            default:
+                throw new IllegalArgumentException("Unknown storage engine: " + engine + " (expected jdbc or memory)");
+        }
+    }
+}
@@ -89,6 +89,24 @@ public class User {
         this.licence_no = licence_no;
     }
 
+    // Users are the same when they share a database id; unsaved users only equal themselves
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof User)) {
+            return false;
+        }
+        User other = (User) o;
+        return id != 0 && id == other.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(id);
+    }
+
     @Override
     public String toString() {
         return "User{id=" + id + ", name='" + name + "', email='" + email + "', phone=" + phone_number + "}";
@@ -0,0 +1,171 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Bounded LRU cache of user profiles, reachable by id or email. Entries expire after
+// a TTL so changes made on other nodes are picked up eventually. The cache keeps and
+// hands out its own copies without the password: it is never used to check
+// credentials, and a caller changing a user it got back does not change the entry.
+// put() is the only way to update one.
+public class UserCache {
+
+    private static class Entry {
+        final User user;
+        final String email;
+        final long expiresAt;
+
+        Entry(User user, long expiresAt) {
+            this.user = profileOf(user);
+            this.email = user.getEmail();
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxSize;
+    private final long ttlMillis;
+
+    // Access order, so the eldest entry is the least recently used one
+    private final LinkedHashMap<Integer, Entry> byId = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<String, Integer> idByEmail = new HashMap<>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    public UserCache(int maxSize, long ttlMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public synchronized User get(int id) {
+        Entry entry = byId.get(id);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (isExpired(entry)) {
+            expirations++;
+            misses++;
+            removeEntry(id, entry);
+            return null;
+        }
+        hits++;
+        return profileOf(entry.user);
+    }
+
+    public synchronized User getByEmail(String email) {
+        Integer id = idByEmail.get(email);
+        if (id == null) {
+            misses++;
+            return null;
+        }
+        return get(id);
+    }
+
+    public synchronized void put(User user) {
+        if (user == null || user.getId() <= 0) {
+            return;
+        }
+        Entry previous = byId.get(user.getId());
+        if (previous != null && previous.email != null) {
+            idByEmail.remove(previous.email);
+        }
+
+        byId.put(user.getId(), new Entry(user, System.currentTimeMillis() + ttlMillis));
+        if (user.getEmail() != null) {
+            idByEmail.put(user.getEmail(), user.getId());
+        }
+
+        Iterator<Map.Entry<Integer, Entry>> it = byId.entrySet().iterator();
+        while (byId.size() > maxSize && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            if (eldest.email != null) {
+                idByEmail.remove(eldest.email, eldest.user.getId());
+            }
+            evictions++;
+        }
+    }
+
+    public synchronized void invalidate(int id) {
+        Entry entry = byId.get(id);
+        if (entry != null) {
+            removeEntry(id, entry);
+        }
+    }
+
+    public synchronized void clear() {
+        byId.clear();
+        idByEmail.clear();
+    }
+
+    public synchronized List<User> snapshot() {
+        List<User> users = new ArrayList<>(byId.size());
+        for (Entry entry : byId.values()) {
+            users.add(profileOf(entry.user));
+        }
+        return users;
+    }
+
+    private static User profileOf(User user) {
+        User profile = new User(user.getId(), user.getName(), user.getEmail(), null, user.getPhone_number());
+        profile.setLicence_no(user.getLicence_no());
+        profile.setLicence_exp(user.getLicence_exp());
+        return profile;
+    }
+
+    private boolean isExpired(Entry entry) {
+        return ttlMillis > 0 && System.currentTimeMillis() > entry.expiresAt;
+    }
+
+    private void removeEntry(int id, Entry entry) {
+        byId.remove(id);
+        if (entry.email != null) {
+            idByEmail.remove(entry.email, id);
+        }
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized long getExpirationCount() {
+        return expirations;
+    }
+
+    public synchronized double getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "UserCache{size=" + byId.size() +
+                ", max=" + maxSize +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", hitRatio=" + String.format("%.3f", getHitRatio()) +
+                ", evictions=" + evictions +
+                ", expirations=" + expirations +
+                '}';
+    }
+}
@@ -0,0 +1,65 @@
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+
+// The users table, plus account deletion, which cascades to the user's rides and bookings
+public interface UserRepository {
+
+    // What deleteAccount did. After a deletion, seatCounts holds {ride_id, available_seats,
+    // seats given back} for every ride that got seats back, and deletedRides the ids of
+    // the user's own rides.
+    class AccountDeletion {
+        public enum Outcome {
+            DELETED, NOT_FOUND, OTHER_PASSENGERS
+        }
+
+        private final Outcome outcome;
+        private final List<int[]> seatCounts;
+        private final IntHashSet deletedRides;
+
+        AccountDeletion(Outcome outcome, List<int[]> seatCounts, IntHashSet deletedRides) {
+            this.outcome = outcome;
+            this.seatCounts = seatCounts;
+            this.deletedRides = deletedRides;
+        }
+
+        static AccountDeletion refused(Outcome outcome) {
+            return new AccountDeletion(outcome, List.of(), new IntHashSet());
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public List<int[]> getSeatCounts() {
+            return seatCounts;
+        }
+
+        public IntHashSet getDeletedRides() {
+            return deletedRides;
+        }
+    }
+
+    boolean emailExists(String email) throws SQLException;
+
+    // Inserts the user and sets its generated id
+    void insert(User user) throws SQLException;
+
+    // Null when no user has this email and password
+    User findByCredentials(String email, String password) throws SQLException;
+
+    User findById(int id) throws SQLException;
+
+    // A null or empty name or email, or a phone number <= 0, keeps the stored value
+    void updateDetails(int id, String name, String email, long phoneNumber) throws SQLException;
+
+    void updateLicence(int id, String licenceNo, String licenceExp) throws SQLException;
+
+    // Removes the user, every booking they hold and every ride they created, returning
+    // the seats of their bookings to the rides, all or nothing. Refused while other
+    // passengers hold active bookings on the user's rides.
+    AccountDeletion deleteAccount(int id) throws SQLException;
+
+    // Every user in id order, without the password
+    void streamAll(Consumer<User> consumer) throws SQLException;
+}
@@ -0,0 +1,29 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+// ExportSink backed by a character Writer
+public class WriterExportSink implements ExportSink {
+    private final Writer writer;
+    private final boolean ownsWriter;
+
+    public WriterExportSink(Writer writer, boolean ownsWriter) {
+        this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+        this.ownsWriter = ownsWriter;
+    }
+
+    @Override
+    public void writeLine(String line) throws IOException {
+        writer.write(line);
+        writer.write(System.lineSeparator());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownsWriter) {
+            writer.close();
+        } else {
+            writer.flush();
+        }
+    }
+}
@@ -20,8 +20,18 @@ function closeModal(modal) {
 }
 
 // ===== Event Listeners =====
-loginBtn.addEventListener('click', () => openModal(loginModal));
-registerBtn.addEventListener('click', () => openModal(registerModal));
+loginBtn.addEventListener('click', () => {
+    if (!currentUser) openModal(loginModal);
+});
+registerBtn.addEventListener('click', async () => {
+    if (!currentUser) {
+        openModal(registerModal);
+        return;
+    }
+    await api('POST', '/api/logout').catch(() => {});
+    setSession(null, null);
+    bookingsList.innerHTML = '';
+});
 
 closeLogin.addEventListener('click', () => closeModal(loginModal));
 closeRegister.addEventListener('click', () => closeModal(registerModal));
@@ -44,38 +54,108 @@ window.addEventListener('click', (e) => {
     if (e.target === registerModal) closeModal(registerModal);
 });
 
+// ===== API =====
+let authToken = sessionStorage.getItem('authToken');
+let currentUser = JSON.parse(sessionStorage.getItem('currentUser') || 'null');
+
+// Form-encoded request to the Java API; resolves with the parsed JSON body
+async function api(method, path, fields) {
+    const headers = {};
+    let body;
+    if (fields) {
+        headers['Content-Type'] = 'application/x-www-form-urlencoded';
+        body = new URLSearchParams(fields).toString();
+    }
+    if (authToken) {
+        headers['Authorization'] = 'Bearer ' + authToken;
+    }
+
+    const response = await fetch(path, { method, headers, body });
+    const data = await response.json().catch(() => ({}));
+    if (response.status === 401 && authToken) {
+        setSession(null, null);
+    }
+    if (!response.ok) {
+        throw new Error(data.error || `Request failed (${response.status})`);
+    }
+    return data;
+}
+
+function setSession(token, user) {
+    authToken = token;
+    currentUser = user;
+    if (token) {
+        sessionStorage.setItem('authToken', token);
+        sessionStorage.setItem('currentUser', JSON.stringify(user));
+    } else {
+        sessionStorage.removeItem('authToken');
+        sessionStorage.removeItem('currentUser');
+    }
+    updateAuthButtons();
+}
+
+function updateAuthButtons() {
+    if (currentUser) {
+        loginBtn.textContent = currentUser.name;
+        registerBtn.textContent = 'Logout';
+    } else {
+        loginBtn.textContent = 'Login';
+        registerBtn.textContent = 'Register';
+    }
+}
+
+function escapeHtml(text) {
+    const div = document.createElement('div');
+    div.textContent = text == null ? '' : String(text);
+    return div.innerHTML;
+}
+
 // ===== Form Submissions =====
-document.getElementById('loginForm').addEventListener('submit', (e) => {
+document.getElementById('loginForm').addEventListener('submit', async (e) => {
     e.preventDefault();
-    const email = document.getElementById('loginEmail').value;
-    const password = document.getElementById('loginPassword').value;
-
-    // Simulate login
-    console.log('Login attempt:', { email, password });
-    alert('Login successful! Welcome back.');
-    closeModal(loginModal);
+    try {
+        const data = await api('POST', '/api/login', {
+            email: document.getElementById('loginEmail').value,
+            password: document.getElementById('loginPassword').value
+        });
+        setSession(data.token, data.user);
+        closeModal(loginModal);
+        e.target.reset();
+        loadBookings();
+    } catch (err) {
+        alert(err.message);
+    }
 });
 
-document.getElementById('registerForm').addEventListener('submit', (e) => {
+document.getElementById('registerForm').addEventListener('submit', async (e) => {
     e.preventDefault();
-    const formData = {
-        name: document.getElementById('regName').value,
-        email: document.getElementById('regEmail').value,
-        phone: document.getElementById('regPhone').value,
-        password: document.getElementById('regPassword').value,
-        licenceNo: document.getElementById('licenceNo').value,
-        licenceExp: document.getElementById('licenceExp').value
-    };
-
-    console.log('Registration:', formData);
-    alert('Account created successfully! Please login.');
-    closeModal(registerModal);
-    openModal(loginModal);
+    try {
+        await api('POST', '/api/register', {
+            name: document.getElementById('regName').value,
+            email: document.getElementById('regEmail').value,
+            phone: document.getElementById('regPhone').value,
+            password: document.getElementById('regPassword').value,
+            licenceNo: document.getElementById('licenceNo').value,
+            licenceExp: document.getElementById('licenceExp').value
+        });
+        alert('Account created successfully! Please login.');
+        e.target.reset();
+        closeModal(registerModal);
+        openModal(loginModal);
+    } catch (err) {
+        alert(err.message);
+    }
 });
 
-document.getElementById('createRideForm').addEventListener('submit', (e) => {
+document.getElementById('createRideForm').addEventListener('submit', async (e) => {
     e.preventDefault();
-    const rideData = {
+    if (!currentUser) {
+        alert('Please login to offer a ride.');
+        openModal(loginModal);
+        return;
+    }
+
+    const fields = {
         source: document.getElementById('source').value,
         destination: document.getElementById('destination').value,
         seats: document.getElementById('seats').value,
@@ -86,30 +166,182 @@ document.getElementById('createRideForm').addEventListener('submit', (e) => {
         rideDate: document.getElementById('rideDate').value
     };
 
-    console.log('Create Ride:', rideData);
+    try {
+        await api('POST', '/api/rides', fields);
+    } catch (err) {
+        if (!err.message.includes('licence')) {
+            alert(err.message);
+            return;
+        }
+        // Drivers without a licence on file are asked for it once, as in the console app
+        const licenceNo = prompt('Enter your driving licence number:');
+        const licenceExp = licenceNo && prompt('Enter the licence expiry date (YYYY-MM-DD):');
+        if (!licenceNo || !licenceExp) {
+            return;
+        }
+        try {
+            await api('POST', '/api/rides', { ...fields, licenceNo, licenceExp });
+        } catch (retryErr) {
+            alert(retryErr.message);
+            return;
+        }
+    }
     alert('Ride created successfully!');
     e.target.reset();
+    searchRides('', '');
 });
 
-// ===== Book Ride Buttons =====
-document.querySelectorAll('.btn-book').forEach(btn => {
-    btn.addEventListener('click', () => {
+// ===== Rides =====
+const ridesGrid = document.getElementById('ridesGrid');
+let rideQuery = { from: '', to: '', after: 0 };
+
+async function searchRides(from, to, after = 0) {
+    rideQuery = { from, to, after };
+    try {
+        const page = await api('GET', '/api/rides?' + new URLSearchParams({ from, to, after, limit: 12 }));
+        renderRides(page, after > 0);
+    } catch (err) {
+        alert(err.message);
+    }
+}
+
+function renderRides(page, append) {
+    if (!append) {
+        ridesGrid.innerHTML = '';
+    }
+    ridesGrid.querySelector('.btn-more')?.remove();
+
+    if (!append && page.rides.length === 0) {
+        ridesGrid.innerHTML = `
+            <div class="empty-state">
+                <div class="empty-icon">🚗</div>
+                <h3>No Rides Available</h3>
+                <p>Be the first to offer a ride or check back later!</p>
+            </div>`;
+        return;
+    }
+
+    page.rides.forEach(ride => {
+        const card = document.createElement('div');
+        card.className = 'ride-card';
+        card.innerHTML = `
+            <div class="ride-header">
+                <div class="driver-info">
+                    <div class="driver-avatar">🚗</div>
+                    <div class="driver-details">
+                        <h4>${escapeHtml(ride.carBrand)} ${escapeHtml(ride.carModel)}</h4>
+                        <span>${escapeHtml(ride.carNumberPlate)}</span>
+                    </div>
+                </div>
+                <div class="ride-price">₹${ride.fare}</div>
+            </div>
+            <div class="ride-route">
+                <div class="route-point"><span class="dot start"></span><span class="location">${escapeHtml(ride.source)}</span></div>
+                <div class="route-line"></div>
+                <div class="route-point"><span class="dot end"></span><span class="location">${escapeHtml(ride.destination)}</span></div>
+            </div>
+            <div class="ride-details">
+                <div class="detail"><span>💺</span><span>${ride.availableSeats} of ${ride.totalSeats} seats left</span></div>
+            </div>
+            <button class="btn btn-primary btn-full btn-book">Book Now</button>`;
+        card.querySelector('.btn-book').addEventListener('click', () => bookRide(ride));
+        ridesGrid.appendChild(card);
+    });
+
+    if (page.hasMore) {
+        const more = document.createElement('button');
+        more.className = 'btn btn-outline btn-full btn-more';
+        more.textContent = 'Show more rides';
+        more.addEventListener('click', () => searchRides(rideQuery.from, rideQuery.to, page.nextCursor));
+        ridesGrid.appendChild(more);
+    }
+}
+
+// ===== Book Ride =====
+async function bookRide(ride) {
+    if (!currentUser) {
         alert('Please login to book this ride.');
         openModal(loginModal);
-    });
-});
+        return;
+    }
+    const seats = prompt(`How many seats on ${ride.source} → ${ride.destination}? (${ride.availableSeats} left)`, '1');
+    if (!seats) {
+        return;
+    }
+    try {
+        const data = await api('POST', '/api/bookings', { rideId: ride.rideId, seats });
+        alert(`Booking confirmed! Booking ID: ${data.booking.bookingId}, total fare ₹${data.booking.totalFare}`);
+        searchRides(rideQuery.from, rideQuery.to);
+        loadBookings();
+    } catch (err) {
+        alert(err.message);
+    }
+}
 
-// ===== Cancel Booking Buttons =====
-document.querySelectorAll('.btn-cancel').forEach(btn => {
-    btn.addEventListener('click', () => {
-        if (confirm('Are you sure you want to cancel this booking?')) {
-            alert('Booking cancelled successfully!');
-            btn.closest('.booking-card').style.opacity = '0.5';
-            btn.disabled = true;
-            btn.textContent = 'Cancelled';
-        }
+// ===== My Bookings =====
+const bookingsList = document.getElementById('bookingsList');
+
+async function loadBookings() {
+    if (!currentUser) {
+        return;
+    }
+    try {
+        const data = await api('GET', '/api/bookings');
+        renderBookings(data.bookings);
+    } catch (err) {
+        console.error('Loading bookings failed:', err);
+    }
+}
+
+function renderBookings(bookings) {
+    if (bookings.length === 0) {
+        bookingsList.innerHTML = `
+            <div class="empty-state">
+                <div class="empty-icon">📋</div>
+                <h3>No Bookings Yet</h3>
+                <p>Book a ride to see your bookings here!</p>
+            </div>`;
+        return;
+    }
+
+    bookingsList.innerHTML = '';
+    bookings.forEach(booking => {
+        const status = (booking.status || '').toLowerCase();
+        const card = document.createElement('div');
+        card.className = 'booking-card';
+        card.innerHTML = `
+            <div class="booking-status ${escapeHtml(status)}"><span class="status-dot"></span>${escapeHtml(booking.status)}</div>
+            <div class="booking-route">
+                <div class="route-info">Ride #${booking.rideId}</div>
+                <div class="booking-date">${escapeHtml((booking.bookingTime || '').replace('T', ' ').slice(0, 16))}</div>
+                <div class="booking-details">
+                    <div class="detail-item"><span class="label">Booking</span><span class="value">#${booking.bookingId}</span></div>
+                    <div class="detail-item"><span class="label">Seats</span><span class="value">${booking.seats}</span></div>
+                    <div class="detail-item"><span class="label">Fare</span><span class="value">₹${booking.totalFare}</span></div>
+                </div>
+            </div>
+            <button class="btn btn-outline btn-cancel">Cancel</button>`;
+        card.querySelector('.btn-cancel').addEventListener('click', (e) => cancelBooking(booking, e.target));
+        bookingsList.appendChild(card);
     });
-});
+}
+
+// ===== Cancel Booking =====
+async function cancelBooking(booking, btn) {
+    if (!confirm('Are you sure you want to cancel this booking?')) {
+        return;
+    }
+    try {
+        await api('DELETE', `/api/bookings/${booking.bookingId}`);
+        alert('Booking cancelled successfully!');
+        btn.closest('.booking-card').style.opacity = '0.5';
+        btn.disabled = true;
+        btn.textContent = 'Cancelled';
+        searchRides(rideQuery.from, rideQuery.to);
+    } catch (err) {
+        alert(err.message);
+    }
+}
 
 // ===== Smooth Scroll for Nav Links =====
 document.querySelectorAll('.nav-link').forEach(link => {
@@ -130,12 +362,11 @@ document.querySelectorAll('.nav-link').forEach(link => {
 
 // ===== Search Functionality =====
 document.querySelector('.btn-search').addEventListener('click', () => {
-    const from = document.getElementById('searchFrom').value;
-    const to = document.getElementById('searchTo').value;
+    const from = document.getElementById('searchFrom').value.trim();
+    const to = document.getElementById('searchTo').value.trim();
 
     if (from || to) {
-        console.log('Searching rides:', { from, to });
-        alert(`Searching for rides from "${from}" to "${to}"...`);
+        searchRides(from, to);
         document.querySelector('#rides').scrollIntoView({ behavior: 'smooth' });
     } else {
         alert('Please enter pickup location or destination.');
@@ -159,3 +390,8 @@ window.addEventListener('scroll', () => {
         }
     });
 });
+
+// ===== Initial Load =====
+updateAuthButtons();
+searchRides('', '');
+loadBookings();